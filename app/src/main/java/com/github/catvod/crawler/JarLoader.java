@@ -4,15 +4,10 @@ import android.content.Context;
 
 import com.github.tvbox.osc.base.App;
 import com.github.tvbox.osc.util.LOG;
-import com.github.tvbox.osc.util.MD5;
-import com.lzy.okgo.OkGo;
 
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -20,12 +15,12 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import dalvik.system.DexClassLoader;
-import okhttp3.Response;
 
 public class JarLoader {
     private ConcurrentHashMap<String, DexClassLoader> classLoaders = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, Method> proxyMethods = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, Spider> spiders = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
     private volatile String recentJarKey = "";
 
     /**
@@ -85,38 +80,23 @@ public class JarLoader {
     }
 
     private DexClassLoader loadJarInternal(String jar, String md5, String key) {
-        if (classLoaders.contains(key)) return classLoaders.get(key);
-        File cache = new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + key + ".jar");
-        if (!md5.isEmpty()) {
-            if (cache.exists() && MD5.getFileMd5(cache).equalsIgnoreCase(md5)) {
-                loadClassLoader(cache.getAbsolutePath(), key);
-                return classLoaders.get(key);
-            }
-        }
-        try {
-            Response response = OkGo.<File>get(jar).execute();
-            InputStream is = response.body().byteStream();
-            OutputStream os = new FileOutputStream(cache);
-            try {
-                byte[] buffer = new byte[2048];
-                int length;
-                while ((length = is.read(buffer)) > 0) {
-                    os.write(buffer, 0, length);
-                }
-            } finally {
-                try {
-                    is.close();
-                    os.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+        DexClassLoader classLoader = classLoaders.get(key);
+        if (classLoader != null) return classLoader;
+        // 多个站点共用同一个 jar 时只加载一次
+        synchronized (lock(key)) {
+            classLoader = classLoaders.get(key);
+            if (classLoader != null) return classLoader;
+            File cache = JarStore.fetch(jar, md5, key);
+            if (cache == null) return null;
             loadClassLoader(cache.getAbsolutePath(), key);
             return classLoaders.get(key);
-        } catch (Throwable e) {
-            e.printStackTrace();
         }
-        return null;
+    }
+
+    private Object lock(String key) {
+        Object lock = new Object();
+        Object prev = locks.putIfAbsent(key, lock);
+        return prev != null ? prev : lock;
     }
 
     public Spider getSpider(String key, String cls, String ext, String jar) {
@@ -129,7 +109,7 @@ public class JarLoader {
         } else {
             String[] urls = jar.split(";md5;");
             jarUrl = urls[0];
-            jarKey = MD5.string2MD5(jarUrl);
+            jarKey = JarStore.key(jarUrl);
             jarMd5 = urls.length > 1 ? urls[1].trim() : "";
         }
         recentJarKey = jarKey;
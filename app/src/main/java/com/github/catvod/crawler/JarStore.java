@@ -0,0 +1,167 @@
+package com.github.catvod.crawler;
+
+import android.text.TextUtils;
+
+import com.github.tvbox.osc.base.App;
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.util.MD5;
+import com.lzy.okgo.OkGo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import okhttp3.Response;
+
+/**
+ * 站点 jar 的下载和本地缓存
+ * <p>
+ * 同一个 jar 同时只下载一次(其他调用等待同一个结果); 下载时边写文件边算 md5,
+ * 校验结果记录在旁边的 .md5 文件里(md5 + 文件大小 + 修改时间), 文件没变就不用每次启动重新计算。
+ * 配置加载后可以并行预取所有用到的 jar。
+ */
+public class JarStore {
+    private static final int PREFETCH_THREADS = 4;
+
+    private static final ConcurrentHashMap<String, FutureTask<File>> pending = new ConcurrentHashMap<>();
+    // 本次运行已经下载过的 jar, 没有配置 md5 时也不再重复下载
+    private static final ConcurrentHashMap<String, Boolean> downloaded = new ConcurrentHashMap<>();
+    private static final ExecutorService prefetcher = Executors.newFixedThreadPool(PREFETCH_THREADS, r -> {
+        Thread thread = new Thread(r, "jar-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static String key(String jarUrl) {
+        return MD5.string2MD5(jarUrl);
+    }
+
+    public static File file(String key) {
+        return new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + key + ".jar");
+    }
+
+    /**
+     * 取得本地 jar, md5 一致时直接用缓存, 否则下载; 失败返回 null
+     *
+     * @param jar 配置里的 jar 字段, 形如 url;md5;xxx
+     */
+    public static File fetch(String jar) {
+        String[] urls = jar.split(";md5;");
+        String jarUrl = urls[0];
+        String md5 = urls.length > 1 ? urls[1].trim() : "";
+        return fetch(jarUrl, md5, key(jarUrl));
+    }
+
+    public static File fetch(String jarUrl, String md5, String key) {
+        File cache = file(key);
+        if (!md5.isEmpty() && isVerified(cache, md5)) return cache;
+        if (downloaded.containsKey(key) && cache.exists()) return cache;
+        FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() {
+                File file = download(jarUrl, md5, cache);
+                if (file != null) downloaded.put(key, true);
+                return file;
+            }
+        });
+        FutureTask<File> running = pending.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                pending.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (Exception e) {
+            LOG.e(e);
+            return null;
+        }
+    }
+
+    /**
+     * 并行预取, 已经是最新的 jar 不会重新下载
+     */
+    public static void prefetch(Collection<String> jars) {
+        for (String jar : new LinkedHashSet<>(jars)) {
+            if (TextUtils.isEmpty(jar)) continue;
+            prefetcher.execute(() -> fetch(jar));
+        }
+    }
+
+    /**
+     * 文件 md5 是否与 md5 一致; 先看 .md5 记录, 没有记录或文件变了才重新计算
+     */
+    public static boolean isVerified(File file, String md5) {
+        if (!file.exists()) return false;
+        File sidecar = sidecar(file);
+        String stamp = "|" + file.length() + "|" + file.lastModified();
+        if (sidecar.exists()) {
+            byte[] data = FileUtils.readSimple(sidecar);
+            if (data != null && new String(data).equalsIgnoreCase(md5 + stamp)) return true;
+        }
+        String actual = MD5.getFileMd5(file);
+        writeSidecar(file, actual);
+        return actual.equalsIgnoreCase(md5);
+    }
+
+    private static File sidecar(File file) {
+        return new File(file.getParentFile(), file.getName() + ".md5");
+    }
+
+    private static void writeSidecar(File file, String md5) {
+        String stamp = md5 + "|" + file.length() + "|" + file.lastModified();
+        FileUtils.writeSimple(stamp.getBytes(), sidecar(file));
+    }
+
+    private static File download(String jarUrl, String md5, File cache) {
+        File tmp = new File(cache.getParentFile(), cache.getName() + ".tmp");
+        try (Response response = OkGo.<File>get(jarUrl).execute()) {
+            if (!response.isSuccessful() || response.body() == null) return cache.exists() ? cache : null;
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            try (InputStream is = response.body().byteStream(); OutputStream os = new FileOutputStream(tmp)) {
+                byte[] buffer = new byte[64 * 1024];
+                int length;
+                while ((length = is.read(buffer)) > 0) {
+                    os.write(buffer, 0, length);
+                    digest.update(buffer, 0, length);
+                }
+            }
+            String actual = hex(digest.digest());
+            if (!md5.isEmpty() && !actual.equalsIgnoreCase(md5)) {
+                LOG.i("jar md5 mismatch " + jarUrl + " expect " + md5 + " got " + actual);
+            }
+            if (cache.exists()) cache.delete();
+            if (!tmp.renameTo(cache)) {
+                tmp.delete();
+                return null;
+            }
+            writeSidecar(cache, actual);
+            return cache;
+        } catch (Throwable e) {
+            LOG.e(e);
+            tmp.delete();
+            return null;
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -4,25 +4,20 @@ package com.github.catvod.crawler;
 import com.github.tvbox.osc.base.App;
 
 import com.github.tvbox.osc.util.LOG;
-import com.github.tvbox.osc.util.MD5;
 
 import com.github.tvbox.osc.util.js.JsSpider;
-import com.lzy.okgo.OkGo;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import dalvik.system.DexClassLoader;
-import okhttp3.Response;
 
 public class JsLoader {
     private static ConcurrentHashMap<String, Spider> spiders = new ConcurrentHashMap<>();
     private static ConcurrentHashMap<String, Class<?>> classs = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
 
     public static void load() {
         for (Spider spider : spiders.values()){
@@ -74,40 +69,24 @@ public class JsLoader {
     }
 
     private Class<?> loadJarInternal(String jar, String md5, String key) {
-        if (classs.contains(key))
-            return classs.get(key);
-        File cache = new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + key + ".jar");
-        if (!md5.isEmpty()) {
-            if (cache.exists() && MD5.getFileMd5(cache).equalsIgnoreCase(md5)) {
-                loadClassLoader(cache.getAbsolutePath(), key);
-                return classs.get(key);
-            }
-        }
-        try {
-            Response response = OkGo.<File>get(jar).execute();
-            InputStream is = response.body().byteStream();
-            OutputStream os = new FileOutputStream(cache);
-            try {
-                byte[] buffer = new byte[2048];
-                int length;
-                while ((length = is.read(buffer)) > 0) {
-                    os.write(buffer, 0, length);
-                }
-            } finally {
-                try {
-                    is.close();
-                    os.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+        Class<?> cls = classs.get(key);
+        if (cls != null) return cls;
+        synchronized (lock(key)) {
+            cls = classs.get(key);
+            if (cls != null) return cls;
+            File cache = JarStore.fetch(jar, md5, key);
+            if (cache == null) return null;
             loadClassLoader(cache.getAbsolutePath(), key);
             return classs.get(key);
-        } catch (Throwable e) {
-            e.printStackTrace();
         }
-        return null;
     }
+
+    private static Object lock(String key) {
+        Object lock = new Object();
+        Object prev = locks.putIfAbsent(key, lock);
+        return prev != null ? prev : lock;
+    }
+
     private volatile String recentJarKey = "";
 
 
@@ -116,7 +95,7 @@ public class JsLoader {
         if (!jar.isEmpty()) {
             String[] urls = jar.split(";md5;");
             String jarUrl = urls[0];
-            String jarKey = MD5.string2MD5(jarUrl);
+            String jarKey = JarStore.key(jarUrl);
             String jarMd5 = urls.length > 1 ? urls[1].trim() : "";
             classLoader = loadJarInternal(jarUrl, jarMd5, jarKey);
         }
@@ -0,0 +1,285 @@
+package com.github.catvod.net;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+
+/**
+ * 按实际连接情况给解析出的地址排序, 没有数据时并行试连(happy eyeballs)
+ * <p>
+ * OkHttp 3.12 按 Dns 返回的顺序逐个连接, 前面的地址不通(比如 IPv6 线路坏了)要等满连接超时才换下一个。
+ * 这里包装 Dns: 按每个地址最近的连接耗时和失败次数重新排序, 正常的地址 IPv6/IPv4 交替, 失败的排到最后;
+ * 一个域名还没有近期可用的地址时, 按这个顺序每隔 STAGGER 毫秒发起一个 TCP 连接, 最先连上的排到最前。
+ * 请求的实际连接耗时和失败由 {@link #LISTENER} 回写, 之后的排序跟着变。
+ */
+public final class AddressRanker {
+    private static final long STAGGER = 250;
+    private static final long RACE_TIMEOUT = 3000;
+    private static final long UNKNOWN_RTT = 300;
+    private static final long FAILED = 1000000;
+    private static final long FAILURE_TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final long FRESH = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_SIZE = 1024;
+
+    private static final ConcurrentHashMap<InetAddress, Stat> stats = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Boolean> racing = new ConcurrentHashMap<>();
+    // 本线程接下来这次 dns 查询要连接的端口, 在 EventListener.dnsStart 里设置
+    private static final ThreadLocal<Integer> port = new ThreadLocal<>();
+
+    public static final EventListener.Factory LISTENER = call -> new Listener();
+
+    private AddressRanker() {
+    }
+
+    public static Dns wrap(Dns dns) {
+        if (dns instanceof RankedDns) return dns;
+        return new RankedDns(dns == null ? Dns.SYSTEM : dns);
+    }
+
+    private static final class Stat {
+        long rtt = -1;
+        int failures;
+        long lastFailure;
+        long lastSuccess;
+
+        synchronized void success(long ms) {
+            rtt = rtt < 0 ? ms : (rtt * 3 + ms) / 4;
+            failures = 0;
+            lastSuccess = System.currentTimeMillis();
+        }
+
+        synchronized void failure() {
+            long now = System.currentTimeMillis();
+            if (now - lastFailure > FAILURE_TTL) failures = 0;
+            failures++;
+            lastFailure = now;
+        }
+
+        synchronized long score(long now) {
+            long base = rtt < 0 ? UNKNOWN_RTT : rtt;
+            return failures > 0 && now - lastFailure < FAILURE_TTL ? FAILED * failures + base : base;
+        }
+
+        synchronized boolean fresh(long now) {
+            return now - lastSuccess < FRESH && (failures == 0 || now - lastFailure >= FAILURE_TTL);
+        }
+    }
+
+    private static Stat stat(InetAddress address) {
+        Stat stat = stats.get(address);
+        if (stat != null) return stat;
+        if (stats.size() >= MAX_SIZE) stats.clear();
+        stat = new Stat();
+        Stat old = stats.putIfAbsent(address, stat);
+        return old != null ? old : stat;
+    }
+
+    private static void success(InetAddress address, long millis) {
+        if (address != null) stat(address).success(millis);
+    }
+
+    private static void failure(InetAddress address) {
+        if (address != null) stat(address).failure();
+    }
+
+    /**
+     * 按分数排序(相同分数保持解析顺序), 正常的地址两个地址族交替, 失败中的放最后
+     */
+    static List<InetAddress> rank(List<InetAddress> addresses) {
+        long now = System.currentTimeMillis();
+        int size = addresses.size();
+        long[] scores = new long[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            Stat stat = stats.get(addresses.get(i));
+            scores[i] = stat == null ? UNKNOWN_RTT : stat.score(now);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(scores[a], scores[b]));
+        List<InetAddress> primary = new ArrayList<>();
+        List<InetAddress> secondary = new ArrayList<>();
+        List<InetAddress> failed = new ArrayList<>();
+        boolean v6First = addresses.get(order[0]) instanceof Inet6Address;
+        for (int i : order) {
+            InetAddress address = addresses.get(i);
+            if (scores[i] >= FAILED) failed.add(address);
+            else if ((address instanceof Inet6Address) == v6First) primary.add(address);
+            else secondary.add(address);
+        }
+        List<InetAddress> result = new ArrayList<>(size);
+        for (int i = 0; i < Math.max(primary.size(), secondary.size()); i++) {
+            if (i < primary.size()) result.add(primary.get(i));
+            if (i < secondary.size()) result.add(secondary.get(i));
+        }
+        result.addAll(failed);
+        return result;
+    }
+
+    private static boolean needsRace(List<InetAddress> addresses) {
+        long now = System.currentTimeMillis();
+        for (InetAddress address : addresses) {
+            Stat stat = stats.get(address);
+            if (stat != null && stat.fresh(now)) return false;
+        }
+        return true;
+    }
+
+    private static final class Attempt {
+        final InetAddress address;
+        final long start = System.nanoTime();
+
+        Attempt(InetAddress address) {
+            this.address = address;
+        }
+
+        long elapsed() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 依次每隔 STAGGER 毫秒(前一个已经失败则立即)发起连接, 返回最先连上的地址, 都没连上返回 null
+     */
+    static InetAddress race(List<InetAddress> addresses, int port) {
+        List<SocketChannel> channels = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RACE_TIMEOUT);
+            long nextStart = 0;
+            int next = 0;
+            int pending = 0;
+            while (true) {
+                long now = System.nanoTime();
+                if (next < addresses.size() && (pending == 0 || now >= nextStart)) {
+                    Attempt attempt = new Attempt(addresses.get(next++));
+                    nextStart = now + TimeUnit.MILLISECONDS.toNanos(STAGGER);
+                    try {
+                        SocketChannel channel = SocketChannel.open();
+                        channels.add(channel);
+                        channel.configureBlocking(false);
+                        if (channel.connect(new InetSocketAddress(attempt.address, port))) {
+                            success(attempt.address, attempt.elapsed());
+                            return attempt.address;
+                        }
+                        channel.register(selector, SelectionKey.OP_CONNECT, attempt);
+                        pending++;
+                    } catch (IOException e) {
+                        failure(attempt.address);
+                    }
+                    continue;
+                }
+                if (pending == 0 || now >= deadline) return null;
+                long wait = deadline - now;
+                if (next < addresses.size()) wait = Math.min(wait, nextStart - now);
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Attempt attempt = (Attempt) key.attachment();
+                    try {
+                        if (((SocketChannel) key.channel()).finishConnect()) {
+                            success(attempt.address, attempt.elapsed());
+                            return attempt.address;
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        pending--;
+                        failure(attempt.address);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            for (SocketChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static final class RankedDns implements Dns {
+        private final Dns delegate;
+
+        RankedDns(Dns delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            Integer target = port.get();
+            port.remove();
+            List<InetAddress> addresses = delegate.lookup(hostname);
+            if (addresses == null || addresses.size() < 2) return addresses;
+            List<InetAddress> ranked = rank(addresses);
+            if (target == null || !needsRace(ranked) || racing.putIfAbsent(hostname, true) != null) return ranked;
+            try {
+                InetAddress winner = race(ranked, target);
+                if (winner != null && ranked.remove(winner)) ranked.add(0, winner);
+            } finally {
+                racing.remove(hostname);
+            }
+            return ranked;
+        }
+    }
+
+    /**
+     * 记录直连时的 TCP 连接耗时(https 不含 TLS 握手)和 TCP 连接失败
+     */
+    private static final class Listener extends EventListener {
+        private long connectStart;
+        private long tcpNanos;
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            // 经 http 代理时查的是代理的域名, 不知道要连的端口, 不试连
+            HttpUrl url = call.request().url();
+            if (domainName.equals(url.host())) port.set(url.port());
+            else port.remove();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+            tcpNanos = 0;
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tcpNanos = System.nanoTime() - connectStart;
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            if (proxy.type() != Proxy.Type.DIRECT) return;
+            long nanos = tcpNanos > 0 ? tcpNanos : System.nanoTime() - connectStart;
+            success(inetSocketAddress.getAddress(), TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+            // TCP 已经连上、TLS 失败的不算地址的问题
+            if (proxy.type() == Proxy.Type.DIRECT && tcpNanos == 0) failure(inetSocketAddress.getAddress());
+        }
+    }
+}
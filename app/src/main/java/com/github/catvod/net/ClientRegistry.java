@@ -0,0 +1,109 @@
+package com.github.catvod.net;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+
+/**
+ * 全局共用的 OkHttpClient
+ * <p>
+ * OkGo、catvod OkHttp、播放器、DoH 原来各自 new OkHttpClient, 每个都有自己的连接池和调度线程池。
+ * 现在都从这里的 base 派生(newBuilder 共享同一个 ConnectionPool 和 Dispatcher);
+ * 连接池只在 SSLSocketFactory、HostnameVerifier、Dns 等是同一个实例时才复用连接, 所以这些也统一用这里的。
+ * 按重定向/超时派生的客户端缓存起来, 不用每个请求都 newBuilder().build()。
+ * DoH 客户端单独一个 Dispatcher: 其他请求在 dns 查询里等 DoH 结果, 共用同一个会把调度名额占满, DoH 请求永远排不上。
+ */
+public final class ClientRegistry {
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+    private static final int MAX_IDLE = 16;
+    private static final int MAX_DOH_REQUESTS = 16;
+    private static final int MAX_VARIANTS = 32;
+
+    public static final SSLSocketFactory SSL = new SSLCompat();
+    // 每次查询转给当前的 DoH, 切换 DoH 后不用重建客户端
+    public static final Dns DNS = AddressRanker.wrap(hostname -> OkHttp.dns().lookup(hostname));
+
+    private static final OkHttpClient BASE = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MAX_IDLE, 5, TimeUnit.MINUTES))
+            .dispatcher(dispatcher(MAX_REQUESTS, MAX_REQUESTS_PER_HOST))
+            .build();
+
+    private static final Dispatcher DOH_DISPATCHER = dispatcher(MAX_DOH_REQUESTS, MAX_DOH_REQUESTS);
+
+    private static final ConcurrentHashMap<Variant, OkHttpClient> variants = new ConcurrentHashMap<>();
+
+    private ClientRegistry() {
+    }
+
+    private static Dispatcher dispatcher(int maxRequests, int maxRequestsPerHost) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return dispatcher;
+    }
+
+    /**
+     * 共享连接池和调度器的 builder, 其余配置由调用方按用途设置
+     */
+    public static OkHttpClient.Builder newBuilder() {
+        return BASE.newBuilder();
+    }
+
+    /**
+     * DoH 客户端用, 共享连接池, 调度器单独
+     */
+    public static OkHttpClient.Builder newDohBuilder() {
+        return BASE.newBuilder().dispatcher(DOH_DISPATCHER);
+    }
+
+    /**
+     * parent 改成指定的重定向和超时(connect/read/write), 相同参数返回同一个实例
+     */
+    public static OkHttpClient derive(OkHttpClient parent, boolean redirect, int timeout) {
+        Variant key = new Variant(parent, redirect, timeout);
+        OkHttpClient client = variants.get(key);
+        if (client != null) return client;
+        client = parent.newBuilder()
+                .connectTimeout(timeout, TimeUnit.MILLISECONDS)
+                .readTimeout(timeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeout, TimeUnit.MILLISECONDS)
+                .followRedirects(redirect)
+                .followSslRedirects(redirect)
+                .build();
+        // parent 重建后旧的变体不会再用到, 超过上限时整体清掉
+        if (variants.size() >= MAX_VARIANTS) variants.clear();
+        OkHttpClient old = variants.putIfAbsent(key, client);
+        return old != null ? old : client;
+    }
+
+    private static final class Variant {
+        final OkHttpClient parent;
+        final boolean redirect;
+        final int timeout;
+
+        Variant(OkHttpClient parent, boolean redirect, int timeout) {
+            this.parent = parent;
+            this.redirect = redirect;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Variant)) return false;
+            Variant other = (Variant) o;
+            return parent == other.parent && redirect == other.redirect && timeout == other.timeout;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(parent) * 31 + timeout) * 2 + (redirect ? 1 : 0);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package com.github.tvbox.osc.api;
 
 import android.app.Activity;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Base64;
 
 import com.github.catvod.crawler.JarLoader;
+import com.github.catvod.crawler.JarStore;
 import com.github.catvod.crawler.JsLoader;
 import com.github.catvod.crawler.Spider;
 import com.github.tvbox.osc.R;
@@ -22,12 +24,13 @@ import com.github.tvbox.osc.util.AES;
 import com.github.tvbox.osc.util.AdBlocker;
 import com.github.tvbox.osc.util.Config;
 import com.github.tvbox.osc.util.DefaultConfig;
+import com.github.tvbox.osc.util.GsonHelper;
 import com.github.tvbox.osc.util.HawkConfig;
 import com.github.tvbox.osc.util.LOG;
 import com.github.tvbox.osc.util.M3U8;
 import com.github.tvbox.osc.util.MD5;
 import com.github.tvbox.osc.util.VideoParseRuler;
-import com.google.gson.Gson;
+import com.github.tvbox.osc.util.js.JsContextPool;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -78,6 +81,7 @@ public class ApiConfig {
     public String wallpaper = "";
     public JsonArray livePlayHeaders;
     private final SourceBean emptyHome = new SourceBean();
+    private boolean configFromSnapshot = false;
 
     private final JarLoader jarLoader = new JarLoader();
     private final JsLoader jsLoader = new JsLoader();
@@ -171,6 +175,22 @@ public class ApiConfig {
         }
         System.out.println("API URL :" + configUrl);
         String configKey = TempKey;
+        // 有解析结果的快照时直接使用, 配置是否有变化在后台检查
+        ConfigSnapshot snapshot = ConfigSnapshot.load(apiUrl);
+        if (snapshot != null) {
+            try {
+                long start = SystemClock.elapsedRealtime();
+                applyConfig(apiUrl, snapshot);
+                configFromSnapshot = true;
+                LOG.i("从配置快照加载, 耗时" + (SystemClock.elapsedRealtime() - start) + "ms");
+                callback.success();
+                refreshSnapshot(apiUrl, configUrl, configKey, snapshot.hash);
+                return;
+            } catch (Throwable th) {
+                th.printStackTrace();
+            }
+        }
+        configFromSnapshot = false;
         OkGo.<String>get(configUrl).headers("User-Agent", userAgent).headers("Accept", requestAccept).cacheKey(MD5.encode(apiUrl)).cacheMode(CacheMode.IF_NONE_CACHE_REQUEST).cacheTime(60 * 60 * 24)  // 24个小时有效期
                 .execute(new AbsCallback<>() {
 
@@ -182,7 +202,9 @@ public class ApiConfig {
                     @Override
                     public void onSuccess(Response<String> response) {
                         try {
+                            long start = SystemClock.elapsedRealtime();
                             parseJson(apiUrl, response.body());
+                            LOG.i("解析配置耗时" + (SystemClock.elapsedRealtime() - start) + "ms");
                             callback.success();
                         } catch (Throwable th) {
                             th.printStackTrace();
@@ -197,21 +219,51 @@ public class ApiConfig {
                     }
 
                     public String convertResponse(okhttp3.Response response) throws Throwable {
-                        String result = "";
-                        if (response.body() == null) {
-                            result = "";
-                        } else {
-                            result = FindResult(response.body().string(), configKey);
-                        }
-                        if (apiUrl.startsWith("clan")) {
-                            result = clanContentFix(clanToAddress(apiUrl), result);
+                        return convertConfig(apiUrl, configKey, response);
+                    }
+                });
+    }
+
+    /**
+     * 后台拉取配置, 内容 hash 与快照不同时重新解析并更新快照, 下次启动生效
+     */
+    private void refreshSnapshot(String apiUrl, String configUrl, String configKey, String hash) {
+        OkGo.<String>get(configUrl).headers("User-Agent", userAgent).headers("Accept", requestAccept).cacheMode(CacheMode.NO_CACHE)
+                .execute(new AbsCallback<String>() {
+
+                    @Override
+                    public void onSuccess(Response<String> response) {
+                    }
+
+                    public String convertResponse(okhttp3.Response response) throws Throwable {
+                        String result = convertConfig(apiUrl, configKey, response);
+                        if (!result.isEmpty() && !MD5.encode(result).equals(hash)) {
+                            ConfigSnapshot.save(apiUrl, ConfigSnapshot.parse(result));
+                            LOG.i("配置有更新, 已刷新配置快照");
                         }
-                        result = fixContentPath(apiUrl, result);
                         return result;
                     }
                 });
     }
 
+    private String convertConfig(String apiUrl, String configKey, okhttp3.Response response) throws Throwable {
+        String result = "";
+        if (response.body() == null) {
+            result = "";
+        } else {
+            result = FindResult(response.body().string(), configKey);
+        }
+        if (apiUrl.startsWith("clan")) {
+            result = clanContentFix(clanToAddress(apiUrl), result);
+        }
+        result = fixContentPath(apiUrl, result);
+        return result;
+    }
+
+    public boolean isConfigFromSnapshot() {
+        return configFromSnapshot;
+    }
+
     /**
      * 加载Jar包，如果本地有Jar包缓存，并且本地缓存文件的Md5和服务端一致，则直接使用本地缓存，无需再从网络加载。
      */
@@ -222,7 +274,7 @@ public class ApiConfig {
         File cache = new File(App.getInstance().getFilesDir().getAbsolutePath() + "/csp.jar");
 
 
-        if (!md5.isEmpty() && cache.exists() && MD5.getFileMd5(cache).equalsIgnoreCase(md5)) {
+        if (!md5.isEmpty() && JarStore.isVerified(cache, md5)) {
 
             // 缓冲中加载Jar成功直接返回，如果没有成功，继续从网络加载
             if (jarLoader.load(cache.getAbsolutePath())) {
@@ -292,42 +344,32 @@ public class ApiConfig {
     }
 
     private void parseJson(String apiUrl, String jsonStr) {
+        ConfigSnapshot snapshot = ConfigSnapshot.parse(jsonStr);
+        applyConfig(apiUrl, snapshot);
+        ConfigSnapshot.save(apiUrl, snapshot);
+    }
 
-        JsonObject infoJson = new Gson().fromJson(jsonStr, JsonObject.class);
+    private void applyConfig(String apiUrl, ConfigSnapshot snapshot) {
         // spider
-        spider = DefaultConfig.safeJsonString(infoJson, "spider", "");
+        spider = snapshot.spider;
         // wallpaper
-        wallpaper = DefaultConfig.safeJsonString(infoJson, "wallpaper", "");
+        wallpaper = snapshot.wallpaper;
         // 直播播放请求头
-        livePlayHeaders = infoJson.getAsJsonArray("livePlayHeaders");
+        livePlayHeaders = snapshot.getLivePlayHeaders();
         // 远端站点源
         SourceBean firstSite = null;
-        JsonArray sites = infoJson.has("video") ? infoJson.getAsJsonObject("video").getAsJsonArray("sites") : infoJson.get("sites").getAsJsonArray();
-        for (JsonElement opt : sites) {
-            JsonObject obj = (JsonObject) opt;
-            SourceBean sb = new SourceBean();
-            String siteKey = obj.get("key").getAsString().trim();
-            sb.setKey(siteKey);
-            sb.setName(obj.get("name").getAsString().trim());
-            sb.setType(obj.get("type").getAsInt());
-            sb.setApi(obj.get("api").getAsString().trim());
-            sb.setSearchable(DefaultConfig.safeJsonInt(obj, "searchable", 1));
-            sb.setQuickSearch(DefaultConfig.safeJsonInt(obj, "quickSearch", 1));
-            sb.setFilterable(DefaultConfig.safeJsonInt(obj, "filterable", 1));
-            sb.setHide(DefaultConfig.safeJsonInt(obj, "hide", 0));
-            sb.setPlayerUrl(DefaultConfig.safeJsonString(obj, "playUrl", ""));
-            if (obj.has("ext") && (obj.get("ext").isJsonObject() || obj.get("ext").isJsonArray())) {
-                sb.setExt(obj.get("ext").toString());
-            } else {
-                sb.setExt(DefaultConfig.safeJsonString(obj, "ext", ""));
-            }
-            sb.setJar(DefaultConfig.safeJsonString(obj, "jar", ""));
-            sb.setPlayerType(DefaultConfig.safeJsonInt(obj, "playerType", -1));
-            sb.setCategories(DefaultConfig.safeJsonStringList(obj, "categories"));
-            sb.setClickSelector(DefaultConfig.safeJsonString(obj, "click", ""));
+        boolean hasJs = false;
+        List<String> jars = new ArrayList<>();
+        for (SourceBean sb : snapshot.sites) {
             if (firstSite == null && sb.getHide() == 0) firstSite = sb;
-            sourceBeanList.put(siteKey, sb);
+            if (!hasJs && (sb.getApi().endsWith(".js") || sb.getApi().contains(".js?"))) hasJs = true;
+            if (!TextUtils.isEmpty(sb.getJar())) jars.add(sb.getJar());
+            sourceBeanList.put(sb.getKey(), sb);
         }
+        // 有 js 源时提前准备 QuickJS 上下文
+        if (hasJs) JsContextPool.prewarm();
+        // 站点单独配置的 jar 并行预取, 用到时不用再等下载
+        JarStore.prefetch(jars);
         if (sourceBeanList != null && sourceBeanList.size() > 0) {
             String home = Hawk.get(HawkConfig.HOME_API, "");
             SourceBean sh = getSource(home);
@@ -335,22 +377,10 @@ public class ApiConfig {
             else setSourceBean(sh);
         }
         // 需要使用vip解析的flag
-        vipParseFlags = DefaultConfig.safeJsonStringList(infoJson, "flags");
+        vipParseFlags = snapshot.flags;
         // 解析地址
         parseBeanList.clear();
-        if (infoJson.has("parses")) {
-            JsonArray parses = infoJson.get("parses").getAsJsonArray();
-            for (JsonElement opt : parses) {
-                JsonObject obj = (JsonObject) opt;
-                ParseBean pb = new ParseBean();
-                pb.setName(obj.get("name").getAsString().trim());
-                pb.setUrl(obj.get("url").getAsString().trim());
-                String ext = obj.has("ext") ? obj.get("ext").getAsJsonObject().toString() : "";
-                pb.setExt(ext);
-                pb.setType(DefaultConfig.safeJsonInt(obj, "type", 0));
-                parseBeanList.add(pb);
-            }
-        }
+        parseBeanList.addAll(snapshot.parses);
         // 获取默认解析
         if (parseBeanList != null && parseBeanList.size() > 0) {
             String defaultParse = Hawk.get(HawkConfig.DEFAULT_PARSE, "");
@@ -367,8 +397,9 @@ public class ApiConfig {
 
         String liveURL_final = null;
         try {
-            if (infoJson.has("lives") && infoJson.get("lives").getAsJsonArray() != null) {
-                JsonObject livesOBJ = infoJson.get("lives").getAsJsonArray().get(0).getAsJsonObject();
+            JsonArray livesArray = snapshot.getLives();
+            if (livesArray != null) {
+                JsonObject livesOBJ = livesArray.get(0).getAsJsonObject();
                 String lives = livesOBJ.toString();
                 int index = lives.indexOf("proxy://");
                 if (index != -1) {
@@ -429,9 +460,9 @@ public class ApiConfig {
 
                     // if FongMi Live URL Formatting exists
                     if (!lives.contains("type")) {
-                        loadLives(infoJson.get("lives").getAsJsonArray());
+                        loadLives(livesArray);
                     } else {
-                        JsonObject fengMiLives = infoJson.get("lives").getAsJsonArray().get(0).getAsJsonObject();
+                        JsonObject fengMiLives = livesArray.get(0).getAsJsonObject();
                         Hawk.put(HawkConfig.LIVE_PLAYER_TYPE, DefaultConfig.safeJsonInt(fengMiLives, "playerType", -1));
                         String type = fengMiLives.get("type").getAsString();
                         if (type.equals("0")) {
@@ -487,9 +518,10 @@ public class ApiConfig {
         }
 
         // Video parse rule for host
-        if (infoJson.has("rules")) {
+        JsonArray rules = snapshot.getRules();
+        if (rules != null) {
             VideoParseRuler.clearRule();
-            for (JsonElement oneHostRule : infoJson.getAsJsonArray("rules")) {
+            for (JsonElement oneHostRule : rules) {
                 JsonObject obj = (JsonObject) oneHostRule;
                 if (obj.has("host")) {
                     String host = obj.get("host").getAsString();
@@ -536,42 +568,19 @@ public class ApiConfig {
             }
         }
 
-        String defaultIJKADS = "{\"ijk\":[{\"options\":[{\"name\":\"opensles\",\"category\":4,\"value\":\"0\"},{\"name\":\"overlay-format\",\"category\":4,\"value\":\"842225234\"},{\"name\":\"framedrop\",\"category\":4,\"value\":\"0\"},{\"name\":\"soundtouch\",\"category\":4,\"value\":\"1\"},{\"name\":\"start-on-prepared\",\"category\":4,\"value\":\"1\"},{\"name\":\"http-detect-rangeupport\",\"category\":1,\"value\":\"0\"},{\"name\":\"fflags\",\"category\":1,\"value\":\"fastseek\"},{\"name\":\"skip_loop_filter\",\"category\":2,\"value\":\"48\"},{\"name\":\"reconnect\",\"category\":4,\"value\":\"1\"},{\"name\":\"enable-accurate-seek\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-auto-rotate\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-handle-resolution-change\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-hevc\",\"category\":4,\"value\":\"0\"},{\"name\":\"dns_cache_timeout\",\"category\":1,\"value\":\"600000000\"}],\"group\":\"软解码\"},{\"options\":[{\"name\":\"opensles\",\"category\":4,\"value\":\"0\"},{\"name\":\"overlay-format\",\"category\":4,\"value\":\"842225234\"},{\"name\":\"framedrop\",\"category\":4,\"value\":\"0\"},{\"name\":\"soundtouch\",\"category\":4,\"value\":\"1\"},{\"name\":\"start-on-prepared\",\"category\":4,\"value\":\"1\"},{\"name\":\"http-detect-rangeupport\",\"category\":1,\"value\":\"0\"},{\"name\":\"fflags\",\"category\":1,\"value\":\"fastseek\"},{\"name\":\"skip_loop_filter\",\"category\":2,\"value\":\"48\"},{\"name\":\"reconnect\",\"category\":4,\"value\":\"1\"},{\"name\":\"enable-accurate-seek\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-auto-rotate\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-handle-resolution-change\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-hevc\",\"category\":4,\"value\":\"1\"},{\"name\":\"dns_cache_timeout\",\"category\":1,\"value\":\"600000000\"}],\"group\":\"硬解码\"}],\"ads\":[\"mimg.0c1q0l.cn\",\"www.googletagmanager.com\",\"www.google-analytics.com\",\"mc.usihnbcq.cn\",\"mg.g1mm3d.cn\",\"mscs.svaeuzh.cn\",\"cnzz.hhttm.top\",\"tp.vinuxhome.com\",\"cnzz.mmstat.com\",\"www.baihuillq.com\",\"s23.cnzz.com\",\"z3.cnzz.com\",\"c.cnzz.com\",\"stj.v1vo.top\",\"z12.cnzz.com\",\"img.mosflower.cn\",\"tips.gamevvip.com\",\"ehwe.yhdtns.com\",\"xdn.cqqc3.com\",\"www.jixunkyy.cn\",\"sp.chemacid.cn\",\"hm.baidu.com\",\"s9.cnzz.com\",\"z6.cnzz.com\",\"um.cavuc.com\",\"mav.mavuz.com\",\"wofwk.aoidf3.com\",\"z5.cnzz.com\",\"xc.hubeijieshikj.cn\",\"tj.tianwenhu.com\",\"xg.gars57.cn\",\"k.jinxiuzhilv.com\",\"cdn.bootcss.com\",\"ppl.xunzhuo123.com\",\"xomk.jiangjunmh.top\",\"img.xunzhuo123.com\",\"z1.cnzz.com\",\"s13.cnzz.com\",\"xg.huataisangao.cn\",\"z7.cnzz.com\",\"xg.huataisangao.cn\",\"z2.cnzz.com\",\"s96.cnzz.com\",\"q11.cnzz.com\",\"thy.dacedsfa.cn\",\"xg.whsbpw.cn\",\"s19.cnzz.com\",\"z8.cnzz.com\",\"s4.cnzz.com\",\"f5w.as12df.top\",\"ae01.alicdn.com\",\"www.92424.cn\",\"k.wudejia.com\",\"vivovip.mmszxc.top\",\"qiu.xixiqiu.com\",\"cdnjs.hnfenxun.com\",\"cms.qdwght.com\"]}";
-        JsonObject defaultJson = new Gson().fromJson(defaultIJKADS, JsonObject.class);
         // 广告地址
         if (AdBlocker.isEmpty()) {
 //            AdBlocker.clear();
-            //追加的广告拦截
-            if (infoJson.has("ads")) {
-                for (JsonElement host : infoJson.getAsJsonArray("ads")) {
-                    AdBlocker.addAdHost(host.getAsString());
-                }
-            } else {
-                //默认广告拦截
-                for (JsonElement host : defaultJson.getAsJsonArray("ads")) {
-                    AdBlocker.addAdHost(host.getAsString());
-                }
-            }
+            //追加的广告拦截, 配置中没有时为默认广告拦截
+            AdBlocker.setAdHosts(snapshot.ads);
         }
         // IJK解码配置
         if (ijkCodes == null) {
             ijkCodes = new ArrayList<>();
             boolean foundOldSelect = false;
             String ijkCodec = Hawk.get(HawkConfig.IJK_CODEC, "");
-            JsonArray ijkJsonArray = infoJson.has("ijk") ? infoJson.get("ijk").getAsJsonArray() : defaultJson.get("ijk").getAsJsonArray();
-            for (JsonElement opt : ijkJsonArray) {
-                JsonObject obj = (JsonObject) opt;
-                String name = obj.get("group").getAsString();
-                LinkedHashMap<String, String> baseOpt = new LinkedHashMap<>();
-                for (JsonElement cfg : obj.get("options").getAsJsonArray()) {
-                    JsonObject cObj = (JsonObject) cfg;
-                    String key = cObj.get("category").getAsString() + "|" + cObj.get("name").getAsString();
-                    String val = cObj.get("value").getAsString();
-                    baseOpt.put(key, val);
-                }
-                IJKCode codec = new IJKCode();
-                codec.setName(name);
-                codec.setOption(baseOpt);
+            for (IJKCode codec : snapshot.ijk) {
+                String name = codec.getName();
                 if (name.equals(ijkCodec) || TextUtils.isEmpty(ijkCodec)) {
                     codec.selected(true);
                     ijkCodec = name;
@@ -725,6 +734,11 @@ public class ApiConfig {
         return mHomeSource == null ? emptyHome : mHomeSource;
     }
 
+    public void setLiveChannelGroups(List<LiveChannelGroup> groups) {
+        liveChannelGroupList.clear();
+        liveChannelGroupList.addAll(groups);
+    }
+
     public List<LiveChannelGroup> getChannelGroupList() {
         return liveChannelGroupList;
     }
@@ -824,7 +838,7 @@ public class ApiConfig {
                         if (result != null && !result.isEmpty()) {
 
                             urlBeans.clear();
-                            JsonObject json = new Gson().fromJson(result, JsonObject.class);
+                            JsonObject json = GsonHelper.GSON.fromJson(result, JsonObject.class);
                             JsonArray urls = json.get("urls").getAsJsonArray();
                             for (JsonElement element : urls) {
                                 JsonObject obj = (JsonObject) element;
@@ -0,0 +1,301 @@
+package com.github.tvbox.osc.api;
+
+import com.github.tvbox.osc.base.App;
+import com.github.tvbox.osc.bean.IJKCode;
+import com.github.tvbox.osc.bean.ParseBean;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.util.DefaultConfig;
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.util.MD5;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 配置解析结果的二进制快照, 按配置地址保存, 记录配置内容的 hash。
+ * 冷启动时直接读取快照, 不再对整份配置 JSON 做解析; 只保存解析结果,
+ * 依赖本地设置(首页源、默认解析、直播地址等)的部分在 ApiConfig 中应用。
+ */
+public class ConfigSnapshot {
+    private static final int VERSION = 3;
+    private static final String DEFAULT_IJK_ADS = "{\"ijk\":[{\"options\":[{\"name\":\"opensles\",\"category\":4,\"value\":\"0\"},{\"name\":\"overlay-format\",\"category\":4,\"value\":\"842225234\"},{\"name\":\"framedrop\",\"category\":4,\"value\":\"0\"},{\"name\":\"soundtouch\",\"category\":4,\"value\":\"1\"},{\"name\":\"start-on-prepared\",\"category\":4,\"value\":\"1\"},{\"name\":\"http-detect-rangeupport\",\"category\":1,\"value\":\"0\"},{\"name\":\"fflags\",\"category\":1,\"value\":\"fastseek\"},{\"name\":\"skip_loop_filter\",\"category\":2,\"value\":\"48\"},{\"name\":\"reconnect\",\"category\":4,\"value\":\"1\"},{\"name\":\"enable-accurate-seek\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-auto-rotate\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-handle-resolution-change\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-hevc\",\"category\":4,\"value\":\"0\"},{\"name\":\"dns_cache_timeout\",\"category\":1,\"value\":\"600000000\"}],\"group\":\"软解码\"},{\"options\":[{\"name\":\"opensles\",\"category\":4,\"value\":\"0\"},{\"name\":\"overlay-format\",\"category\":4,\"value\":\"842225234\"},{\"name\":\"framedrop\",\"category\":4,\"value\":\"0\"},{\"name\":\"soundtouch\",\"category\":4,\"value\":\"1\"},{\"name\":\"start-on-prepared\",\"category\":4,\"value\":\"1\"},{\"name\":\"http-detect-rangeupport\",\"category\":1,\"value\":\"0\"},{\"name\":\"fflags\",\"category\":1,\"value\":\"fastseek\"},{\"name\":\"skip_loop_filter\",\"category\":2,\"value\":\"48\"},{\"name\":\"reconnect\",\"category\":4,\"value\":\"1\"},{\"name\":\"enable-accurate-seek\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-auto-rotate\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-handle-resolution-change\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-hevc\",\"category\":4,\"value\":\"1\"},{\"name\":\"dns_cache_timeout\",\"category\":1,\"value\":\"600000000\"}],\"group\":\"硬解码\"}],\"ads\":[\"mimg.0c1q0l.cn\",\"www.googletagmanager.com\",\"www.google-analytics.com\",\"mc.usihnbcq.cn\",\"mg.g1mm3d.cn\",\"mscs.svaeuzh.cn\",\"cnzz.hhttm.top\",\"tp.vinuxhome.com\",\"cnzz.mmstat.com\",\"www.baihuillq.com\",\"s23.cnzz.com\",\"z3.cnzz.com\",\"c.cnzz.com\",\"stj.v1vo.top\",\"z12.cnzz.com\",\"img.mosflower.cn\",\"tips.gamevvip.com\",\"ehwe.yhdtns.com\",\"xdn.cqqc3.com\",\"www.jixunkyy.cn\",\"sp.chemacid.cn\",\"hm.baidu.com\",\"s9.cnzz.com\",\"z6.cnzz.com\",\"um.cavuc.com\",\"mav.mavuz.com\",\"wofwk.aoidf3.com\",\"z5.cnzz.com\",\"xc.hubeijieshikj.cn\",\"tj.tianwenhu.com\",\"xg.gars57.cn\",\"k.jinxiuzhilv.com\",\"cdn.bootcss.com\",\"ppl.xunzhuo123.com\",\"xomk.jiangjunmh.top\",\"img.xunzhuo123.com\",\"z1.cnzz.com\",\"s13.cnzz.com\",\"xg.huataisangao.cn\",\"z7.cnzz.com\",\"xg.huataisangao.cn\",\"z2.cnzz.com\",\"s96.cnzz.com\",\"q11.cnzz.com\",\"thy.dacedsfa.cn\",\"xg.whsbpw.cn\",\"s19.cnzz.com\",\"z8.cnzz.com\",\"s4.cnzz.com\",\"f5w.as12df.top\",\"ae01.alicdn.com\",\"www.92424.cn\",\"k.wudejia.com\",\"vivovip.mmszxc.top\",\"qiu.xixiqiu.com\",\"cdnjs.hnfenxun.com\",\"cms.qdwght.com\"]}";
+
+    public String hash;
+    public String spider;
+    public String wallpaper;
+    public String livePlayHeaders;
+    public final List<SourceBean> sites = new ArrayList<>();
+    public ArrayList<String> flags = new ArrayList<>();
+    public final List<ParseBean> parses = new ArrayList<>();
+    //lives 和 rules 体积小且与本地设置相关, 保留原始 JSON
+    public String lives;
+    public String rules;
+    public final List<String> ads = new ArrayList<>();
+    public final List<IJKCode> ijk = new ArrayList<>();
+
+    public static ConfigSnapshot parse(String jsonStr) {
+        ConfigSnapshot snapshot = new ConfigSnapshot();
+        snapshot.hash = MD5.encode(jsonStr);
+        JsonObject infoJson = JsonParser.parseString(jsonStr).getAsJsonObject();
+        snapshot.spider = DefaultConfig.safeJsonString(infoJson, "spider", "");
+        snapshot.wallpaper = DefaultConfig.safeJsonString(infoJson, "wallpaper", "");
+        snapshot.livePlayHeaders = infoJson.has("livePlayHeaders") && infoJson.get("livePlayHeaders").isJsonArray() ? infoJson.get("livePlayHeaders").toString() : null;
+        // 远端站点源
+        JsonArray sites = infoJson.has("video") ? infoJson.getAsJsonObject("video").getAsJsonArray("sites") : infoJson.get("sites").getAsJsonArray();
+        for (JsonElement opt : sites) {
+            JsonObject obj = (JsonObject) opt;
+            SourceBean sb = new SourceBean();
+            sb.setKey(obj.get("key").getAsString().trim());
+            sb.setName(obj.get("name").getAsString().trim());
+            sb.setType(obj.get("type").getAsInt());
+            sb.setApi(obj.get("api").getAsString().trim());
+            sb.setSearchable(DefaultConfig.safeJsonInt(obj, "searchable", 1));
+            sb.setQuickSearch(DefaultConfig.safeJsonInt(obj, "quickSearch", 1));
+            sb.setFilterable(DefaultConfig.safeJsonInt(obj, "filterable", 1));
+            sb.setHide(DefaultConfig.safeJsonInt(obj, "hide", 0));
+            sb.setPlayerUrl(DefaultConfig.safeJsonString(obj, "playUrl", ""));
+            if (obj.has("ext") && (obj.get("ext").isJsonObject() || obj.get("ext").isJsonArray())) {
+                sb.setExt(obj.get("ext").toString());
+            } else {
+                sb.setExt(DefaultConfig.safeJsonString(obj, "ext", ""));
+            }
+            sb.setJar(DefaultConfig.safeJsonString(obj, "jar", ""));
+            sb.setPlayerType(DefaultConfig.safeJsonInt(obj, "playerType", -1));
+            sb.setCategories(DefaultConfig.safeJsonStringList(obj, "categories"));
+            sb.setClickSelector(DefaultConfig.safeJsonString(obj, "click", ""));
+            sb.setSearchCache(DefaultConfig.safeJsonInt(obj, "searchCache", -1));
+            snapshot.sites.add(sb);
+        }
+        // 需要使用vip解析的flag
+        snapshot.flags = DefaultConfig.safeJsonStringList(infoJson, "flags");
+        // 解析地址
+        if (infoJson.has("parses")) {
+            for (JsonElement opt : infoJson.get("parses").getAsJsonArray()) {
+                JsonObject obj = (JsonObject) opt;
+                ParseBean pb = new ParseBean();
+                pb.setName(obj.get("name").getAsString().trim());
+                pb.setUrl(obj.get("url").getAsString().trim());
+                pb.setExt(obj.has("ext") ? obj.get("ext").getAsJsonObject().toString() : "");
+                pb.setType(DefaultConfig.safeJsonInt(obj, "type", 0));
+                snapshot.parses.add(pb);
+            }
+        }
+        if (infoJson.has("lives") && infoJson.get("lives").isJsonArray()) {
+            snapshot.lives = infoJson.get("lives").toString();
+        }
+        if (infoJson.has("rules") && infoJson.get("rules").isJsonArray()) {
+            snapshot.rules = infoJson.get("rules").toString();
+        }
+        JsonObject defaultJson = null;
+        if (!infoJson.has("ads") || !infoJson.has("ijk")) {
+            defaultJson = JsonParser.parseString(DEFAULT_IJK_ADS).getAsJsonObject();
+        }
+        // 广告地址
+        for (JsonElement host : (infoJson.has("ads") ? infoJson : defaultJson).getAsJsonArray("ads")) {
+            snapshot.ads.add(host.getAsString());
+        }
+        // IJK解码配置
+        for (JsonElement opt : (infoJson.has("ijk") ? infoJson : defaultJson).get("ijk").getAsJsonArray()) {
+            JsonObject obj = (JsonObject) opt;
+            LinkedHashMap<String, String> baseOpt = new LinkedHashMap<>();
+            for (JsonElement cfg : obj.get("options").getAsJsonArray()) {
+                JsonObject cObj = (JsonObject) cfg;
+                String key = cObj.get("category").getAsString() + "|" + cObj.get("name").getAsString();
+                baseOpt.put(key, cObj.get("value").getAsString());
+            }
+            IJKCode codec = new IJKCode();
+            codec.setName(obj.get("group").getAsString());
+            codec.setOption(baseOpt);
+            snapshot.ijk.add(codec);
+        }
+        return snapshot;
+    }
+
+    public JsonArray getLivePlayHeaders() {
+        return livePlayHeaders == null ? null : JsonParser.parseString(livePlayHeaders).getAsJsonArray();
+    }
+
+    public JsonArray getLives() {
+        return lives == null ? null : JsonParser.parseString(lives).getAsJsonArray();
+    }
+
+    public JsonArray getRules() {
+        return rules == null ? null : JsonParser.parseString(rules).getAsJsonArray();
+    }
+
+    private static File file(String apiUrl) {
+        return new File(App.getInstance().getFilesDir(), "config_snapshot/" + MD5.encode(apiUrl) + ".bin");
+    }
+
+    public static ConfigSnapshot load(String apiUrl) {
+        File file = file(apiUrl);
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 32 * 1024))) {
+            return read(in);
+        } catch (Throwable th) {
+            LOG.e(th);
+            file.delete();
+            return null;
+        }
+    }
+
+    public static void save(String apiUrl, ConfigSnapshot snapshot) {
+        File file = file(apiUrl);
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists()) dir.mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 32 * 1024))) {
+                write(out, snapshot);
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                temp.renameTo(file);
+            }
+        } catch (Throwable th) {
+            LOG.e(th);
+            temp.delete();
+        }
+    }
+
+    private static void write(DataOutputStream out, ConfigSnapshot s) throws IOException {
+        out.writeInt(VERSION);
+        writeString(out, s.hash);
+        writeString(out, s.spider);
+        writeString(out, s.wallpaper);
+        writeString(out, s.livePlayHeaders);
+        out.writeInt(s.sites.size());
+        for (SourceBean sb : s.sites) {
+            writeString(out, sb.getKey());
+            writeString(out, sb.getName());
+            out.writeInt(sb.getType());
+            writeString(out, sb.getApi());
+            out.writeInt(sb.getSearchable());
+            out.writeInt(sb.getQuickSearch());
+            out.writeInt(sb.getFilterable());
+            out.writeInt(sb.getHide());
+            writeString(out, sb.getPlayerUrl());
+            writeString(out, sb.getExt());
+            writeString(out, sb.getJar());
+            out.writeInt(sb.getPlayerType());
+            writeStrings(out, sb.getCategories());
+            writeString(out, sb.getClickSelector());
+            out.writeInt(sb.getSearchCache());
+        }
+        writeStrings(out, s.flags);
+        out.writeInt(s.parses.size());
+        for (ParseBean pb : s.parses) {
+            writeString(out, pb.getName());
+            writeString(out, pb.getRawUrl());
+            writeString(out, pb.getExt());
+            out.writeInt(pb.getType());
+        }
+        writeString(out, s.lives);
+        writeString(out, s.rules);
+        writeStrings(out, s.ads);
+        out.writeInt(s.ijk.size());
+        for (IJKCode codec : s.ijk) {
+            writeString(out, codec.getName());
+            out.writeInt(codec.getOption().size());
+            for (Map.Entry<String, String> entry : codec.getOption().entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    private static ConfigSnapshot read(DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) return null;
+        ConfigSnapshot s = new ConfigSnapshot();
+        s.hash = readString(in);
+        s.spider = readString(in);
+        s.wallpaper = readString(in);
+        s.livePlayHeaders = readString(in);
+        for (int i = 0, n = in.readInt(); i < n; i++) {
+            SourceBean sb = new SourceBean();
+            sb.setKey(readString(in));
+            sb.setName(readString(in));
+            sb.setType(in.readInt());
+            sb.setApi(readString(in));
+            sb.setSearchable(in.readInt());
+            sb.setQuickSearch(in.readInt());
+            sb.setFilterable(in.readInt());
+            sb.setHide(in.readInt());
+            sb.setPlayerUrl(readString(in));
+            sb.setExt(readString(in));
+            sb.setJar(readString(in));
+            sb.setPlayerType(in.readInt());
+            sb.setCategories(readStrings(in));
+            sb.setClickSelector(readString(in));
+            sb.setSearchCache(in.readInt());
+            s.sites.add(sb);
+        }
+        s.flags = readStrings(in);
+        for (int i = 0, n = in.readInt(); i < n; i++) {
+            ParseBean pb = new ParseBean();
+            pb.setName(readString(in));
+            pb.setUrl(readString(in));
+            pb.setExt(readString(in));
+            pb.setType(in.readInt());
+            s.parses.add(pb);
+        }
+        s.lives = readString(in);
+        s.rules = readString(in);
+        s.ads.addAll(readStrings(in));
+        for (int i = 0, n = in.readInt(); i < n; i++) {
+            IJKCode codec = new IJKCode();
+            codec.setName(readString(in));
+            LinkedHashMap<String, String> option = new LinkedHashMap<>();
+            for (int j = 0, m = in.readInt(); j < m; j++) option.put(readString(in), readString(in));
+            codec.setOption(option);
+            s.ijk.add(codec);
+        }
+        return s;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values != null) for (String value : values) writeString(out, value);
+    }
+
+    private static ArrayList<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) return null;
+        ArrayList<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) values.add(readString(in));
+        return values;
+    }
+}
@@ -3,6 +3,7 @@ package com.github.tvbox.osc.base;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.webkit.MimeTypeMap;
 
 import androidx.core.os.HandlerCompat;
@@ -12,6 +13,7 @@ import com.github.catvod.crawler.JarLoader;
 import com.github.catvod.crawler.JsLoader;
 import com.github.tvbox.osc.R;
 import com.github.tvbox.osc.api.ApiConfig;
+import com.github.tvbox.osc.cache.CacheSweeper;
 import com.github.tvbox.osc.callback.EmptyCallback;
 import com.github.tvbox.osc.callback.LoadingCallback;
 import com.github.tvbox.osc.data.AppDataManager;
@@ -54,6 +56,8 @@ public class App extends MultiDexApplication {
     private static String dashData;
     public static ViewPump viewPump = null;
     private static Server server = null;
+    // 进程启动时间, 用于统计启动到首页的耗时
+    private static final long startTime = SystemClock.elapsedRealtime();
     private final Handler handler;
 
     public App() {
@@ -78,6 +82,7 @@ public class App extends MultiDexApplication {
         ControlManager.init(this);
         //初始化数据库
         AppDataManager.init();
+        CacheSweeper.start();
         LoadSir.beginBuilder()
                 .addCallback(new EmptyCallback())
                 .addCallback(new LoadingCallback())
@@ -167,6 +172,10 @@ public class App extends MultiDexApplication {
         }
     }
 
+    public static long getStartTime() {
+        return startTime;
+    }
+
     public static App getInstance() {
         return instance;
     }
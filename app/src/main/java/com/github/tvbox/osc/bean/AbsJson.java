@@ -24,7 +24,7 @@ public class AbsJson implements Serializable {
     public int total;   // : 4166
 
 
-    public class AbsJsonVod implements Serializable {
+    public static class AbsJsonVod implements Serializable {
         public int group_id; //: 0
         public int type_id; //: 32
         public int type_id_1; //: 31
@@ -30,6 +30,10 @@ public class ParseBean {
         return DefaultConfig.checkReplaceProxy(url);
     }
 
+    public String getRawUrl() {
+        return url;
+    }
+
     public void setUrl(String url) {
         this.url = url;
     }
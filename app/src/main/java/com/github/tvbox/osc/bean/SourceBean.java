@@ -17,6 +17,7 @@ public class SourceBean {
     private ArrayList<String> categories = null; // 分类&排序
     private int playerType; // 0 system 1 ikj 2 exo 10 mxplayer -1 以参数设置页面的为准
     private String clickSelector; // 需要点击播放的嗅探站点selector   ddrk.me;#id
+    private int searchCache = -1; // 搜索结果缓存时间(秒), -1 以设置为准, 0 不缓存
 
     public String getKey() {
         return key;
@@ -62,6 +63,10 @@ public class SourceBean {
         return searchable != 0;
     }
 
+    public int getSearchable() {
+        return searchable;
+    }
+
     public void setSearchable(int searchable) {
         this.searchable = searchable;
     }
@@ -70,6 +75,10 @@ public class SourceBean {
         return quickSearch != 0;
     }
 
+    public int getQuickSearch() {
+        return quickSearch;
+    }
+
     public void setQuickSearch(int quickSearch) {
         this.quickSearch = quickSearch;
     }
@@ -129,4 +138,12 @@ public class SourceBean {
     public void setClickSelector(String clickSelector) {
         this.clickSelector = clickSelector;
     }
-}
\ No newline at end of file
+
+    public int getSearchCache() {
+        return searchCache;
+    }
+
+    public void setSearchCache(int searchCache) {
+        this.searchCache = searchCache;
+    }
+}
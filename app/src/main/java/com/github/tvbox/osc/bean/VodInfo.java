@@ -5,6 +5,7 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 
 import com.github.tvbox.osc.api.ApiConfig;
+import com.github.tvbox.osc.util.GsonHelper;
 import com.google.gson.Gson;
 
 import java.io.Serializable;
@@ -157,7 +158,7 @@ public class VodInfo implements Serializable {
     @Override
     public Object clone() {
         try {
-            Gson gson = new Gson();
+            Gson gson = GsonHelper.GSON;
             String json = gson.toJson(this);
             return gson.fromJson(json, VodInfo.class);
         } catch (Exception ignored) {
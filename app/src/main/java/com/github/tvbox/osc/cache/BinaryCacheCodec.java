@@ -0,0 +1,130 @@
+package com.github.tvbox.osc.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * 类描述: 带版本号的紧凑二进制编码
+ * <p>
+ * 格式: [版本][类型][数据], 常用的 Long/String 等直接写原始值,
+ * 其他 Serializable 对象退回到 Java 序列化。
+ * 旧版本直接用 ObjectOutputStream 写入的数据(0xACED 开头)仍可读取。
+ */
+public class BinaryCacheCodec implements CacheCodec {
+    static final byte VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_BOOLEAN = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte TYPE_BYTES = 6;
+    private static final byte TYPE_SERIALIZABLE = 7;
+
+    @Override
+    public byte[] encode(Object body) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeByte(VERSION);
+            if (body == null) {
+                out.writeByte(TYPE_NULL);
+            } else if (body instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong((Long) body);
+            } else if (body instanceof Integer) {
+                out.writeByte(TYPE_INT);
+                out.writeInt((Integer) body);
+            } else if (body instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) body);
+            } else if (body instanceof Double) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble((Double) body);
+            } else if (body instanceof String) {
+                byte[] bytes = ((String) body).getBytes("UTF-8");
+                out.writeByte(TYPE_STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else if (body instanceof byte[]) {
+                byte[] bytes = (byte[]) body;
+                out.writeByte(TYPE_BYTES);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else if (body instanceof Serializable) {
+                out.writeByte(TYPE_SERIALIZABLE);
+                out.flush();
+                ObjectOutputStream oos = new ObjectOutputStream(baos);
+                oos.writeObject(body);
+                oos.flush();
+            } else {
+                throw new IllegalArgumentException("unsupported cache type: " + body.getClass().getName());
+            }
+            out.flush();
+            return baos.toByteArray();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return new byte[0];
+    }
+
+    @Override
+    public Object decode(byte[] data) {
+        if (data == null || data.length < 2) {
+            return null;
+        }
+        if (isLegacy(data)) {
+            return readSerializable(data, 0);
+        }
+        if (data[0] != VERSION) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 2, data.length - 2));
+            switch (data[1]) {
+                case TYPE_LONG:
+                    return in.readLong();
+                case TYPE_INT:
+                    return in.readInt();
+                case TYPE_BOOLEAN:
+                    return in.readBoolean();
+                case TYPE_DOUBLE:
+                    return in.readDouble();
+                case TYPE_STRING:
+                    return new String(data, 6, in.readInt(), "UTF-8");
+                case TYPE_BYTES: {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    return bytes;
+                }
+                case TYPE_SERIALIZABLE:
+                    return readSerializable(data, 2);
+                default:
+                    return null;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    //ObjectOutputStream 的 STREAM_MAGIC
+    private static boolean isLegacy(byte[] data) {
+        return data[0] == (byte) 0xAC && data[1] == (byte) 0xED;
+    }
+
+    private static Object readSerializable(byte[] data, int offset) {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data, offset, data.length - offset))) {
+            return ois.readObject();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
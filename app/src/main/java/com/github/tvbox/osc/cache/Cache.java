@@ -1,6 +1,7 @@
 package com.github.tvbox.osc.cache;
 
 import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.PrimaryKey;
 
@@ -18,4 +19,16 @@ public class Cache implements Serializable {
     @NonNull
     public String key;
     public byte[] data;
+    //过期时间(毫秒), 0 表示永不过期
+    @ColumnInfo(defaultValue = "0")
+    public long expiresAt;
+    //data 的字节数, 用于按容量清理
+    @ColumnInfo(defaultValue = "0")
+    public int size;
+    @ColumnInfo(defaultValue = "0")
+    public long lastAccess;
+
+    public boolean isExpired(long now) {
+        return expiresAt > 0 && expiresAt <= now;
+    }
 }
@@ -0,0 +1,10 @@
+package com.github.tvbox.osc.cache;
+
+/**
+ * 类描述: cache 表 data 字段的编解码器
+ */
+public interface CacheCodec {
+    byte[] encode(Object body);
+
+    Object decode(byte[] data);
+}
@@ -31,8 +31,21 @@ public interface CacheDao {
      */
 
     //如果是一对多,这里可以写List<Cache>
-    @Query("select *from cache where `key`=:key")
-    Cache getCache(String key);
+    @Query("select *from cache where `key`=:key and (expiresAt = 0 or expiresAt > :now)")
+    Cache getCache(String key, long now);
+
+    @Query("update cache set lastAccess=:now where `key`=:key")
+    int touch(String key, long now);
+
+    @Query("delete from cache where expiresAt > 0 and expiresAt <= :now")
+    int deleteExpired(long now);
+
+    @Query("select ifnull(sum(size), 0) from cache")
+    long totalSize();
+
+    //按最近访问时间淘汰最旧的记录
+    @Query("delete from cache where `key` in (select `key` from cache order by lastAccess asc limit :count)")
+    int deleteOldest(int count);
 
     //只能传递对象昂,删除时根据Cache中的主键 来比对的
     @Delete
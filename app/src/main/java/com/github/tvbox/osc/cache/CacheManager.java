@@ -1,11 +1,11 @@
 package com.github.tvbox.osc.cache;
 
+import android.util.LruCache;
+
 import com.github.tvbox.osc.data.AppDataManager;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 类描述:
@@ -14,77 +14,89 @@ import java.io.ObjectOutputStream;
  * @since 2020/5/15
  */
 public class CacheManager {
-    //反序列,把二进制数据转换成java object对象
-    private static Object toObject(byte[] data) {
-        ByteArrayInputStream bais = null;
-        ObjectInputStream ois = null;
-        try {
-            bais = new ByteArrayInputStream(data);
-            ois = new ObjectInputStream(bais);
-            return ois.readObject();
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (bais != null) {
-                    bais.close();
-                }
-                if (ois != null) {
-                    ois.close();
-                }
-            } catch (Exception ignore) {
-                ignore.printStackTrace();
-            }
-        }
-        return null;
-    }
+    //内存缓存上限(字节), 命中时不再查询数据库
+    private static final int MEMORY_CACHE_SIZE = 512 * 1024;
+    //数据库中不存在的 key 也记下来, 避免重复查询
+    private static final Cache MISSING = new Cache();
 
-    //序列化存储数据需要转换成二进制
-    private static <T> byte[] toByteArray(T body) {
-        ByteArrayOutputStream baos = null;
-        ObjectOutputStream oos = null;
-        try {
-            baos = new ByteArrayOutputStream();
-            oos = new ObjectOutputStream(baos);
-            oos.writeObject(body);
-            oos.flush();
-            return baos.toByteArray();
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (baos != null) {
-                    baos.close();
-                }
-                if (oos != null) {
-                    oos.close();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    //命中时只在内存里记下访问时间, 保存或清理时再批量写回数据库
+    private static final ConcurrentHashMap<String, Long> accessed = new ConcurrentHashMap<>();
+
+    private static volatile CacheCodec codec = new BinaryCacheCodec();
+
+    private static final LruCache<String, Cache> memory = new LruCache<String, Cache>(MEMORY_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String key, Cache value) {
+            return key.length() * 2 + value.size + 32;
         }
-        return new byte[0];
+    };
+
+    public static void setCodec(CacheCodec cacheCodec) {
+        codec = cacheCodec;
+        memory.evictAll();
     }
 
     public static <T> void delete(String key, T body) {
         Cache cache = new Cache();
         cache.key = key;
-        cache.data = toByteArray(body);
+        memory.put(key, MISSING);
+        accessed.remove(key);
         AppDataManager.get().getCacheDao().delete(cache);
     }
 
     public static <T> void save(String key, T body) {
+        save(key, body, 0);
+    }
+
+    /**
+     * @param ttl 有效期(毫秒), 小于等于 0 表示永不过期
+     */
+    public static <T> void save(String key, T body, long ttl) {
+        long now = System.currentTimeMillis();
         Cache cache = new Cache();
         cache.key = key;
-        cache.data = toByteArray(body);
+        cache.data = codec.encode(body);
+        cache.size = cache.data.length;
+        cache.lastAccess = now;
+        cache.expiresAt = ttl > 0 ? now + ttl : 0;
+        memory.put(key, cache);
+        accessed.remove(key);
         AppDataManager.get().getCacheDao().save(cache);
+        flushAccess();
     }
 
     public static Object getCache(String key) {
-        Cache cache = AppDataManager.get().getCacheDao().getCache(key);
-        if (cache != null && cache.data != null) {
-            return toObject(cache.data);
+        long now = System.currentTimeMillis();
+        Cache cache = memory.get(key);
+        if (cache == null || (cache != MISSING && cache.isExpired(now))) {
+            cache = AppDataManager.get().getCacheDao().getCache(key, now);
+            if (cache == null || cache.data == null) {
+                cache = MISSING;
+            }
+            memory.put(key, cache);
         }
-        return null;
+        if (cache == MISSING) {
+            return null;
+        }
+        cache.lastAccess = now;
+        accessed.put(key, now);
+        return codec.decode(cache.data);
+    }
+
+    /**
+     * 把内存里记下的访问时间写回数据库, 淘汰时按 lastAccess 排序才准确
+     */
+    public static void flushAccess() {
+        if (accessed.isEmpty()) return;
+        AppDataManager.get().runInTransaction(() -> {
+            CacheDao dao = AppDataManager.get().getCacheDao();
+            for (Map.Entry<String, Long> entry : accessed.entrySet()) {
+                if (accessed.remove(entry.getKey(), entry.getValue())) dao.touch(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    public static void clearMemory() {
+        memory.evictAll();
     }
 }
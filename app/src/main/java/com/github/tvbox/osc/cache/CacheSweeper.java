@@ -0,0 +1,61 @@
+package com.github.tvbox.osc.cache;
+
+import com.github.tvbox.osc.data.AppDataManager;
+import com.github.tvbox.osc.util.HawkConfig;
+import com.github.tvbox.osc.util.LOG;
+import com.orhanobut.hawk.Hawk;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 类描述: 定期清理 cache 表, 删除过期记录并按最近访问时间把总大小控制在预算内
+ */
+public class CacheSweeper {
+    public static final long DEFAULT_BUDGET = 8 * 1024 * 1024;
+    private static final long INITIAL_DELAY = 30;
+    private static final long PERIOD = 30 * 60;
+    private static final int TRIM_BATCH = 32;
+
+    private static ScheduledExecutorService scheduler;
+
+    public static synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-sweeper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(CacheSweeper::sweep, INITIAL_DELAY, PERIOD, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    public static void sweep() {
+        try {
+            CacheManager.flushAccess();
+            CacheDao dao = AppDataManager.get().getCacheDao();
+            int removed = dao.deleteExpired(System.currentTimeMillis());
+            long budget = Hawk.get(HawkConfig.CACHE_DB_BUDGET, DEFAULT_BUDGET);
+            long size = dao.totalSize();
+            while (size > budget) {
+                int count = dao.deleteOldest(TRIM_BATCH);
+                if (count <= 0) break;
+                removed += count;
+                size = dao.totalSize();
+            }
+            if (removed > 0) {
+                CacheManager.clearMemory();
+                LOG.i("cache sweep removed " + removed + ", size " + size);
+            }
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+    }
+}
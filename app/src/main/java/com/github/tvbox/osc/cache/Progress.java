@@ -0,0 +1,16 @@
+package com.github.tvbox.osc.cache;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * 类描述: 播放进度, key 为进度 key 的 md5 前 8 字节
+ */
+@Entity(tableName = "progress")
+public class Progress {
+    @PrimaryKey(autoGenerate = false)
+    public long key;
+    //播放位置(毫秒)
+    public long position;
+    public long updateTime;
+}
@@ -0,0 +1,24 @@
+package com.github.tvbox.osc.cache;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface ProgressDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void save(List<Progress> list);
+
+    @Query("select position from progress where `key`=:key")
+    Long getPosition(long key);
+
+    @Query("delete from progress where `key` in (:keys)")
+    int delete(long[] keys);
+
+    //只保留最近更新的记录
+    @Query("delete from progress where `key` not in (select `key` from progress order by updateTime desc limit :count)")
+    int trim(int count);
+}
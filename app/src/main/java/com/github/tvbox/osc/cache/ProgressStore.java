@@ -0,0 +1,244 @@
+package com.github.tvbox.osc.cache;
+
+import com.github.tvbox.osc.data.AppDataBase;
+import com.github.tvbox.osc.data.AppDataManager;
+import com.github.tvbox.osc.util.MD5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 类描述: 播放进度存储
+ * <p>
+ * 内存里保存 key -> 进度, 读取时先查内存, 没有再查 progress 表(兼容以前存在 cache 表里的进度)。
+ * 保存只改内存并记下待写入的 key, 由后台线程合并后批量写库; 页面暂停或销毁时调用 {@link #flush()} 立即写入。
+ */
+public class ProgressStore {
+    public static final long NONE = -1;
+    private static final long DELETED = Long.MIN_VALUE;
+    private static final long FLUSH_DELAY = 5;
+    private static final int MAX_ROWS = 2000;
+
+    private static final LongMap memory = new LongMap();
+    private static final LongMap pending = new LongMap();
+    //以前保存在 cache 表里的进度, 导入或删除后把旧记录也删掉
+    private static final List<String> legacy = new ArrayList<>();
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "progress-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ScheduledFuture<?> scheduled;
+
+    /**
+     * @return 保存的进度(毫秒), 没有记录时返回 {@link #NONE}
+     */
+    public static long get(String key) {
+        String md5 = MD5.string2MD5(key);
+        if (md5 == null) return NONE;
+        long id = toId(md5);
+        synchronized (ProgressStore.class) {
+            if (memory.contains(id)) return memory.get(id);
+        }
+        long position = NONE;
+        boolean imported = false;
+        try {
+            Long saved = AppDataManager.get().getProgressDao().getPosition(id);
+            if (saved != null) {
+                position = saved;
+            } else {
+                Object old = CacheManager.getCache(md5);
+                if (old instanceof Long) {
+                    position = (Long) old;
+                    imported = true;
+                }
+            }
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+        synchronized (ProgressStore.class) {
+            //查询期间已经有新的进度
+            if (memory.contains(id)) return memory.get(id);
+            memory.put(id, position);
+            if (imported) {
+                pending.put(id, position);
+                legacy.add(md5);
+                schedule(FLUSH_DELAY);
+            }
+            return position;
+        }
+    }
+
+    public static void save(String key, long position) {
+        String md5 = MD5.string2MD5(key);
+        if (md5 == null) return;
+        long id = toId(md5);
+        synchronized (ProgressStore.class) {
+            memory.put(id, position);
+            pending.put(id, position);
+            schedule(FLUSH_DELAY);
+        }
+    }
+
+    public static void delete(String key) {
+        String md5 = MD5.string2MD5(key);
+        if (md5 == null) return;
+        long id = toId(md5);
+        synchronized (ProgressStore.class) {
+            memory.put(id, NONE);
+            pending.put(id, DELETED);
+            legacy.add(md5);
+            schedule(FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * 立即在后台写入待保存的进度
+     */
+    public static void flush() {
+        synchronized (ProgressStore.class) {
+            if (pending.size() > 0) schedule(0);
+        }
+    }
+
+    private static void schedule(long delay) {
+        if (scheduled != null) {
+            if (delay > 0 || scheduled.getDelay(TimeUnit.SECONDS) <= 0) return;
+            scheduled.cancel(false);
+        }
+        scheduled = executor.schedule(ProgressStore::write, delay, TimeUnit.SECONDS);
+    }
+
+    private static void write() {
+        List<Progress> saves = new ArrayList<>();
+        long[] removed;
+        String[] olds;
+        synchronized (ProgressStore.class) {
+            scheduled = null;
+            long now = System.currentTimeMillis();
+            removed = new long[pending.size()];
+            int count = 0;
+            for (int i = 0; i < pending.capacity(); i++) {
+                if (!pending.isUsed(i)) continue;
+                long position = pending.valueAt(i);
+                if (position == DELETED) {
+                    removed[count++] = pending.keyAt(i);
+                } else {
+                    Progress progress = new Progress();
+                    progress.key = pending.keyAt(i);
+                    progress.position = position;
+                    progress.updateTime = now;
+                    saves.add(progress);
+                }
+            }
+            removed = Arrays.copyOf(removed, count);
+            olds = legacy.toArray(new String[0]);
+            pending.clear();
+            legacy.clear();
+        }
+        long[] deletes = removed;
+        try {
+            AppDataBase db = AppDataManager.get();
+            db.runInTransaction(() -> {
+                ProgressDao dao = db.getProgressDao();
+                if (!saves.isEmpty()) dao.save(saves);
+                if (deletes.length > 0) dao.delete(deletes);
+                dao.trim(MAX_ROWS);
+            });
+            for (String old : olds) CacheManager.delete(old, 0);
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+    }
+
+    //md5 的前 16 位十六进制
+    private static long toId(String md5) {
+        return Long.parseLong(md5.substring(0, 8), 16) << 32 | Long.parseLong(md5.substring(8, 16), 16);
+    }
+
+    /**
+     * long -> long 的开放寻址表, 不装箱
+     */
+    private static final class LongMap {
+        private long[] keys = new long[64];
+        private long[] values = new long[64];
+        private boolean[] used = new boolean[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        boolean isUsed(int index) {
+            return used[index];
+        }
+
+        long keyAt(int index) {
+            return keys[index];
+        }
+
+        long valueAt(int index) {
+            return values[index];
+        }
+
+        boolean contains(long key) {
+            return used[indexOf(key)];
+        }
+
+        long get(long key) {
+            int index = indexOf(key);
+            return used[index] ? values[index] : NONE;
+        }
+
+        void put(long key, long value) {
+            int index = indexOf(key);
+            if (!used[index]) {
+                if ((size + 1) * 4 > keys.length * 3) {
+                    grow();
+                    index = indexOf(key);
+                }
+                used[index] = true;
+                keys[index] = key;
+                size++;
+            }
+            values[index] = value;
+        }
+
+        void clear() {
+            Arrays.fill(used, false);
+            size = 0;
+        }
+
+        private int indexOf(long key) {
+            int mask = keys.length - 1;
+            int index = (int) (key ^ (key >>> 32)) & mask;
+            while (used[index] && keys[index] != key) index = (index + 1) & mask;
+            return index;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (!oldUsed[i]) continue;
+                int index = indexOf(oldKeys[i]);
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
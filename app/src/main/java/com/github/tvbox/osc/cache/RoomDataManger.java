@@ -5,18 +5,14 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 
 import com.github.tvbox.osc.api.ApiConfig;
+import com.github.tvbox.osc.util.GsonHelper;
 import com.github.tvbox.osc.util.HawkConfig;
 import com.github.tvbox.osc.util.HistoryHelper;
 import com.github.tvbox.osc.bean.SourceBean;
 import com.github.tvbox.osc.bean.VodInfo;
 import com.github.tvbox.osc.data.AppDataManager;
 import com.github.tvbox.osc.util.StorageDriveType;
-import com.google.gson.ExclusionStrategy;
-import com.google.gson.FieldAttributes;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 import com.orhanobut.hawk.Hawk;
 
 import java.util.ArrayList;
@@ -28,46 +24,27 @@ import java.util.List;
  * @description:
  */
 public class RoomDataManger {
-    static ExclusionStrategy vodInfoStrategy = new ExclusionStrategy() {
-        @Override
-        public boolean shouldSkipField(FieldAttributes field) {
-            if (field.getDeclaringClass() == VodInfo.class && field.getName().equals("seriesFlags")) {
-                return true;
-            }
-            if (field.getDeclaringClass() == VodInfo.class && field.getName().equals("seriesMap")) {
-                return true;
-            }
-            return false;
-        }
-
-        @Override
-        public boolean shouldSkipClass(Class<?> clazz) {
-            return false;
-        }
-    };
-
-    private static Gson getVodInfoGson() {
-        return new GsonBuilder().addSerializationExclusionStrategy(vodInfoStrategy).create();
-    }
-
     public static void insertVodRecord(String sourceKey, VodInfo vodInfo) {
-        VodRecord record = AppDataManager.get().getVodRecordDao().getVodRecord(sourceKey, vodInfo.id);
-        if (record == null) {
-            record = new VodRecord();
-        }
+        VodRecord record = new VodRecord();
         record.sourceKey = sourceKey;
         record.vodId = vodInfo.id;
         record.updateTime = System.currentTimeMillis();
-        record.dataJson = getVodInfoGson().toJson(vodInfo);
+        record.dataJson = GsonHelper.toVodRecord(vodInfo);
+        record.name = vodInfo.name;
+        record.pic = vodInfo.pic;
+        record.note = vodInfo.note;
+        record.playNote = vodInfo.playNote;
+        record.playIndex = vodInfo.playIndex;
+        // (sourceKey, vodId) 有唯一索引, 直接替换, 不用先查
         AppDataManager.get().getVodRecordDao().insert(record);
+        AppDataManager.get().getVodRecordDao().reserver(getHisNum());
     }
 
     public static VodInfo getVodInfo(String sourceKey, String vodId) {
         VodRecord record = AppDataManager.get().getVodRecordDao().getVodRecord(sourceKey, vodId);
         try {
             if (record != null && record.dataJson != null && !TextUtils.isEmpty(record.dataJson)) {
-                VodInfo vodInfo = getVodInfoGson().fromJson(record.dataJson, new TypeToken<VodInfo>() {
-                }.getType());
+                VodInfo vodInfo = GsonHelper.parseVodRecord(record.dataJson);
                 if (vodInfo.name == null)
                     return null;
                 return vodInfo;
@@ -79,48 +56,77 @@ public class RoomDataManger {
     }
 
     public static void deleteVodRecord(String sourceKey, VodInfo vodInfo) {
-        VodRecord record = AppDataManager.get().getVodRecordDao().getVodRecord(sourceKey, vodInfo.id);
-        if (record != null) {
-            AppDataManager.get().getVodRecordDao().delete(record);
-        }
+        AppDataManager.get().getVodRecordDao().delete(sourceKey, vodInfo.id);
     }
 
-    public static List<VodInfo> getAllVodRecord(int limit) {
-        // 历史记录超过60条时, 删除最旧的数据 只保留50条.
-        int count = AppDataManager.get().getVodRecordDao().getCount();
-        //if ( count > 60 ) {
-        //    AppDataManager.get().getVodRecordDao().reserver(50);
-        //}
+    private static int getHisNum() {
         Integer index = Hawk.get(HawkConfig.HOME_NUM, 0);
-        Integer hisNum = HistoryHelper.getHisNum(index);
-        if ( count > hisNum ) {
-            AppDataManager.get().getVodRecordDao().reserver(hisNum);
-        }
+        return HistoryHelper.getHisNum(index);
+    }
+
+    public static List<VodInfo> getAllVodRecord(int limit) {
+        return getVodRecordPage(new VodRecordCursor(), Math.min(limit, getHisNum()));
+    }
+
+    /**
+     * 历史记录的翻页位置, 每读一页移到该页最后一条(包括被跳过的记录)
+     */
+    public static class VodRecordCursor {
+        long updateTime = Long.MAX_VALUE;
+        int id = Integer.MAX_VALUE;
+    }
 
-        List<VodRecord> recordList = AppDataManager.get().getVodRecordDao().getAll(limit);
+    /**
+     * 按更新时间倒序读取一页历史记录, 只读列表需要的列, 不解析 dataJson
+     *
+     * @param cursor 第一页传 new VodRecordCursor(), 之后继续传同一个
+     */
+    public static List<VodInfo> getVodRecordPage(VodRecordCursor cursor, int size) {
+        VodRecordDao dao = AppDataManager.get().getVodRecordDao();
+        List<VodRecordSummary> recordList = dao.getSummaries(cursor.updateTime, cursor.id, size);
         List<VodInfo> vodInfoList = new ArrayList<>();
         if (recordList != null) {
-            for (VodRecord record : recordList) {
-                VodInfo info = null;
-                try {
-                    if (record.dataJson != null && !TextUtils.isEmpty(record.dataJson)) {
-                        info = getVodInfoGson().fromJson(record.dataJson, new TypeToken<VodInfo>() {
-                        }.getType());
-                        info.sourceKey = record.sourceKey;
-                        SourceBean sourceBean = ApiConfig.get().getSource(info.sourceKey);
-                        if (sourceBean == null || info.name == null)
-                            info = null;
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                if (info != null)
-                    vodInfoList.add(info);
+            for (VodRecordSummary record : recordList) {
+                cursor.updateTime = record.updateTime;
+                cursor.id = record.id;
+                if (record.name == null) fillSummary(dao, record);
+                SourceBean sourceBean = ApiConfig.get().getSource(record.sourceKey);
+                if (sourceBean == null || record.name == null)
+                    continue;
+                VodInfo info = new VodInfo();
+                info.id = record.vodId;
+                info.sourceKey = record.sourceKey;
+                info.name = record.name;
+                info.pic = record.pic;
+                info.note = record.note;
+                info.playNote = record.playNote;
+                info.playIndex = record.playIndex;
+                vodInfoList.add(info);
             }
         }
         return vodInfoList;
     }
 
+    /**
+     * 升级前写入的记录没有冗余列, 第一次读到时从 dataJson 补上
+     */
+    private static void fillSummary(VodRecordDao dao, VodRecordSummary record) {
+        try {
+            String json = dao.getDataJson(record.sourceKey, record.vodId);
+            if (TextUtils.isEmpty(json)) return;
+            VodInfo info = GsonHelper.parseVodRecordSummary(json);
+            if (info == null || info.name == null) return;
+            record.name = info.name;
+            record.pic = info.pic;
+            record.note = info.note;
+            record.playNote = info.playNote;
+            record.playIndex = info.playIndex;
+            dao.updateSummary(record.sourceKey, record.vodId, record.name, record.pic, record.note, record.playNote, record.playIndex);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     public static void insertVodCollect(String sourceKey, VodInfo vodInfo) {
         VodCollect record = AppDataManager.get().getVodCollectDao().getVodCollect(sourceKey, vodInfo.id);
         if (record != null) {
@@ -0,0 +1,130 @@
+package com.github.tvbox.osc.cache;
+
+import android.util.LruCache;
+
+import com.github.tvbox.osc.api.ApiConfig;
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.util.HawkConfig;
+import com.github.tvbox.osc.util.js.Trans;
+import com.orhanobut.hawk.Hawk;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类描述: 搜索结果缓存, 内存 + 数据库两级
+ * <p>
+ * key 由来源和规范化后的关键词(全角转半角、繁转简、合并空白、小写)组成。
+ * 有效期按来源配置(sites 中的 searchCache, 单位秒), 未配置时以设置为准;
+ * 过了有效期的结果在 STALE_FACTOR 倍时间内仍可先展示, 由调用方在后台重新搜索刷新。
+ * 内存里按关键词保存最近 MEMORY_KEYWORDS 次搜索, 每个关键词下是各来源的结果, 聚合搜索的来源再多也不会互相挤掉。
+ */
+public class SearchCache {
+    public static final int DEFAULT_TIME = 30 * 60;
+    private static final int STALE_FACTOR = 4;
+    private static final int MEMORY_KEYWORDS = 16;
+
+    // 关键词 -> (来源 -> 结果)
+    private static final LruCache<String, Map<String, Entry>> memory = new LruCache<>(MEMORY_KEYWORDS);
+
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public long time;
+        public AbsXml data;
+    }
+
+    public static String normalize(String wd) {
+        if (wd == null) return "";
+        StringBuilder sb = new StringBuilder(wd.length());
+        boolean space = false;
+        for (int i = 0; i < wd.length(); i++) {
+            char c = Trans.t2s(wd.charAt(i));
+            if (c == '\u3000') {
+                c = ' ';
+            } else if (c >= '\uFF01' && c <= '\uFF5E') {
+                c = (char) (c - 0xFEE0);
+            }
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 缓存时间(毫秒), 0 表示该来源不缓存
+     */
+    public static long getTtl(String sourceKey) {
+        SourceBean sourceBean = ApiConfig.get().getSource(sourceKey);
+        int time = sourceBean == null ? -1 : sourceBean.getSearchCache();
+        if (time < 0) time = Hawk.get(HawkConfig.SEARCH_CACHE_TIME, DEFAULT_TIME);
+        return Math.max(0, time) * 1000L;
+    }
+
+    private static String key(String sourceKey, String wd, boolean quick) {
+        return (quick ? "quick_search_" : "search_") + sourceKey + "_" + normalize(wd);
+    }
+
+    private static String memoryKey(String wd, boolean quick) {
+        return (quick ? "quick_" : "") + normalize(wd);
+    }
+
+    private static Map<String, Entry> bucket(String memoryKey) {
+        synchronized (memory) {
+            Map<String, Entry> bucket = memory.get(memoryKey);
+            if (bucket == null) {
+                bucket = new ConcurrentHashMap<>();
+                memory.put(memoryKey, bucket);
+            }
+            return bucket;
+        }
+    }
+
+    /**
+     * 可能读数据库, 不要在主线程调用
+     */
+    public static Entry get(String sourceKey, String wd, boolean quick) {
+        long ttl = getTtl(sourceKey);
+        if (ttl <= 0) return null;
+        Map<String, Entry> bucket = bucket(memoryKey(wd, quick));
+        Entry entry = bucket.get(sourceKey);
+        if (entry == null) {
+            Object cache = CacheManager.getCache(key(sourceKey, wd, quick));
+            if (!(cache instanceof Entry)) return null;
+            entry = (Entry) cache;
+            bucket.put(sourceKey, entry);
+        }
+        if (System.currentTimeMillis() - entry.time >= ttl * STALE_FACTOR) {
+            bucket.remove(sourceKey);
+            return null;
+        }
+        return entry;
+    }
+
+    public static boolean isStale(String sourceKey, Entry entry) {
+        return System.currentTimeMillis() - entry.time >= getTtl(sourceKey);
+    }
+
+    public static void put(String sourceKey, String wd, boolean quick, AbsXml data) {
+        long ttl = getTtl(sourceKey);
+        if (ttl <= 0 || data == null) return;
+        Entry entry = new Entry();
+        entry.time = System.currentTimeMillis();
+        entry.data = data;
+        bucket(memoryKey(wd, quick)).put(sourceKey, entry);
+        CacheManager.save(key(sourceKey, wd, quick), entry, ttl * STALE_FACTOR);
+    }
+
+    public static void clearMemory() {
+        memory.evictAll();
+    }
+}
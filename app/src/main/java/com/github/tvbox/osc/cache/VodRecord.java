@@ -2,6 +2,7 @@ package com.github.tvbox.osc.cache;
 
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import java.io.Serializable;
@@ -11,7 +12,7 @@ import java.io.Serializable;
  * @date :2021/1/7
  * @description:
  */
-@Entity(tableName = "vodRecord")
+@Entity(tableName = "vodRecord", indices = {@Index(value = {"sourceKey", "vodId"}, unique = true)})
 public class VodRecord implements Serializable {
     @PrimaryKey(autoGenerate = true)
     private int id;
@@ -22,6 +23,13 @@ public class VodRecord implements Serializable {
     @ColumnInfo(name = "sourceKey")
     public String sourceKey;
     public String dataJson;
+    //以下为列表显示用的冗余字段, 与 dataJson 同时写入, 读列表时不用解析 dataJson
+    public String name;
+    public String pic;
+    public String note;
+    public String playNote;
+    @ColumnInfo(defaultValue = "0")
+    public int playIndex;
 
     public int getId() {
         return id;
@@ -15,6 +15,7 @@ import java.util.List;
  */
 @Dao
 public interface VodRecordDao {
+    //(sourceKey, vodId) 唯一, 已存在时直接替换
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     long insert(VodRecord record);
 
@@ -24,9 +25,25 @@ public interface VodRecordDao {
     @Query("select * from vodRecord where `sourceKey`=:sourceKey and `vodId`=:vodId")
     VodRecord getVodRecord(String sourceKey, String vodId);
 
+    /**
+     * 按 (updateTime, id) 倒序翻页, 下一页传入上一页最后一条的 updateTime 和 id, updateTime 相同的记录不会漏掉
+     */
+    @Query("select id, sourceKey, vodId, name, pic, note, playNote, playIndex, updateTime from vodRecord where updateTime < :beforeTime or (updateTime = :beforeTime and id < :beforeId) order by updateTime desc, id desc limit :size")
+    List<VodRecordSummary> getSummaries(long beforeTime, int beforeId, int size);
+
+    @Query("select dataJson from vodRecord where `sourceKey`=:sourceKey and `vodId`=:vodId")
+    String getDataJson(String sourceKey, String vodId);
+
+    //补全升级前的记录
+    @Query("update vodRecord set name=:name, pic=:pic, note=:note, playNote=:playNote, playIndex=:playIndex where `sourceKey`=:sourceKey and `vodId`=:vodId")
+    int updateSummary(String sourceKey, String vodId, String name, String pic, String note, String playNote, int playIndex);
+
     @Delete
     int delete(VodRecord record);
 
+    @Query("delete from vodRecord where `sourceKey`=:sourceKey and `vodId`=:vodId")
+    int delete(String sourceKey, String vodId);
+
     @Query("select count(*) from vodRecord")
     int getCount();
 
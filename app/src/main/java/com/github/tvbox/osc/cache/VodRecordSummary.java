@@ -0,0 +1,16 @@
+package com.github.tvbox.osc.cache;
+
+/**
+ * 类描述: 历史列表用的 vodRecord 投影, 不含 dataJson
+ */
+public class VodRecordSummary {
+    public int id;
+    public String sourceKey;
+    public String vodId;
+    public String name;
+    public String pic;
+    public String note;
+    public String playNote;
+    public int playIndex;
+    public long updateTime;
+}
@@ -75,6 +75,51 @@ public class AppDataManager {
             }
         }
     };
+
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            try {
+                database.execSQL("ALTER TABLE cache ADD COLUMN expiresAt INTEGER NOT NULL DEFAULT 0");
+                database.execSQL("ALTER TABLE cache ADD COLUMN size INTEGER NOT NULL DEFAULT 0");
+                database.execSQL("ALTER TABLE cache ADD COLUMN lastAccess INTEGER NOT NULL DEFAULT 0");
+                database.execSQL("UPDATE cache SET size = ifnull(length(data), 0)");
+            } catch (SQLiteException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            try {
+                database.execSQL("CREATE TABLE IF NOT EXISTS `progress` (`key` INTEGER NOT NULL, `position` INTEGER NOT NULL, `updateTime` INTEGER NOT NULL, PRIMARY KEY(`key`))");
+            } catch (SQLiteException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            try {
+                database.execSQL("ALTER TABLE vodRecord ADD COLUMN name TEXT");
+                database.execSQL("ALTER TABLE vodRecord ADD COLUMN pic TEXT");
+                database.execSQL("ALTER TABLE vodRecord ADD COLUMN note TEXT");
+                database.execSQL("ALTER TABLE vodRecord ADD COLUMN playNote TEXT");
+                database.execSQL("ALTER TABLE vodRecord ADD COLUMN playIndex INTEGER NOT NULL DEFAULT 0");
+                //唯一索引前先去掉重复记录, 保留 updateTime 最新的, 相同时保留 id 大的
+                database.execSQL("DELETE FROM vodRecord WHERE EXISTS (SELECT 1 FROM vodRecord b WHERE b.sourceKey = vodRecord.sourceKey AND b.vodId = vodRecord.vodId"
+                        + " AND (b.updateTime > vodRecord.updateTime OR (b.updateTime = vodRecord.updateTime AND b.id > vodRecord.id)))");
+                database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_vodRecord_sourceKey_vodId` ON `vodRecord` (`sourceKey`, `vodId`)");
+            } catch (SQLiteException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
     static String dbPath() {
         return DB_NAME + ".v" + DB_FILE_VERSION + ".db";
     }
@@ -88,6 +133,9 @@ public class AppDataManager {
                     .setJournalMode(RoomDatabase.JournalMode.TRUNCATE)
                     .addMigrations(MIGRATION_1_2)
                     .addMigrations(MIGRATION_2_3)
+                    .addMigrations(MIGRATION_3_4)
+                    .addMigrations(MIGRATION_4_5)
+                    .addMigrations(MIGRATION_5_6)
                     .addCallback(new RoomDatabase.Callback() {
                         @Override
                         public void onCreate(@NonNull SupportSQLiteDatabase db) {
@@ -0,0 +1,647 @@
+package com.github.tvbox.osc.server;
+
+import com.github.tvbox.osc.base.App;
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.util.OkGoHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fi.iki.elonen.NanoHTTPD;
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * 本地 HLS 代理, 播放去广告后的播放列表
+ * <p>
+ * 每个播放列表一个会话: /m3u8/{id}/index.m3u8 返回改写后的列表, 分片地址改成 /m3u8/{id}/{序号}.ts 这样的本地地址。
+ * id 随机生成, 不会和之前运行时的地址重复。
+ * 播放器取第 n 个分片时, 同时在后台并行取后面 PREFETCH 个, 跳转后不在新位置附近的预取取消。分片边下边写到磁盘, 播放器跟在下载后面读, 不用等整个分片下完;
+ * 磁盘总量 DISK_SIZE(超出删最早的), 不大的分片同时放内存(最近用的, 总量 MEMORY_SIZE)。支持 Range。
+ * 超过 MAX_SEGMENT 的分片照常转发但不缓存。带 #EXT-X-BYTERANGE 的列表不改写分片地址, 由播放器按范围直接去取。
+ * 取分片失败时 307 到原地址, 由播放器直接去取。所有播放器(IJK / Exo / 系统)都是普通的 http 请求, 不需要单独适配。
+ */
+public class M3u8RequestProcess implements RequestProcess {
+    private static final String PREFIX = "/m3u8";
+    private static final String MIME_M3U8 = "application/vnd.apple.mpegurl";
+    private static final int MAX_SESSIONS = 8;
+    private static final int PREFETCH = 3;
+    private static final long MEMORY_SIZE = 32 * 1024 * 1024;
+    private static final long MEMORY_SEGMENT = 8 * 1024 * 1024;
+    private static final long DISK_SIZE = 256 * 1024 * 1024;
+    private static final long MAX_SEGMENT = 64 * 1024 * 1024;
+
+    private static final SecureRandom random = new SecureRandom();
+    // 按访问顺序, 超过 MAX_SESSIONS 时丢掉最久没用的
+    private static final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private static volatile Session latest;
+
+    private static final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private static long memoryBytes;
+    private static final LinkedHashMap<String, File> disk = new LinkedHashMap<>();
+    private static long diskBytes;
+    // 正在下载的分片, 同一个分片同时只下载一次
+    private static final ConcurrentHashMap<String, Fetch> pending = new ConcurrentHashMap<>();
+    private static final ExecutorService prefetcher = Executors.newFixedThreadPool(PREFETCH, r -> {
+        Thread thread = new Thread(r, "m3u8-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 播放器正在等的分片单独下载, 不排在预取后面
+    private static final ExecutorService fetcher = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "m3u8-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // 上次运行留下的分片
+        FileUtils.recursiveDelete(dir());
+    }
+
+    private static final class Session {
+        final String id;
+        final String playlist;
+        final List<String> segments;
+        final Map<String, String> headers;
+
+        Session(String id, String playlist, List<String> segments, Map<String, String> headers) {
+            this.id = id;
+            this.playlist = playlist;
+            this.segments = segments;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * 登记一个播放列表, 返回给播放器用的本地地址; content 为 null 时返回 null
+     *
+     * @param content 分片地址已经是绝对地址的播放列表(M3U8.purify 的结果)
+     * @param headers 取分片时带的请求头
+     */
+    public static String register(String content, Map<String, String> headers) {
+        if (content == null) return null;
+        String id = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+        // 按字节范围取的分片, 本地地址对应的是整个文件, 不改写
+        boolean byteRange = content.contains("#EXT-X-BYTERANGE");
+        List<String> segments = new ArrayList<>();
+        StringBuilder sb = new StringBuilder(content.length());
+        for (String line : content.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (!byteRange && (trimmed.startsWith("http://") || trimmed.startsWith("https://"))) {
+                sb.append(segments.size()).append(extension(trimmed)).append('\n');
+                segments.add(trimmed);
+            } else {
+                sb.append(line).append('\n');
+            }
+        }
+        Session session = new Session(id, sb.toString(), segments, headers == null ? new HashMap<>() : new HashMap<>(headers));
+        synchronized (sessions) {
+            sessions.put(id, session);
+            Iterator<Session> it = sessions.values().iterator();
+            while (sessions.size() > MAX_SESSIONS && it.hasNext()) {
+                drop(it.next().id);
+                it.remove();
+            }
+        }
+        latest = session;
+        return "http://127.0.0.1:" + RemoteServer.serverPort + PREFIX + "/" + id + "/index.m3u8";
+    }
+
+    @Override
+    public boolean isRequest(NanoHTTPD.IHTTPSession session, String fileName) {
+        return session.getMethod() == NanoHTTPD.Method.GET && (fileName.equals(PREFIX) || fileName.startsWith(PREFIX + "/"));
+    }
+
+    @Override
+    public NanoHTTPD.Response doResponse(NanoHTTPD.IHTTPSession session, String fileName, Map<String, String> params, Map<String, String> files) {
+        // 旧地址 /m3u8 对应最近登记的列表
+        if (fileName.equals(PREFIX)) return playlist(latest);
+        String[] parts = fileName.substring(PREFIX.length() + 1).split("/");
+        Session s;
+        synchronized (sessions) {
+            s = sessions.get(parts[0]);
+        }
+        if (s == null || parts.length < 2) return RemoteServer.createPlainTextResponse(NanoHTTPD.Response.Status.NOT_FOUND, "Not Found");
+        if (parts[1].endsWith(".m3u8")) return playlist(s);
+        int index;
+        try {
+            int dot = parts[1].indexOf('.');
+            index = Integer.parseInt(dot < 0 ? parts[1] : parts[1].substring(0, dot));
+        } catch (NumberFormatException e) {
+            index = -1;
+        }
+        if (index < 0 || index >= s.segments.size()) return RemoteServer.createPlainTextResponse(NanoHTTPD.Response.Status.NOT_FOUND, "Not Found");
+        trim(s, index);
+        prefetch(s, index + 1);
+        NanoHTTPD.Response response = segment(s, index, mime(parts[1]), session.getHeaders().get("range"));
+        if (response != null) return response;
+        response = NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.TEMPORARY_REDIRECT, NanoHTTPD.MIME_PLAINTEXT, "");
+        response.addHeader("Location", s.segments.get(index));
+        return response;
+    }
+
+    private static NanoHTTPD.Response playlist(Session s) {
+        if (s == null) return RemoteServer.createPlainTextResponse(NanoHTTPD.Response.Status.NOT_FOUND, "Not Found");
+        prefetch(s, 0);
+        return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, MIME_M3U8, s.playlist);
+    }
+
+    /**
+     * 依次找内存、磁盘、正在下载的分片, 都没有就开始下载; 取不到返回 null
+     */
+    private static NanoHTTPD.Response segment(Session s, int index, String mime, String range) {
+        String key = s.id + "/" + index;
+        byte[] data;
+        File file;
+        synchronized (memory) {
+            data = memory.get(key);
+            file = disk.get(key);
+        }
+        try {
+            if (data != null) return respond(new BytesSource(data), mime, range);
+            if (file != null && file.exists()) return respond(new FileSource(file), mime, range);
+            Fetch fetch = fetch(s, index, fetcher);
+            if (!fetch.awaitConnected()) return null;
+            return respond(fetch, mime, range);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void prefetch(Session s, int from) {
+        for (int i = from; i < Math.min(from + PREFETCH, s.segments.size()); i++) {
+            if (!cached(s.id + "/" + i)) fetch(s, i, prefetcher);
+        }
+    }
+
+    /**
+     * 同一个分片只下载一次; 播放器在等的分片如果还排在预取队列里, 直接交给 fetcher 执行
+     */
+    private static Fetch fetch(Session s, int index, ExecutorService executor) {
+        String key = s.id + "/" + index;
+        boolean foreground = executor == fetcher;
+        while (true) {
+            Fetch fetch = new Fetch(s.id, index, s.segments.get(index), s.headers);
+            Fetch running = pending.putIfAbsent(key, fetch);
+            if (running == null) {
+                if (foreground) fetch.attach();
+                executor.execute(fetch);
+                return fetch;
+            }
+            if (!foreground) return running;
+            if (running.attach()) {
+                if (!running.started.get()) fetcher.execute(running);
+                return running;
+            }
+            // 刚被取消, 还没从 pending 里移除
+            pending.remove(key, running);
+        }
+    }
+
+    /**
+     * 取消这个会话里不在 [index, index + PREFETCH] 之内、也没有播放器在等的下载, 跳转后把预取线程让给新位置
+     */
+    private static void trim(Session s, int index) {
+        for (Fetch fetch : pending.values()) {
+            if (fetch.session.equals(s.id) && (fetch.index < index || fetch.index > index + PREFETCH)) fetch.cancel(false);
+        }
+    }
+
+    /**
+     * 按范围返回 source 的内容; 不带 Range 且长度未知时分块返回, 带 Range 时等长度确定
+     */
+    private static NanoHTTPD.Response respond(Source source, String mime, String range) throws IOException {
+        boolean ranged = range != null && range.startsWith("bytes=");
+        long total = ranged ? source.awaitLength() : source.length();
+        if (total < 0) {
+            NanoHTTPD.Response response = NanoHTTPD.newChunkedResponse(NanoHTTPD.Response.Status.OK, mime, source.open(0));
+            response.addHeader("Accept-Ranges", "bytes");
+            return response;
+        }
+        long start = 0, end = total - 1;
+        boolean partial = false;
+        if (ranged) {
+            try {
+                String[] r = range.substring(6).split(",")[0].trim().split("-", 2);
+                if (r[0].isEmpty()) {
+                    start = Math.max(0, total - Long.parseLong(r[1]));
+                } else {
+                    start = Long.parseLong(r[0]);
+                    if (r.length > 1 && !r[1].isEmpty()) end = Math.min(end, Long.parseLong(r[1]));
+                }
+                partial = true;
+            } catch (RuntimeException e) {
+                partial = false;
+                start = 0;
+                end = total - 1;
+            }
+        }
+        if (partial && (start >= total || start > end)) {
+            NanoHTTPD.Response response = NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
+            response.addHeader("Content-Range", "bytes */" + total);
+            return response;
+        }
+        long length = end - start + 1;
+        NanoHTTPD.Response response = NanoHTTPD.newFixedLengthResponse(partial ? NanoHTTPD.Response.Status.PARTIAL_CONTENT : NanoHTTPD.Response.Status.OK,
+                mime, source.open(start), length);
+        response.addHeader("Accept-Ranges", "bytes");
+        if (partial) response.addHeader("Content-Range", "bytes " + start + "-" + end + "/" + total);
+        return response;
+    }
+
+    private interface Source {
+        /**
+         * 总长度, 还不知道时为 -1
+         */
+        long length();
+
+        long awaitLength() throws IOException;
+
+        /**
+         * 从 start 开始读的流, NanoHTTPD 按响应长度读, 不需要在 end 处截断
+         */
+        InputStream open(long start) throws IOException;
+    }
+
+    private static final class BytesSource implements Source {
+        private final byte[] data;
+
+        BytesSource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public long awaitLength() {
+            return data.length;
+        }
+
+        @Override
+        public InputStream open(long start) {
+            return new ByteArrayInputStream(data, (int) start, data.length - (int) start);
+        }
+    }
+
+    private static final class FileSource implements Source {
+        private final File file;
+        private final long length;
+
+        FileSource(File file) {
+            this.file = file;
+            this.length = file.length();
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public long awaitLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream open(long start) throws IOException {
+            InputStream in = new FileInputStream(file);
+            long skipped = 0;
+            while (skipped < start) {
+                long n = in.skip(start - skipped);
+                if (n <= 0) break;
+                skipped += n;
+            }
+            return in;
+        }
+    }
+
+    /**
+     * 一个分片的下载: 边下边写到临时文件, 读的一方跟在已写入的位置后面。
+     * 下完后不超过 MAX_SEGMENT 的改名成磁盘缓存, 超过的删掉; 已经打开的读取不受影响。
+     */
+    private static final class Fetch implements Source, Runnable {
+        private final String session;
+        private final int index;
+        private final String key;
+        private final String url;
+        private final Map<String, String> headers;
+        // 预取排队时可能被 fetcher 抢先执行, 只有先拿到的一方下载
+        private final AtomicBoolean started = new AtomicBoolean();
+        // 下载中是临时文件, 下完后是缓存文件, 没有缓存时为 null
+        private File file;
+        private long length = -1;
+        private long written;
+        private boolean connected;
+        private boolean done;
+        private boolean failed;
+        // 播放器在等这个分片, 跳转时不取消
+        private boolean foreground;
+        private boolean cancelled;
+        private Call call;
+
+        Fetch(String session, int index, String url, Map<String, String> headers) {
+            this.session = session;
+            this.index = index;
+            this.key = session + "/" + index;
+            this.url = url;
+            this.headers = headers;
+            this.file = new File(dir(), key.replace('/', '_') + ".part");
+        }
+
+        /**
+         * 标记为播放器在等; 已经取消的返回 false
+         */
+        synchronized boolean attach() {
+            if (cancelled) return false;
+            foreground = true;
+            return true;
+        }
+
+        /**
+         * @param force 为 true 时(会话已丢弃)播放器在等或已经下完的也取消, 下完的不再放进缓存
+         */
+        void cancel(boolean force) {
+            Call running;
+            synchronized (this) {
+                if (failed || cancelled || (!force && (done || foreground))) return;
+                cancelled = true;
+                running = call;
+            }
+            if (running != null) {
+                running.cancel();
+            } else if (started.compareAndSet(false, true)) {
+                // 还在队列里, 轮到时直接返回
+                fail();
+                pending.remove(key, this);
+            }
+        }
+
+        private void fail() {
+            synchronized (this) {
+                failed = true;
+                if (file != null) file.delete();
+                file = null;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) return;
+            Request.Builder builder = new Request.Builder().url(url);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getKey() != null && header.getValue() != null) builder.header(header.getKey(), header.getValue());
+            }
+            Call call = OkGoHelper.getDefaultClient().newCall(builder.build());
+            try {
+                synchronized (this) {
+                    if (cancelled) throw new IOException("cancelled");
+                    this.call = call;
+                }
+            } catch (IOException e) {
+                fail();
+                pending.remove(key, this);
+                return;
+            }
+            try (Response response = call.execute()) {
+                ResponseBody body = response.body();
+                if (!response.isSuccessful() || body == null) throw new IOException("http " + response.code());
+                try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(file)) {
+                    synchronized (this) {
+                        length = body.contentLength();
+                        connected = true;
+                        notifyAll();
+                    }
+                    byte[] buffer = new byte[64 * 1024];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                        synchronized (this) {
+                            written += n;
+                            notifyAll();
+                        }
+                    }
+                }
+                if (length >= 0 && written != length) throw new IOException("incomplete " + written + "/" + length);
+                finish();
+            } catch (Exception e) {
+                if (!call.isCanceled()) LOG.e("m3u8 segment " + url + " " + e);
+                fail();
+            } finally {
+                pending.remove(key, this);
+            }
+        }
+
+        private void finish() {
+            File target = new File(dir(), key.replace('/', '_'));
+            synchronized (this) {
+                length = written;
+                done = true;
+                if (written <= MAX_SEGMENT && file.renameTo(target)) {
+                    file = target;
+                } else {
+                    file.delete();
+                    file = null;
+                }
+                notifyAll();
+                if (file == null) return;
+            }
+            byte[] data = written <= MEMORY_SEGMENT ? FileUtils.readSimple(target) : null;
+            synchronized (memory) {
+                // 会话在下载过程中被丢弃, 不再放进缓存
+                synchronized (this) {
+                    if (cancelled) {
+                        target.delete();
+                        return;
+                    }
+                }
+                if (data != null) putMemory(key, data);
+                addDisk(key, target);
+            }
+        }
+
+        /**
+         * 等上游返回, 成功时为 true
+         */
+        synchronized boolean awaitConnected() throws IOException {
+            while (!connected && !failed) waitQuietly();
+            return !failed;
+        }
+
+        @Override
+        public synchronized long length() {
+            return length;
+        }
+
+        @Override
+        public synchronized long awaitLength() throws IOException {
+            while (length < 0 && !failed) waitQuietly();
+            if (failed) throw new IOException("segment failed");
+            return length;
+        }
+
+        @Override
+        public InputStream open(long start) throws IOException {
+            synchronized (this) {
+                if (file == null) throw new IOException("segment not available");
+                return new Tail(new RandomAccessFile(file, "r"), start);
+            }
+        }
+
+        private void waitQuietly() throws IOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * 跟在下载后面读临时文件, 没有新数据时等待
+         */
+        private final class Tail extends InputStream {
+            private final RandomAccessFile file;
+            private long position;
+
+            Tail(RandomAccessFile file, long position) {
+                this.file = file;
+                this.position = position;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                long available;
+                synchronized (Fetch.this) {
+                    while (position >= written && !done && !failed) waitQuietly();
+                    if (failed) throw new IOException("segment failed");
+                    available = written - position;
+                }
+                if (available <= 0) return -1;
+                file.seek(position);
+                int n = file.read(b, off, (int) Math.min(len, available));
+                if (n > 0) position += n;
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                file.close();
+            }
+        }
+    }
+
+    private static boolean cached(String key) {
+        synchronized (memory) {
+            return memory.containsKey(key) || disk.containsKey(key) || pending.containsKey(key);
+        }
+    }
+
+    private static void addDisk(String key, File file) {
+        synchronized (memory) {
+            disk.put(key, file);
+            diskBytes += file.length();
+            Iterator<File> it = disk.values().iterator();
+            while (diskBytes > DISK_SIZE && it.hasNext()) {
+                File old = it.next();
+                diskBytes -= old.length();
+                old.delete();
+                it.remove();
+            }
+        }
+    }
+
+    private static void putMemory(String key, byte[] data) {
+        synchronized (memory) {
+            byte[] old = memory.put(key, data);
+            if (old != null) memoryBytes -= old.length;
+            memoryBytes += data.length;
+            Iterator<byte[]> it = memory.values().iterator();
+            while (memoryBytes > MEMORY_SIZE && it.hasNext()) {
+                memoryBytes -= it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    private static void drop(String id) {
+        String prefix = id + "/";
+        synchronized (memory) {
+            for (Fetch fetch : pending.values()) {
+                if (fetch.session.equals(id)) fetch.cancel(true);
+            }
+            Iterator<Map.Entry<String, byte[]>> mit = memory.entrySet().iterator();
+            while (mit.hasNext()) {
+                Map.Entry<String, byte[]> entry = mit.next();
+                if (!entry.getKey().startsWith(prefix)) continue;
+                memoryBytes -= entry.getValue().length;
+                mit.remove();
+            }
+            Iterator<Map.Entry<String, File>> dit = disk.entrySet().iterator();
+            while (dit.hasNext()) {
+                Map.Entry<String, File> entry = dit.next();
+                if (!entry.getKey().startsWith(prefix)) continue;
+                diskBytes -= entry.getValue().length();
+                entry.getValue().delete();
+                dit.remove();
+            }
+        }
+    }
+
+    private static File dir() {
+        File dir = new File(App.getInstance().getCacheDir(), "m3u8_proxy");
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    // 本地地址沿用原分片的扩展名, 部分播放器按扩展名判断格式
+    private static String extension(String url) {
+        int end = url.indexOf('?');
+        if (end < 0) end = url.length();
+        int slash = url.lastIndexOf('/', end - 1);
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot <= slash || end - dot > 5) return ".ts";
+        for (int i = dot + 1; i < end; i++) {
+            if (!Character.isLetterOrDigit(url.charAt(i))) return ".ts";
+        }
+        return url.substring(dot, end).toLowerCase();
+    }
+
+    private static String mime(String name) {
+        if (name.endsWith(".ts")) return "video/mp2t";
+        if (name.endsWith(".m4s") || name.endsWith(".mp4")) return "video/mp4";
+        if (name.endsWith(".aac")) return "audio/aac";
+        return "application/octet-stream";
+    }
+}
@@ -59,7 +59,6 @@ public class RemoteServer extends NanoHTTPD {
     private ArrayList < RequestProcess > postRequestList = new ArrayList < > ();
     private static final String PATTERN_ETH_STR = "^eth\\d+$";
     private static final Pattern ETH_PATTERN = Pattern.compile(PATTERN_ETH_STR);
-    public static String m3u8Content;
 
     public RemoteServer(int port, Context context) {
         super(port);
@@ -76,6 +75,7 @@ public class RemoteServer extends NanoHTTPD {
         getRequestList.add(new RawRequestProcess(this.mContext, "/jquery.js", R.raw.jquery, "application/x-javascript"));
         getRequestList.add(new RawRequestProcess(this.mContext, "/script.js", R.raw.script, "application/x-javascript"));
         getRequestList.add(new RawRequestProcess(this.mContext, "/favicon.ico", R.drawable.app_icon, "image/x-icon"));
+        getRequestList.add(new M3u8RequestProcess());
     }
 
     private void addPostRequestProcess() {
@@ -121,10 +121,16 @@ public class RemoteServer extends NanoHTTPD {
                         int code = (int) rs[0];
                         String mime = (String) rs[1];
                         InputStream stream = rs[2] != null ? (InputStream) rs[2] : null;
-                        Response response = NanoHTTPD.newChunkedResponse(
-                        NanoHTTPD.Response.Status.lookup(code),
-                        mime,
-                        stream);
+                        Response response;
+                        if (stream instanceof ByteArrayInputStream) {
+                            // 内容已在内存中, 直接给出长度, 不走分块传输
+                            response = NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.lookup(code), mime, stream, ((ByteArrayInputStream) stream).available());
+                        } else {
+                            response = NanoHTTPD.newChunkedResponse(
+                            NanoHTTPD.Response.Status.lookup(code),
+                            mime,
+                            stream);
+                        }
                         if (rs.length > 3) {
                             try {
                                 HashMap < String, String > headers = (HashMap < String, String > ) rs[3];
@@ -164,8 +170,10 @@ public class RemoteServer extends NanoHTTPD {
                         rs = new byte[0];
                     }
                     return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, "application/dns-message", new ByteArrayInputStream(rs), rs.length);
-                } else if (fileName.equals("/m3u8")) {
-                    return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, NanoHTTPD.MIME_PLAINTEXT, m3u8Content);
+                } else if (fileName.equals("/dns-stats")) {
+                    // DoH 内存缓存的命中率和解析耗时
+                    String stats = OkGoHelper.dnsOverHttps == null ? "" : OkGoHelper.dnsOverHttps.cacheStats();
+                    return createPlainTextResponse(NanoHTTPD.Response.Status.OK, stats);
                 } else if (fileName.startsWith("/dash/")) {
                     String dashData = App.getInstance().getDashData();
                     try {
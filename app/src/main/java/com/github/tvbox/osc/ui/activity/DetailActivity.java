@@ -57,6 +57,7 @@ import com.github.tvbox.osc.util.FastClickCheckUtil;
 import com.github.tvbox.osc.util.HawkConfig;
 import com.github.tvbox.osc.util.ImgUtil;
 import com.github.tvbox.osc.util.SearchHelper;
+import com.github.tvbox.osc.util.SearchScheduler;
 import com.github.tvbox.osc.util.StringUtils;
 import com.github.tvbox.osc.util.SubtitleHelper;
 import com.github.tvbox.osc.util.thunder.Thunder;
@@ -85,8 +86,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -134,11 +133,10 @@ public class DetailActivity extends BaseActivity {
     private HashMap<String, String> mCheckSources = null;
     private V7GridLayoutManager mGridViewLayoutMgr = null;
     private String preFlag = "";
-    private List<Runnable> pauseRunnable = null;
     private String searchTitle = "";
     private boolean hadQuickStart = false;
     private final List<String> quickSearchWord = new ArrayList<>();
-    private ExecutorService searchExecutorService = null;
+    private SearchScheduler.Session searchSession = null;
     private SeriesGroupAdapter seriesGroupAdapter;
     private List<List<VodInfo.VodSeries>> uu;
     private int GroupCount;
@@ -345,25 +343,11 @@ public class DetailActivity extends BaseActivity {
                 EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH, quickSearchData));
                 EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH_WORD, quickSearchWord));
                 quickSearchDialog.show();
-                if (pauseRunnable != null && pauseRunnable.size() > 0) {
-                    searchExecutorService = Executors.newFixedThreadPool(5);
-                    for (Runnable runnable : pauseRunnable) {
-                        searchExecutorService.execute(runnable);
-                    }
-                    pauseRunnable.clear();
-                    pauseRunnable = null;
-                }
+                if (searchSession != null) searchSession.resume();
                 quickSearchDialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
                     @Override
                     public void onDismiss(DialogInterface dialog) {
-                        try {
-                            if (searchExecutorService != null) {
-                                pauseRunnable = searchExecutorService.shutdownNow();
-                                searchExecutorService = null;
-                            }
-                        } catch (Throwable th) {
-                            th.printStackTrace();
-                        }
+                        if (searchSession != null) searchSession.pause();
                     }
                 });
             }
@@ -970,7 +954,6 @@ public class DetailActivity extends BaseActivity {
     }
 
     private void switchSearchWord(String word) {
-        OkGo.getInstance().cancelTag("quick_search");
         quickSearchData.clear();
         searchTitle = word;
         searchResult();
@@ -985,7 +968,6 @@ public class DetailActivity extends BaseActivity {
         if (hadQuickStart)
             return;
         hadQuickStart = true;
-        OkGo.getInstance().cancelTag("quick_search");
         quickSearchWord.clear();
         searchTitle = mVideo.name;
         quickSearchData.clear();
@@ -1031,15 +1013,7 @@ public class DetailActivity extends BaseActivity {
     }
 
     private void searchResult() {
-        try {
-            if (searchExecutorService != null) {
-                searchExecutorService.shutdownNow();
-                searchExecutorService = null;
-            }
-        } catch (Throwable th) {
-            th.printStackTrace();
-        }
-        searchExecutorService = Executors.newFixedThreadPool(5);
+        if (searchSession != null) searchSession.cancel();
         List<SourceBean> searchRequestList = new ArrayList<>();
         searchRequestList.addAll(ApiConfig.get().getSourceBeanList());
         SourceBean home = ApiConfig.get().getHomeSourceBean();
@@ -1056,14 +1030,7 @@ public class DetailActivity extends BaseActivity {
             }
             siteKey.add(bean.getKey());
         }
-        for (String key : siteKey) {
-            searchExecutorService.execute(new Runnable() {
-                @Override
-                public void run() {
-                    sourceViewModel.getQuickSearch(key, searchTitle);
-                }
-            });
-        }
+        searchSession = SearchScheduler.get().submit(siteKey, searchTitle, true, sourceViewModel::searchContent);
     }
 
     private void searchData(AbsXml absXml) {
@@ -1098,17 +1065,12 @@ public class DetailActivity extends BaseActivity {
             unregisterReceiver(mHomeKeyReceiver);
             mHomeKeyReceiver = null;
         }
-        try {
-            if (searchExecutorService != null) {
-                searchExecutorService.shutdownNow();
-                searchExecutorService = null;
-            }
-        } catch (Throwable th) {
-            th.printStackTrace();
+        if (searchSession != null) {
+            searchSession.cancel();
+            searchSession = null;
         }
         OkGo.getInstance().cancelTag("fenci");
         OkGo.getInstance().cancelTag("detail");
-        OkGo.getInstance().cancelTag("quick_search");
         OkGo.getInstance().cancelTag("pushVod");
         EventBus.getDefault().unregister(this);
         if (!showPreview) Thunder.stop(true);
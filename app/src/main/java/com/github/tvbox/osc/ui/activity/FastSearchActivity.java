@@ -26,6 +26,7 @@ import com.github.tvbox.osc.ui.adapter.FastSearchAdapter;
 import com.github.tvbox.osc.ui.adapter.SearchWordAdapter;
 import com.github.tvbox.osc.util.FastClickCheckUtil;
 import com.github.tvbox.osc.util.SearchHelper;
+import com.github.tvbox.osc.util.SearchScheduler;
 import com.github.tvbox.osc.viewmodel.SourceViewModel;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
@@ -47,8 +48,6 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -111,20 +110,10 @@ public class FastSearchActivity extends BaseActivity {
         initData();
     }
 
-    private List<Runnable> pauseRunnable = null;
-
     @Override
     protected void onResume() {
         super.onResume();
-        if (pauseRunnable != null && pauseRunnable.size() > 0) {
-            searchExecutorService = Executors.newFixedThreadPool(5);
-            allRunCount.set(pauseRunnable.size());
-            for (Runnable runnable : pauseRunnable) {
-                searchExecutorService.execute(runnable);
-            }
-            pauseRunnable.clear();
-            pauseRunnable = null;
-        }
+        if (searchSession != null) searchSession.resume();
     }
 
     private void initView() {
@@ -186,15 +175,7 @@ public class FastSearchActivity extends BaseActivity {
                 FastClickCheckUtil.check(view);
                 Movie.Video video = searchAdapter.getData().get(position);
                 if (video != null) {
-                    try {
-                        if (searchExecutorService != null) {
-                            pauseRunnable = searchExecutorService.shutdownNow();
-                            searchExecutorService = null;
-                            JsLoader.stopAll();
-                        }
-                    } catch (Throwable th) {
-                        th.printStackTrace();
-                    }
+                    if (searchSession != null) searchSession.pause();
                     Bundle bundle = new Bundle();
                     bundle.putString("id", video.id);
                     bundle.putString("sourceKey", video.sourceKey);
@@ -212,15 +193,7 @@ public class FastSearchActivity extends BaseActivity {
                 FastClickCheckUtil.check(view);
                 Movie.Video video = searchAdapterFilter.getData().get(position);
                 if (video != null) {
-                    try {
-                        if (searchExecutorService != null) {
-                            pauseRunnable = searchExecutorService.shutdownNow();
-                            searchExecutorService = null;
-                            JsLoader.stopAll();
-                        }
-                    } catch (Throwable th) {
-                        th.printStackTrace();
-                    }
+                    if (searchSession != null) searchSession.pause();
                     Bundle bundle = new Bundle();
                     bundle.putString("id", video.id);
                     bundle.putString("sourceKey", video.sourceKey);
@@ -372,24 +345,15 @@ public class FastSearchActivity extends BaseActivity {
         searchResult();
     }
 
-    private ExecutorService searchExecutorService = null;
+    private SearchScheduler.Session searchSession = null;
+    // 搜索过才需要在退出时重新加载被中断的 js 来源
+    private boolean searched = false;
     private final AtomicInteger allRunCount = new AtomicInteger(0);
 
     private void searchResult() {
-        try {
-            if (searchExecutorService != null) {
-                searchExecutorService.shutdownNow();
-                searchExecutorService = null;
-                JsLoader.stopAll();
-            }
-        } catch (Throwable th) {
-            th.printStackTrace();
-        } finally {
-            searchAdapter.setNewData(new ArrayList<>());
-            searchAdapterFilter.setNewData(new ArrayList<>());
-            allRunCount.set(0);
-        }
-        searchExecutorService = Executors.newFixedThreadPool(5);
+        searchAdapter.setNewData(new ArrayList<>());
+        searchAdapterFilter.setNewData(new ArrayList<>());
+        allRunCount.set(0);
         List<SourceBean> searchRequestList = new ArrayList<>();
         searchRequestList.addAll(ApiConfig.get().getSourceBeanList());
         SourceBean home = ApiConfig.get().getHomeSourceBean();
@@ -413,18 +377,8 @@ public class FastSearchActivity extends BaseActivity {
             allRunCount.incrementAndGet();
         }
 
-        for (String key : siteKey) {
-            searchExecutorService.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        sourceViewModel.getSearch(key, searchTitle);
-                    } catch (Exception e) {
-
-                    }
-                }
-            });
-        }
+        searched = true;
+        searchSession = SearchScheduler.get().submit(siteKey, searchTitle, false, sourceViewModel::searchContent);
     }
 
     // 向过滤栏添加有结果的spname
@@ -488,7 +442,10 @@ public class FastSearchActivity extends BaseActivity {
     }
 
     private void cancel() {
-        OkGo.getInstance().cancelTag("search");
+        if (searchSession != null) {
+            searchSession.cancel();
+            searchSession = null;
+        }
     }
 
     @Override
@@ -496,11 +453,7 @@ public class FastSearchActivity extends BaseActivity {
         super.onDestroy();
         cancel();
         try {
-            if (searchExecutorService != null) {
-                searchExecutorService.shutdownNow();
-                searchExecutorService = null;
-                JsLoader.load();
-            }
+            if (searched) JsLoader.load();
         } catch (Throwable th) {
             th.printStackTrace();
         }
@@ -19,6 +19,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.view.KeyEvent;
 import android.view.View;
@@ -94,6 +95,8 @@ public class HomeActivity extends BaseActivity {
 
     // takagen99: Added to allow read string
     private static Resources res;
+    // 冷启动到首页的耗时只记一次
+    private static boolean homeReported = false;
 
     private View currentView;
     private LinearLayout topLayout;
@@ -335,6 +338,10 @@ public class HomeActivity extends BaseActivity {
             public void onChanged(AbsSortXml absXml) {
                 showSuccess();
                 initViewPager(absXml);
+                if (!homeReported) {
+                    homeReported = true;
+                    LOG.i("启动到首页耗时" + (SystemClock.elapsedRealtime() - App.getStartTime()) + "ms, " + (ApiConfig.get().isConfigFromSnapshot() ? "使用配置快照" : "解析配置"));
+                }
 
                 // 检查更新
                 checkUpdate();
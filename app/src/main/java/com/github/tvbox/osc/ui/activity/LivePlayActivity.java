@@ -55,7 +55,6 @@ import com.github.tvbox.osc.util.HawkConfig;
 import com.github.tvbox.osc.util.HawkUtils;
 import com.github.tvbox.osc.util.JavaUtil;
 import com.github.tvbox.osc.util.live.TxtSubscribe;
-import com.google.gson.JsonArray;
 import com.lzy.okgo.OkGo;
 import com.lzy.okgo.callback.AbsCallback;
 import com.lzy.okgo.callback.StringCallback;
@@ -79,7 +78,6 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Hashtable;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.HashMap;
@@ -1753,21 +1751,16 @@ public class LivePlayActivity extends BaseActivity {
             return;
         }
         showLoading();
-        OkGo.<String>get(url).execute(new AbsCallback<String>() {
+        OkGo.<List<LiveChannelGroup>>get(url).execute(new AbsCallback<List<LiveChannelGroup>>() {
 
             @Override
-            public String convertResponse(okhttp3.Response response) throws Throwable {
-                return response.body().string();
+            public List<LiveChannelGroup> convertResponse(okhttp3.Response response) throws Throwable {
+                return TxtSubscribe.parse(response.body().byteStream());
             }
 
             @Override
-            public void onSuccess(Response<String> response) {
-                JsonArray livesArray;
-                LinkedHashMap<String, LinkedHashMap<String, ArrayList<String>>> linkedHashMap = new LinkedHashMap<>();
-                TxtSubscribe.parse(linkedHashMap, response.body());
-                livesArray = TxtSubscribe.live2JsonArray(linkedHashMap);
-
-                ApiConfig.get().loadLives(livesArray);
+            public void onSuccess(Response<List<LiveChannelGroup>> response) {
+                ApiConfig.get().setLiveChannelGroups(response.body());
                 List<LiveChannelGroup> list = ApiConfig.get().getChannelGroupList();
                 if (list.isEmpty()) {
                     Toast.makeText(App.getInstance(), getString(R.string.act_live_play_empty_channel), Toast.LENGTH_SHORT).show();
@@ -1787,7 +1780,7 @@ public class LivePlayActivity extends BaseActivity {
             }
 
             @Override
-            public void onError(Response<String> response) {
+            public void onError(Response<List<LiveChannelGroup>> response) {
                 super.onError(response);
                 Toast.makeText(App.getInstance(), getString(R.string.act_live_play_network_error), Toast.LENGTH_LONG).show();
                 finish();
@@ -59,6 +59,7 @@ import com.github.tvbox.osc.bean.SourceBean;
 import com.github.tvbox.osc.bean.SubtitleBean;
 import com.github.tvbox.osc.bean.VodInfo;
 import com.github.tvbox.osc.cache.CacheManager;
+import com.github.tvbox.osc.cache.ProgressStore;
 import com.github.tvbox.osc.event.RefreshEvent;
 import com.github.tvbox.osc.player.EXOmPlayer;
 import com.github.tvbox.osc.player.IjkmPlayer;
@@ -71,7 +72,7 @@ import com.github.tvbox.osc.player.thirdparty.Kodi;
 import com.github.tvbox.osc.player.thirdparty.MXPlayer;
 import com.github.tvbox.osc.player.thirdparty.ReexPlayer;
 import com.github.tvbox.osc.server.ControlManager;
-import com.github.tvbox.osc.server.RemoteServer;
+import com.github.tvbox.osc.server.M3u8RequestProcess;
 import com.github.tvbox.osc.subtitle.model.Subtitle;
 import com.github.tvbox.osc.ui.adapter.SelectDialogAdapter;
 import com.github.tvbox.osc.ui.dialog.DanmuSettingDialog;
@@ -90,6 +91,7 @@ import com.github.tvbox.osc.util.PlayerHelper;
 import com.github.tvbox.osc.util.StringUtils;
 import com.github.tvbox.osc.util.SubtitleHelper;
 import com.github.tvbox.osc.util.VideoParseRuler;
+import com.github.tvbox.osc.util.VideoSniffer;
 import com.github.tvbox.osc.util.XWalkUtils;
 import com.github.tvbox.osc.util.thunder.Jianpian;
 import com.github.tvbox.osc.util.thunder.Thunder;
@@ -258,7 +260,7 @@ public class PlayActivity extends BaseActivity {
             @Override
             public void saveProgress(String url, long progress) {
                 if (videoDuration == 0) return;
-                CacheManager.save(MD5.string2MD5(url), progress);
+                ProgressStore.save(url, progress);
             }
 
             @Override
@@ -270,10 +272,10 @@ public class PlayActivity extends BaseActivity {
                     e.printStackTrace();
                 }
                 long skip = st * 1000L;
-                if (CacheManager.getCache(MD5.string2MD5(url)) == null) {
+                long rec = ProgressStore.get(url);
+                if (rec == ProgressStore.NONE) {
                     return skip;
                 }
-                long rec = (long) CacheManager.getCache(MD5.string2MD5(url));
                 if (rec < skip)
                     return skip;
                 return rec;
@@ -305,7 +307,7 @@ public class PlayActivity extends BaseActivity {
                     String preProgressKey = progressKey;
                     PlayActivity.this.playNext(rmProgress);
                     if (rmProgress && preProgressKey != null)
-                        CacheManager.delete(MD5.string2MD5(preProgressKey), 0);
+                        ProgressStore.delete(preProgressKey);
                 }
             }
 
@@ -755,11 +757,11 @@ public class PlayActivity extends BaseActivity {
                         if ("".equals(forwardurl)) {
                             int ilast = url.lastIndexOf('/');
 
-                            RemoteServer.m3u8Content = M3U8.purify(url.substring(0, ilast + 1), content);
-                            if (RemoteServer.m3u8Content == null)
+                            String m3u8Url = M3u8RequestProcess.register(M3U8.purify(url.substring(0, ilast + 1), content), headers);
+                            if (m3u8Url == null)
                                 startPlayUrl(url, headers);
                             else {
-                                startPlayUrl("http://127.0.0.1:" + RemoteServer.serverPort + "/m3u8", headers);
+                                startPlayUrl(m3u8Url, headers);
                                 //Toast.makeText(getContext(), "已移除视频广告", Toast.LENGTH_SHORT).show();
                             }
                             return;
@@ -773,12 +775,12 @@ public class PlayActivity extends BaseActivity {
                                     public void onSuccess(Response<String> response) {
                                         String content = response.body();
                                         int ilast = finalforwardurl.lastIndexOf('/');
-                                        RemoteServer.m3u8Content = M3U8.purify(finalforwardurl.substring(0, ilast + 1), content);
+                                        String m3u8Url = M3u8RequestProcess.register(M3U8.purify(finalforwardurl.substring(0, ilast + 1), content), headers);
 
-                                        if (RemoteServer.m3u8Content == null)
+                                        if (m3u8Url == null)
                                             startPlayUrl(finalforwardurl, headers);
                                         else {
-                                            startPlayUrl("http://127.0.0.1:" + RemoteServer.serverPort + "/m3u8", headers);
+                                            startPlayUrl(m3u8Url, headers);
                                             //Toast.makeText(getContext(), "已移除视频广告", Toast.LENGTH_SHORT).show();
                                         }
                                     }
@@ -1234,6 +1236,7 @@ public class PlayActivity extends BaseActivity {
         if (mVideoView != null) {
             mVideoView.pause();
         }
+        ProgressStore.flush();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -1296,6 +1299,7 @@ public class PlayActivity extends BaseActivity {
             mVideoView.release();
             mVideoView = null;
         }
+        ProgressStore.flush();
         stopLoadWebView(true);
         stopParse();
         Thunder.stop(false); // 停止磁力下载
@@ -1413,7 +1417,7 @@ public class PlayActivity extends BaseActivity {
         progressKey = mVodInfo.sourceKey + mVodInfo.id + mVodInfo.playFlag + mVodInfo.getplayIndex();
         //重新播放清除现有进度
         if (reset) {
-            CacheManager.delete(MD5.string2MD5(progressKey), 0);
+            ProgressStore.delete(progressKey);
             CacheManager.delete(MD5.string2MD5(subtitleCacheKey), "");
         }
         if (vs.url.startsWith("tvbox-drive://")) {
@@ -1903,7 +1907,7 @@ public class PlayActivity extends BaseActivity {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return VideoParseRuler.checkIsVideoForParse(webUrl, url);
+        return VideoSniffer.isVideo(webUrl, url);
     }
 
     class MyWebView extends WebView {
@@ -2064,7 +2068,7 @@ public class PlayActivity extends BaseActivity {
 
             boolean ad;
             if (!loadedUrls.containsKey(url)) {
-                ad = AdBlocker.isAd(url);
+                ad = VideoSniffer.isAd(url);
                 loadedUrls.put(url, ad);
             } else {
                 ad = loadedUrls.get(url);
@@ -2235,7 +2239,7 @@ public class PlayActivity extends BaseActivity {
 
             boolean ad;
             if (!loadedUrls.containsKey(url)) {
-                ad = AdBlocker.isAd(url);
+                ad = VideoSniffer.isAd(url);
                 loadedUrls.put(url, ad);
             } else {
                 ad = loadedUrls.get(url);
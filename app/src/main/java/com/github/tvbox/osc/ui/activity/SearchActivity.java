@@ -54,6 +54,7 @@ import com.github.tvbox.osc.ui.tv.widget.SearchKeyboard;
 import com.github.tvbox.osc.util.FastClickCheckUtil;
 import com.github.tvbox.osc.util.HawkConfig;
 import com.github.tvbox.osc.util.SearchHelper;
+import com.github.tvbox.osc.util.SearchScheduler;
 import com.github.tvbox.osc.util.SettingsUtil;
 import com.github.tvbox.osc.viewmodel.SourceViewModel;
 import com.google.gson.Gson;
@@ -174,22 +175,10 @@ public class SearchActivity extends BaseActivity {
         return rootView.getBottom() == r.bottom;
     }
 
-    private List<Runnable> pauseRunnable = null;
-
     @Override
     protected void onResume() {
         super.onResume();
-        if (pauseRunnable != null && pauseRunnable.size() > 0) {
-            allRunCount.set(pauseRunnable.size());
-            if (sourceViewModel != null) {
-                sourceViewModel.initExecutor();
-                for (Runnable runnable : pauseRunnable) {
-                    sourceViewModel.execute(runnable);
-                }
-            }
-            pauseRunnable.clear();
-            pauseRunnable = null;
-        }
+        if (searchSession != null) searchSession.resume();
     }
 
     private void initView() {
@@ -265,15 +254,7 @@ public class SearchActivity extends BaseActivity {
                 FastClickCheckUtil.check(view);
                 Movie.Video video = searchAdapter.getData().get(position);
                 if (video != null) {
-                    try {
-                        if (sourceViewModel != null) {
-                            pauseRunnable = sourceViewModel.shutdownNow();
-                            JsLoader.stopAll();
-                            sourceViewModel.destroyExecutor();
-                        }
-                    } catch (Throwable th) {
-                        th.printStackTrace();
-                    }
+                    if (searchSession != null) searchSession.pause();
                     Bundle bundle = new Bundle();
                     bundle.putString("id", video.id);
                     bundle.putString("sourceKey", video.sourceKey);
@@ -721,17 +702,12 @@ public class SearchActivity extends BaseActivity {
         searchResult();
     }
 
-    private AtomicInteger allRunCount = new AtomicInteger(0);
+    private SearchScheduler.Session searchSession = null;
+    private final AtomicInteger allRunCount = new AtomicInteger(0);
 
     private void searchResult() {
-        try {
-            sourceViewModel.initExecutor();
-        } catch (Throwable th) {
-            th.printStackTrace();
-        } finally {
-            searchAdapter.setNewData(new ArrayList<>());
-            allRunCount.set(0);
-        }
+        searchAdapter.setNewData(new ArrayList<>());
+        allRunCount.set(0);
 
         List<SourceBean> searchRequestList = new ArrayList<>();
 
@@ -770,14 +746,7 @@ public class SearchActivity extends BaseActivity {
             return;
         }
 
-        for (String key : siteKey) {
-            sourceViewModel.execute(new Runnable() {
-                @Override
-                public void run() {
-                    sourceViewModel.getSearch(key, searchTitle);
-                }
-            });
-        }
+        searchSession = SearchScheduler.get().submit(siteKey, searchTitle, false, sourceViewModel::searchContent);
     }
 
     private void searchData(AbsXml absXml) {
@@ -808,7 +777,10 @@ public class SearchActivity extends BaseActivity {
     }
 
     private void cancel() {
-        OkGo.getInstance().cancelTag("search");
+        if (searchSession != null) {
+            searchSession.cancel();
+            searchSession = null;
+        }
     }
 
     @Override
@@ -816,11 +788,7 @@ public class SearchActivity extends BaseActivity {
         super.onDestroy();
         cancel();
         try {
-            if (sourceViewModel != null) {
-                sourceViewModel.shutdownNow();
-                sourceViewModel.destroyExecutor();
-                JsLoader.load();
-            }
+            JsLoader.load();
         } catch (Throwable th) {
             th.printStackTrace();
         }
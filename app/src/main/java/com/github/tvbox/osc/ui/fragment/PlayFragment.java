@@ -52,6 +52,7 @@ import com.github.tvbox.osc.bean.SourceBean;
 import com.github.tvbox.osc.bean.SubtitleBean;
 import com.github.tvbox.osc.bean.VodInfo;
 import com.github.tvbox.osc.cache.CacheManager;
+import com.github.tvbox.osc.cache.ProgressStore;
 import com.github.tvbox.osc.event.RefreshEvent;
 import com.github.tvbox.osc.player.EXOmPlayer;
 import com.github.tvbox.osc.player.IjkmPlayer;
@@ -64,7 +65,7 @@ import com.github.tvbox.osc.player.thirdparty.Kodi;
 import com.github.tvbox.osc.player.thirdparty.MXPlayer;
 import com.github.tvbox.osc.player.thirdparty.ReexPlayer;
 import com.github.tvbox.osc.server.ControlManager;
-import com.github.tvbox.osc.server.RemoteServer;
+import com.github.tvbox.osc.server.M3u8RequestProcess;
 import com.github.tvbox.osc.subtitle.model.Subtitle;
 import com.github.tvbox.osc.ui.activity.DetailActivity;
 import com.github.tvbox.osc.ui.adapter.SelectDialogAdapter;
@@ -84,6 +85,7 @@ import com.github.tvbox.osc.util.PlayerHelper;
 import com.github.tvbox.osc.util.StringUtils;
 import com.github.tvbox.osc.util.SubtitleHelper;
 import com.github.tvbox.osc.util.VideoParseRuler;
+import com.github.tvbox.osc.util.VideoSniffer;
 import com.github.tvbox.osc.util.XWalkUtils;
 import com.github.tvbox.osc.util.thunder.Jianpian;
 import com.github.tvbox.osc.util.thunder.Thunder;
@@ -244,7 +246,7 @@ public class PlayFragment extends BaseLazyFragment {
             @Override
             public void saveProgress(String url, long progress) {
                 if (videoDuration == 0) return;
-                CacheManager.save(MD5.string2MD5(url), progress);
+                ProgressStore.save(url, progress);
             }
 
             @Override
@@ -256,10 +258,10 @@ public class PlayFragment extends BaseLazyFragment {
                     e.printStackTrace();
                 }
                 long skip = st * 1000L;
-                if (CacheManager.getCache(MD5.string2MD5(url)) == null) {
+                long rec = ProgressStore.get(url);
+                if (rec == ProgressStore.NONE) {
                     return skip;
                 }
-                long rec = (long) CacheManager.getCache(MD5.string2MD5(url));
                 if (rec < skip)
                     return skip;
                 return rec;
@@ -292,7 +294,7 @@ public class PlayFragment extends BaseLazyFragment {
                     String preProgressKey = progressKey;
                     PlayFragment.this.playNext(rmProgress);
                     if (rmProgress && preProgressKey != null)
-                        CacheManager.delete(MD5.string2MD5(preProgressKey), 0);
+                        ProgressStore.delete(preProgressKey);
                 }
             }
 
@@ -740,11 +742,11 @@ public class PlayFragment extends BaseLazyFragment {
                         if ("".equals(forwardurl)) {
                             int ilast = url.lastIndexOf('/');
 
-                            RemoteServer.m3u8Content = M3U8.purify(url.substring(0, ilast + 1), content);
-                            if (RemoteServer.m3u8Content == null)
+                            String m3u8Url = M3u8RequestProcess.register(M3U8.purify(url.substring(0, ilast + 1), content), headers);
+                            if (m3u8Url == null)
                                 startPlayUrl(url, headers);
                             else {
-                                startPlayUrl("http://127.0.0.1:" + RemoteServer.serverPort + "/m3u8", headers);
+                                startPlayUrl(m3u8Url, headers);
                                 //Toast.makeText(getContext(), "已移除视频广告", Toast.LENGTH_SHORT).show();
                             }
                             return;
@@ -758,12 +760,12 @@ public class PlayFragment extends BaseLazyFragment {
                                     public void onSuccess(Response<String> response) {
                                         String content = response.body();
                                         int ilast = finalforwardurl.lastIndexOf('/');
-                                        RemoteServer.m3u8Content = M3U8.purify(finalforwardurl.substring(0, ilast + 1), content);
+                                        String m3u8Url = M3u8RequestProcess.register(M3U8.purify(finalforwardurl.substring(0, ilast + 1), content), headers);
 
-                                        if (RemoteServer.m3u8Content == null)
+                                        if (m3u8Url == null)
                                             startPlayUrl(finalforwardurl, headers);
                                         else {
-                                            startPlayUrl("http://127.0.0.1:" + RemoteServer.serverPort + "/m3u8", headers);
+                                            startPlayUrl(m3u8Url, headers);
                                             //Toast.makeText(getContext(), "已移除视频广告", Toast.LENGTH_SHORT).show();
                                         }
                                     }
@@ -1128,6 +1130,7 @@ public class PlayFragment extends BaseLazyFragment {
             getVodController().mProgressTop.setAlpha(0);
             mVideoView.pause();
         }
+        ProgressStore.flush();
     }
 
     @Override
@@ -1167,6 +1170,7 @@ public class PlayFragment extends BaseLazyFragment {
             mVideoView.release();
             mVideoView = null;
         }
+        ProgressStore.flush();
         stopLoadWebView(true);
         stopParse();
         Thunder.stop(true); // 停止磁力下载
@@ -1291,7 +1295,7 @@ public class PlayFragment extends BaseLazyFragment {
         progressKey = mVodInfo.sourceKey + mVodInfo.id + mVodInfo.playFlag + mVodInfo.getplayIndex();
         //重新播放清除现有进度
         if (reset) {
-            CacheManager.delete(MD5.string2MD5(progressKey), 0);
+            ProgressStore.delete(progressKey);
             CacheManager.delete(MD5.string2MD5(subtitleCacheKey), "");
         }
         if (vs.url.startsWith("tvbox-xg:") && !TextUtils.isEmpty(vs.url.substring(9))) {
@@ -1768,7 +1772,7 @@ public class PlayFragment extends BaseLazyFragment {
                     return sp.isVideoFormat(url);
                 }
             }
-            return VideoParseRuler.checkIsVideoForParse(webUrl, url);
+            return VideoSniffer.isVideo(webUrl, url);
         } catch (Exception e) {
             return false;
         }
@@ -1933,7 +1937,7 @@ public class PlayFragment extends BaseLazyFragment {
 
             boolean ad;
             if (!loadedUrls.containsKey(url)) {
-                ad = AdBlocker.isAd(url);
+                ad = VideoSniffer.isAd(url);
                 loadedUrls.put(url, ad);
             } else {
                 ad = loadedUrls.get(url);
@@ -2105,7 +2109,7 @@ public class PlayFragment extends BaseLazyFragment {
 
             boolean ad;
             if (!loadedUrls.containsKey(url)) {
-                ad = AdBlocker.isAd(url);
+                ad = VideoSniffer.isAd(url);
                 loadedUrls.put(url, ad);
             } else {
                 ad = loadedUrls.get(url);
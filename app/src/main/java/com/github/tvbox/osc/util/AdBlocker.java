@@ -4,35 +4,56 @@ import android.webkit.WebResourceResponse;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class AdBlocker {
     private static final List<String> AD_HOSTS = new ArrayList<>();
+    private static volatile AdHostMatcher matcher = AdHostMatcher.EMPTY;
+    private static volatile boolean dirty;
 
-    public static void clear() {
+    public static synchronized void clear() {
         AD_HOSTS.clear();
+        matcher = AdHostMatcher.EMPTY;
+        dirty = false;
     }
 
-    public static boolean isEmpty() {
+    public static synchronized boolean isEmpty() {
         return AD_HOSTS.isEmpty();
     }
 
-    public static void addAdHost(String host) {
+    public static synchronized void addAdHost(String host) {
         AD_HOSTS.add(host);
+        dirty = true;
+    }
+
+    /**
+     * 重新加载配置时使用, 编译完成后整体替换
+     */
+    public static void setAdHosts(Collection<String> hosts) {
+        AdHostMatcher compiled = AdHostMatcher.compile(hosts);
+        synchronized (AdBlocker.class) {
+            AD_HOSTS.clear();
+            AD_HOSTS.addAll(hosts);
+            matcher = compiled;
+            dirty = false;
+        }
     }
 
     public static boolean isAd(String url) {
-        url = url.toLowerCase();
-        for (String adHost : AD_HOSTS) {
-            if (url.contains(adHost)) {
-                return true;
+        if (dirty) {
+            synchronized (AdBlocker.class) {
+                if (dirty) {
+                    matcher = AdHostMatcher.compile(AD_HOSTS);
+                    dirty = false;
+                }
             }
         }
-        return false;
+        return matcher.matches(url);
     }
 
     public static WebResourceResponse createEmptyResource() {
         return new WebResourceResponse("text/plain", "utf-8", new ByteArrayInputStream("".getBytes()));
     }
 
-}
\ No newline at end of file
+}
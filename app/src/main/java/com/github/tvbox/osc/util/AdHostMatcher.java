@@ -0,0 +1,129 @@
+package com.github.tvbox.osc.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 广告域名匹配: 把所有广告域名编译成 Aho-Corasick 自动机,
+ * 一次扫描 url 即可判断是否包含任意一个域名(忽略大小写), 匹配过程不分配内存。
+ * 构建完成后不可修改, 配置重新加载时整体替换。
+ */
+public final class AdHostMatcher {
+    public static final AdHostMatcher EMPTY = new AdHostMatcher(new ArrayList<>());
+
+    //状态 s 的子节点为 edgeChar/edgeTarget[edgeStart[s], edgeStart[s + 1]), 按字符排序
+    private final int[] edgeStart;
+    private final char[] edgeChar;
+    private final int[] edgeTarget;
+    private final int[] fail;
+    private final boolean[] output;
+    private final int size;
+
+    public static AdHostMatcher compile(Collection<String> hosts) {
+        List<String> patterns = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            if (host == null) continue;
+            host = host.trim();
+            if (host.length() > 0) patterns.add(host);
+        }
+        return patterns.isEmpty() ? EMPTY : new AdHostMatcher(patterns);
+    }
+
+    private AdHostMatcher(List<String> patterns) {
+        //构建字典树, key = state << 16 | char
+        HashMap<Long, Integer> trie = new HashMap<>();
+        List<Integer> terminals = new ArrayList<>();
+        int states = 1;
+        for (String pattern : patterns) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                long key = ((long) state << 16) | lower(pattern.charAt(i));
+                Integer next = trie.get(key);
+                if (next == null) {
+                    next = states++;
+                    trie.put(key, next);
+                }
+                state = next;
+            }
+            terminals.add(state);
+        }
+
+        long[] keys = new long[trie.size()];
+        int k = 0;
+        for (Long key : trie.keySet()) keys[k++] = key;
+        Arrays.sort(keys);
+        edgeStart = new int[states + 1];
+        edgeChar = new char[keys.length];
+        edgeTarget = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            edgeStart[(int) (keys[i] >>> 16) + 1]++;
+            edgeChar[i] = (char) (keys[i] & 0xFFFF);
+            edgeTarget[i] = trie.get(keys[i]);
+        }
+        for (int s = 0; s < states; s++) edgeStart[s + 1] += edgeStart[s];
+
+        output = new boolean[states];
+        for (int state : terminals) output[state] = true;
+
+        //按层遍历计算失配指针
+        fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) queue[tail++] = edgeTarget[e];
+        while (head < tail) {
+            int state = queue[head++];
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTarget[e];
+                char c = edgeChar[e];
+                int f = fail[state];
+                int next;
+                while ((next = child(f, c)) < 0 && f != 0) f = fail[f];
+                fail[child] = next < 0 ? 0 : next;
+                output[child] |= output[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+        size = patterns.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean matches(String url) {
+        if (size == 0 || url == null) return false;
+        int state = 0;
+        for (int i = 0, length = url.length(); i < length; i++) {
+            char c = lower(url.charAt(i));
+            int next;
+            while ((next = child(state, c)) < 0 && state != 0) state = fail[state];
+            state = next < 0 ? 0 : next;
+            if (output[state]) return true;
+        }
+        return false;
+    }
+
+    private int child(int state, char c) {
+        int low = edgeStart[state], high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = edgeChar[mid];
+            if (m < c) low = mid + 1;
+            else if (m > c) high = mid - 1;
+            else return edgeTarget[mid];
+        }
+        return -1;
+    }
+
+    private static char lower(char c) {
+        if (c < 128) return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        return Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,252 @@
+package com.github.tvbox.osc.util;
+
+import android.util.Xml;
+
+import com.github.tvbox.osc.bean.AbsSortXml;
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.bean.Movie;
+import com.github.tvbox.osc.bean.MovieSort;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+/**
+ * 苹果 CMS xml 接口解析
+ * <p>
+ * 用 XmlPullParser 边读边直接生成 AbsXml / AbsSortXml, 代替每次新建 XStream + DomDriver(反射初始化 + 完整 DOM)。
+ * 映射关系与 bean 上的 XStream 注解一致, 未知节点忽略; 没有状态, 可在任意线程调用。
+ * 与 XStream 的区别: 数字字段(page, tid, year 等)为空或格式不对时取 0, 不再整体解析失败。
+ */
+public final class CmsXml {
+
+    private CmsXml() {
+    }
+
+    public static AbsXml parseAbsXml(String xml) throws XmlPullParserException, IOException {
+        return parseAbsXml(Xml.newPullParser(), xml);
+    }
+
+    public static AbsSortXml parseSortXml(String xml) throws XmlPullParserException, IOException {
+        return parseSortXml(Xml.newPullParser(), xml);
+    }
+
+    // 测试时传入 kxml2 的解析器, 本地 JVM 上没有 android.util.Xml
+    static AbsXml parseAbsXml(XmlPullParser parser, String xml) throws XmlPullParserException, IOException {
+        start(parser, xml);
+        AbsXml data = new AbsXml();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            switch (parser.getName()) {
+                case "list":
+                    data.movie = readMovie(parser);
+                    break;
+                case "msg":
+                    data.msg = readText(parser);
+                    break;
+                default:
+                    skip(parser);
+            }
+        }
+        return data;
+    }
+
+    static AbsSortXml parseSortXml(XmlPullParser parser, String xml) throws XmlPullParserException, IOException {
+        start(parser, xml);
+        AbsSortXml data = new AbsSortXml();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            switch (parser.getName()) {
+                case "class":
+                    data.classes = readSort(parser);
+                    break;
+                case "list":
+                    data.list = readMovie(parser);
+                    break;
+                default:
+                    skip(parser);
+            }
+        }
+        return data;
+    }
+
+    private static void start(XmlPullParser parser, String xml) throws XmlPullParserException, IOException {
+        parser.setInput(new StringReader(xml));
+        int event = parser.nextTag();
+        if (event != XmlPullParser.START_TAG || !"rss".equals(parser.getName())) {
+            throw new XmlPullParserException("unexpected root " + parser.getName(), parser, null);
+        }
+    }
+
+    private static MovieSort readSort(XmlPullParser parser) throws XmlPullParserException, IOException {
+        MovieSort sort = new MovieSort();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if ("ty".equals(parser.getName())) {
+                MovieSort.SortData data = new MovieSort.SortData();
+                data.id = parser.getAttributeValue(null, "id");
+                data.name = readText(parser);
+                if (sort.sortList == null) sort.sortList = new ArrayList<>();
+                sort.sortList.add(data);
+            } else {
+                skip(parser);
+            }
+        }
+        return sort;
+    }
+
+    private static Movie readMovie(XmlPullParser parser) throws XmlPullParserException, IOException {
+        Movie movie = new Movie();
+        movie.page = toInt(parser.getAttributeValue(null, "page"));
+        movie.pagecount = toInt(parser.getAttributeValue(null, "pagecount"));
+        movie.pagesize = toInt(parser.getAttributeValue(null, "pagesize"));
+        movie.recordcount = toInt(parser.getAttributeValue(null, "recordcount"));
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if ("video".equals(parser.getName())) {
+                if (movie.videoList == null) movie.videoList = new ArrayList<>();
+                movie.videoList.add(readVideo(parser));
+            } else {
+                skip(parser);
+            }
+        }
+        return movie;
+    }
+
+    private static Movie.Video readVideo(XmlPullParser parser) throws XmlPullParserException, IOException {
+        Movie.Video video = new Movie.Video();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            switch (parser.getName()) {
+                case "last":
+                    video.last = readText(parser);
+                    break;
+                case "id":
+                    video.id = readText(parser);
+                    break;
+                case "tid":
+                    video.tid = toInt(readText(parser));
+                    break;
+                case "name":
+                    video.name = readText(parser);
+                    break;
+                case "type":
+                    video.type = readText(parser);
+                    break;
+                case "pic":
+                    video.pic = readText(parser);
+                    break;
+                case "lang":
+                    video.lang = readText(parser);
+                    break;
+                case "area":
+                    video.area = readText(parser);
+                    break;
+                case "year":
+                    video.year = toInt(readText(parser));
+                    break;
+                case "state":
+                    //与原来把 <state></state> 替换成 0 的处理一致
+                    video.state = readText(parser);
+                    if (video.state.isEmpty()) video.state = "0";
+                    break;
+                case "note":
+                    video.note = readText(parser);
+                    break;
+                case "actor":
+                    video.actor = readText(parser);
+                    break;
+                case "director":
+                    video.director = readText(parser);
+                    break;
+                case "des":
+                    video.des = readText(parser);
+                    break;
+                case "tag":
+                    video.tag = readText(parser);
+                    break;
+                case "dl":
+                    video.urlBean = readUrlBean(parser);
+                    break;
+                default:
+                    skip(parser);
+            }
+        }
+        return video;
+    }
+
+    private static Movie.Video.UrlBean readUrlBean(XmlPullParser parser) throws XmlPullParserException, IOException {
+        Movie.Video.UrlBean urlBean = new Movie.Video.UrlBean();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if ("dd".equals(parser.getName())) {
+                Movie.Video.UrlBean.UrlInfo info = new Movie.Video.UrlBean.UrlInfo();
+                info.flag = parser.getAttributeValue(null, "flag");
+                info.urls = readText(parser);
+                if (urlBean.infoList == null) urlBean.infoList = new ArrayList<>();
+                urlBean.infoList.add(info);
+            } else {
+                skip(parser);
+            }
+        }
+        return urlBean;
+    }
+
+    /**
+     * 移动到 depth 层元素的下一个子元素, 没有更多子元素时返回 false
+     */
+    private static boolean nextChild(XmlPullParser parser, int depth) throws XmlPullParserException, IOException {
+        while (true) {
+            int event = parser.next();
+            if (event == XmlPullParser.END_DOCUMENT) return false;
+            if (event == XmlPullParser.END_TAG && parser.getDepth() <= depth) return false;
+            if (event == XmlPullParser.START_TAG && parser.getDepth() == depth + 1) return true;
+        }
+    }
+
+    /**
+     * 当前元素的文本(含 CDATA), 忽略嵌套的子元素, 读完后停在结束标签
+     */
+    private static String readText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = parser.getDepth();
+        StringBuilder text = null;
+        String single = "";
+        while (true) {
+            int event = parser.next();
+            if (event == XmlPullParser.END_DOCUMENT) break;
+            if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) break;
+            if (event == XmlPullParser.TEXT && parser.getDepth() == depth) {
+                String s = parser.getText();
+                if (text != null) {
+                    text.append(s);
+                } else if (single.isEmpty()) {
+                    single = s;
+                } else {
+                    text = new StringBuilder(single).append(s);
+                }
+            }
+        }
+        return text != null ? text.toString() : single;
+    }
+
+    private static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = parser.getDepth();
+        while (true) {
+            int event = parser.next();
+            if (event == XmlPullParser.END_DOCUMENT) return;
+            if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) return;
+        }
+    }
+
+    private static int toInt(String value) {
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -29,7 +29,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Pattern;
 
 /**
  * @author pj567
@@ -200,16 +199,8 @@ public class DefaultConfig {
     }
 
     // takagen99 : 增加对flv|avi|mkv|rm|wmv|mpg等几种视频格式的支持
-    private static final Pattern snifferMatch = Pattern.compile("http((?!http).){20,}?\\.(m3u8|mp4|flv|avi|mkv|rm|wmv|mpg)\\?.*|" + "http((?!http).){20,}\\.(m3u8|mp4|flv|avi|mkv|rm|wmv|mpg)|" + "http((?!http).)*?video/tos*|" + "http((?!http).){20,}?/m3u8\\?pt=m3u8.*|" + "http((?!http).)*?default\\.ixigua\\.com/.*|" + "http((?!http).)*?dycdn-tos\\.pstatp[^\\?]*|" + "http.*?/player/m3u8play\\.php\\?url=.*|" + "http.*?/player/.*?[pP]lay\\.php\\?url=.*|" + "http.*?/playlist/m3u8/\\?vid=.*|" + "http.*?\\.php\\?type=m3u8&.*|" + "http.*?/download.aspx\\?.*|" + "http.*?/api/up_api.php\\?.*|" + "https.*?\\.66yk\\.cn.*|" + "http((?!http).)*?netease\\.com/file/.*");
-
     public static boolean isVideoFormat(String url) {
-        if (url.contains("=http")) {
-            return false;
-        }
-        if (snifferMatch.matcher(url).find()) {
-            return !url.contains(".js") && !url.contains(".css") && !url.contains(".jpg") && !url.contains(".png") && !url.contains(".gif") && !url.contains(".ico") && !url.contains("rl=") && !url.contains(".html");
-        }
-        return false;
+        return VideoSniffer.isVideoFormat(url);
     }
 
 
@@ -8,6 +8,7 @@ import com.github.catvod.utils.Path;
 import com.github.tvbox.osc.base.App;
 import com.github.tvbox.osc.server.ControlManager;
 import com.github.tvbox.osc.util.StringUtils;
+import com.github.tvbox.osc.util.js.JsModuleStore;
 import com.github.tvbox.osc.util.urlhttp.OkHttpUtil;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -136,15 +137,7 @@ public class FileUtils {
             Matcher m = URLJOIN.matcher(name);
             if (m.find()) {
                 if (!Hawk.get(HawkConfig.DEBUG_OPEN, false)) {
-                    String cache = getCache(MD5.encode(name));
-                    if (StringUtils.isEmpty(cache)) {
-                        String netStr = get(name);
-                        if (!TextUtils.isEmpty(netStr)) {
-                            setCache(604800, MD5.encode(name), netStr);
-                        }
-                        return netStr;
-                    }
-                    return cache;
+                    return JsModuleStore.get(name);
                 } else {
                     return get(name);
                 }
@@ -0,0 +1,350 @@
+package com.github.tvbox.osc.util;
+
+import com.github.tvbox.osc.bean.AbsJson;
+import com.github.tvbox.osc.bean.AbsSortJson;
+import com.github.tvbox.osc.bean.VodInfo;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 共用的 Gson 和热点类型的 TypeAdapter
+ * <p>
+ * Gson 实例和反射得到的 TypeAdapter 创建代价都不小, 原来每次解析都 new Gson() 和 new TypeToken(){}.
+ * 这里全局共用, 并为 CMS 的 vod 列表和历史记录的 VodInfo 手写流式 adapter。
+ */
+public final class GsonHelper {
+
+    public static final Gson GSON = new Gson();
+
+    // CMS json 接口, vod 只读取 toXmlVideo 用到的字段
+    private static final Gson CMS = GSON.newBuilder()
+            .registerTypeAdapter(AbsJson.AbsJsonVod.class, new AbsJsonVodAdapter())
+            .create();
+
+    // 历史记录, 写入时不保存选集(seriesFlags, seriesMap)
+    private static final Gson VOD_RECORD = GSON.newBuilder()
+            .registerTypeAdapter(VodInfo.class, new VodInfoAdapter(false))
+            .create();
+    private static final Gson VOD_RECORD_SUMMARY = GSON.newBuilder()
+            .registerTypeAdapter(VodInfo.class, new VodInfoAdapter(true))
+            .create();
+
+    private GsonHelper() {
+    }
+
+    public static AbsJson parseAbsJson(String json) {
+        return CMS.fromJson(json, AbsJson.class);
+    }
+
+    public static AbsSortJson parseAbsSortJson(JsonElement json) {
+        return CMS.fromJson(json, AbsSortJson.class);
+    }
+
+    public static String toVodRecord(VodInfo vodInfo) {
+        return VOD_RECORD.toJson(vodInfo, VodInfo.class);
+    }
+
+    public static VodInfo parseVodRecord(String json) {
+        return VOD_RECORD.fromJson(json, VodInfo.class);
+    }
+
+    /**
+     * 历史列表只需要名称/图片/备注等几个字段, 其余(包括选集)直接跳过
+     */
+    public static VodInfo parseVodRecordSummary(String json) {
+        return VOD_RECORD_SUMMARY.fromJson(json, VodInfo.class);
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) return Boolean.toString(in.nextBoolean());
+        return in.nextString();
+    }
+
+    // 与 Gson 反射一致: null 不覆盖基本类型的默认值
+    private static int readInt(JsonReader in, int def) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return def;
+        }
+        return in.nextInt();
+    }
+
+    private static boolean readBoolean(JsonReader in, boolean def) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return def;
+        }
+        if (token == JsonToken.STRING) return Boolean.parseBoolean(in.nextString());
+        return in.nextBoolean();
+    }
+
+    /**
+     * 只处理 {@link AbsJson.AbsJsonVod#toXmlVideo()} 用到的字段, 其他字段跳过不生成字符串
+     */
+    private static final class AbsJsonVodAdapter extends TypeAdapter<AbsJson.AbsJsonVod> {
+
+        @Override
+        public void write(JsonWriter out, AbsJson.AbsJsonVod vod) throws IOException {
+            if (vod == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("type_id").value(vod.type_id);
+            out.name("type_name").value(vod.type_name);
+            out.name("vod_actor").value(vod.vod_actor);
+            out.name("vod_area").value(vod.vod_area);
+            out.name("vod_content").value(vod.vod_content);
+            out.name("vod_director").value(vod.vod_director);
+            out.name("vod_id").value(vod.vod_id);
+            out.name("vod_lang").value(vod.vod_lang);
+            out.name("vod_name").value(vod.vod_name);
+            out.name("vod_pic").value(vod.vod_pic);
+            out.name("vod_play_from").value(vod.vod_play_from);
+            out.name("vod_play_url").value(vod.vod_play_url);
+            out.name("vod_remarks").value(vod.vod_remarks);
+            out.name("vod_state").value(vod.vod_state);
+            out.name("vod_tag").value(vod.vod_tag);
+            out.name("vod_time").value(vod.vod_time);
+            out.name("vod_year").value(vod.vod_year);
+            out.endObject();
+        }
+
+        @Override
+        public AbsJson.AbsJsonVod read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            AbsJson.AbsJsonVod vod = new AbsJson.AbsJsonVod();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "type_id":
+                        vod.type_id = readInt(in, vod.type_id);
+                        break;
+                    case "type_name":
+                        vod.type_name = readString(in);
+                        break;
+                    case "vod_actor":
+                        vod.vod_actor = readString(in);
+                        break;
+                    case "vod_area":
+                        vod.vod_area = readString(in);
+                        break;
+                    case "vod_content":
+                        vod.vod_content = readString(in);
+                        break;
+                    case "vod_director":
+                        vod.vod_director = readString(in);
+                        break;
+                    case "vod_id":
+                        vod.vod_id = readString(in);
+                        break;
+                    case "vod_lang":
+                        vod.vod_lang = readString(in);
+                        break;
+                    case "vod_name":
+                        vod.vod_name = readString(in);
+                        break;
+                    case "vod_pic":
+                        vod.vod_pic = readString(in);
+                        break;
+                    case "vod_play_from":
+                        vod.vod_play_from = readString(in);
+                        break;
+                    case "vod_play_url":
+                        vod.vod_play_url = readString(in);
+                        break;
+                    case "vod_remarks":
+                        vod.vod_remarks = readString(in);
+                        break;
+                    case "vod_state":
+                        vod.vod_state = readString(in);
+                        break;
+                    case "vod_tag":
+                        vod.vod_tag = readString(in);
+                        break;
+                    case "vod_time":
+                        vod.vod_time = readString(in);
+                        break;
+                    case "vod_year":
+                        vod.vod_year = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return vod;
+        }
+    }
+
+    /**
+     * 历史记录里的 VodInfo; 字段名与反射序列化一致, 已有的记录可以直接读取
+     */
+    private static final class VodInfoAdapter extends TypeAdapter<VodInfo> {
+        private final boolean summary;
+        private TypeAdapter<ArrayList<VodInfo.VodSeriesFlag>> flagsAdapter;
+        private TypeAdapter<LinkedHashMap<String, List<VodInfo.VodSeries>>> seriesAdapter;
+
+        VodInfoAdapter(boolean summary) {
+            this.summary = summary;
+            if (!summary) {
+                flagsAdapter = GSON.getAdapter(new TypeToken<ArrayList<VodInfo.VodSeriesFlag>>() {
+                });
+                seriesAdapter = GSON.getAdapter(new TypeToken<LinkedHashMap<String, List<VodInfo.VodSeries>>>() {
+                });
+            }
+        }
+
+        @Override
+        public void write(JsonWriter out, VodInfo info) throws IOException {
+            if (info == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("last").value(info.last);
+            out.name("id").value(info.id);
+            out.name("tid").value(info.tid);
+            out.name("name").value(info.name);
+            out.name("type").value(info.type);
+            out.name("dt").value(info.dt);
+            out.name("pic").value(info.pic);
+            out.name("lang").value(info.lang);
+            out.name("area").value(info.area);
+            out.name("year").value(info.year);
+            out.name("state").value(info.state);
+            out.name("note").value(info.note);
+            out.name("actor").value(info.actor);
+            out.name("director").value(info.director);
+            out.name("des").value(info.des);
+            out.name("playFlag").value(info.playFlag);
+            out.name("playIndex").value(info.playIndex);
+            out.name("playGroup").value(info.playGroup);
+            out.name("playGroupCount").value(info.playGroupCount);
+            out.name("playNote").value(info.playNote);
+            out.name("sourceKey").value(info.sourceKey);
+            out.name("playerCfg").value(info.playerCfg);
+            out.name("reverseSort").value(info.reverseSort);
+            out.endObject();
+        }
+
+        @Override
+        public VodInfo read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            VodInfo info = new VodInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "id":
+                        info.id = readString(in);
+                        continue;
+                    case "name":
+                        info.name = readString(in);
+                        continue;
+                    case "pic":
+                        info.pic = readString(in);
+                        continue;
+                    case "note":
+                        info.note = readString(in);
+                        continue;
+                    case "playFlag":
+                        info.playFlag = readString(in);
+                        continue;
+                    case "playIndex":
+                        info.playIndex = readInt(in, info.playIndex);
+                        continue;
+                    case "playNote":
+                        info.playNote = readString(in);
+                        continue;
+                    case "sourceKey":
+                        info.sourceKey = readString(in);
+                        continue;
+                }
+                if (summary) {
+                    in.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case "last":
+                        info.last = readString(in);
+                        break;
+                    case "tid":
+                        info.tid = readInt(in, info.tid);
+                        break;
+                    case "type":
+                        info.type = readString(in);
+                        break;
+                    case "dt":
+                        info.dt = readString(in);
+                        break;
+                    case "lang":
+                        info.lang = readString(in);
+                        break;
+                    case "area":
+                        info.area = readString(in);
+                        break;
+                    case "year":
+                        info.year = readInt(in, info.year);
+                        break;
+                    case "state":
+                        info.state = readString(in);
+                        break;
+                    case "actor":
+                        info.actor = readString(in);
+                        break;
+                    case "director":
+                        info.director = readString(in);
+                        break;
+                    case "seriesFlags":
+                        info.seriesFlags = flagsAdapter.read(in);
+                        break;
+                    case "seriesMap":
+                        info.seriesMap = seriesAdapter.read(in);
+                        break;
+                    case "des":
+                        info.des = readString(in);
+                        break;
+                    case "playGroup":
+                        info.playGroup = readInt(in, info.playGroup);
+                        break;
+                    case "playGroupCount":
+                        info.playGroupCount = readInt(in, info.playGroupCount);
+                        break;
+                    case "playerCfg":
+                        info.playerCfg = readString(in);
+                        break;
+                    case "reverseSort":
+                        info.reverseSort = readBoolean(in, info.reverseSort);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return info;
+        }
+    }
+}
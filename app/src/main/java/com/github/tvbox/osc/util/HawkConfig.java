@@ -62,6 +62,7 @@ public class HawkConfig {
     public static final String FAST_SEARCH_MODE = "fast_search_mode";
     public static final String SCREEN_DISPLAY = "screen_display";
     public static final String SEARCH_FILTER_KEY = "search_filter_key";
+    public static final String CACHE_DB_BUDGET = "cache_db_budget";   // cache 表容量上限(字节)
 
     // Live Settings
     public static final String LIVE_CHANNEL = "last_live_channel_name";
@@ -81,4 +82,6 @@ public class HawkConfig {
     public static boolean hotVodDelete;
 
     public static final String SEARCH_RESULT_WIDTH = "search_result_width"; // 搜索结果view宽度
+    public static final String SEARCH_STATS = "search_stats"; // 各搜索来源的耗时/命中统计
+    public static final String SEARCH_CACHE_TIME = "search_cache_time"; // 搜索结果缓存时间(秒), 0 不缓存
 }
@@ -2,15 +2,11 @@ package com.github.tvbox.osc.util;
 
 import androidx.media3.common.util.UriUtil;
 
-import com.github.tvbox.osc.base.App;
-
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -23,10 +19,7 @@ public class M3U8 {
     private static final String TAG_MEDIA_DURATION = "#EXTINF";
     private static final String TAG_ENDLIST = "#EXT-X-ENDLIST";
     private static final String TAG_KEY = "#EXT-X-KEY";
-
-    private static final Pattern REGEX_X_DISCONTINUITY = Pattern.compile("#EXT-X-DISCONTINUITY[\\s\\S]*?(?=#EXT-X-DISCONTINUITY|$)");
-    private static final Pattern REGEX_MEDIA_DURATION = Pattern.compile(TAG_MEDIA_DURATION + ":([\\d\\.]+)\\b");
-    private static final Pattern REGEX_URI = Pattern.compile("URI=\"(.+?)\"");
+    private static final String ATTR_URI = "URI=\"";
 
     public static boolean isAd(String regex) {
         return regex.contains(TAG_DISCONTINUITY) || regex.contains(TAG_MEDIA_DURATION) || regex.contains(TAG_ENDLIST) || regex.contains(TAG_KEY) || M3U8.isDouble(regex);
@@ -35,138 +28,127 @@ public class M3U8 {
     public static String purify(String tsUrlPre, String m3u8content) {
         if (null == m3u8content || m3u8content.length() == 0) return null;
         if (!m3u8content.startsWith("#EXTM3U")) return null;
-        String result = removeMinorityUrl(tsUrlPre, m3u8content);
+        Playlist playlist = new Playlist(m3u8content);
+        String result = removeMinorityUrl(tsUrlPre, playlist);
         if (result != null) return result;
-        return get(tsUrlPre, m3u8content);
+        return get(tsUrlPre, playlist);
     }
 
-    private static double maxPercent(HashMap<String, Integer> preUrlMap) {
+    private static double maxPercent(Map<Region, int[]> preUrlMap) {
         int maxTimes = 0, totalTimes = 0;
-        for (Map.Entry<String, Integer> entry : preUrlMap.entrySet()) {
-            if (entry.getValue() > maxTimes) {
-                maxTimes = entry.getValue();
+        for (int[] times : preUrlMap.values()) {
+            if (times[0] > maxTimes) {
+                maxTimes = times[0];
+            }
+            totalTimes += times[0];
+        }
+        return maxTimes * 1.0 / (totalTimes * 1.0);
+    }
+
+    private static Region maxTimesKey(Map<Region, int[]> preUrlMap) {
+        int maxTimes = 0;
+        Region maxTimesPreUrl = null;
+        for (Map.Entry<Region, int[]> entry : preUrlMap.entrySet()) {
+            if (entry.getValue()[0] > maxTimes) {
+                maxTimesPreUrl = entry.getKey();
+                maxTimes = entry.getValue()[0];
             }
-            totalTimes += entry.getValue();
         }
-        return  maxTimes*1.0 / (totalTimes*1.0);
+        return maxTimesPreUrl;
     }
+
     /**
+     * 同前缀(或同域名)的分片占 80% 以上时, 去掉其它分片及其前面的标签
+     *
      * @author asdfgh
      * <a href="https://github.com/asdfgh"> asdfgh </a>
      */
-    private static String removeMinorityUrl(String tsUrlPre, String m3u8content) {
-        String linesplit = "\n";
-        if (m3u8content.contains("\r\n"))
-            linesplit = "\r\n";
-        String[] lines = m3u8content.split(linesplit);
-
-        HashMap<String, Integer> preUrlMap = new HashMap<>();
-        for (String line : lines) {
-            if (line.length() == 0 || line.charAt(0) == '#') {
-                continue;
-            }
-            int ilast = line.lastIndexOf('.');
-            if (ilast <= 4) {
-                continue;
-            }
-            String preUrl = line.substring(0, ilast - 4);
-            Integer cnt = preUrlMap.get(preUrl);
-            if (cnt != null) {
-                preUrlMap.put(preUrl, cnt + 1);
-            } else {
-                preUrlMap.put(preUrl, 1);
-            }
-        }
-        if (preUrlMap.size() <= 1) return null;
-        if (maxPercent(preUrlMap) < 0.8) {
+    private static String removeMinorityUrl(String tsUrlPre, Playlist playlist) {
+        if (playlist.prefixCounts.size() <= 1) return null;
+        Region keep;
+        if (maxPercent(playlist.prefixCounts) < 0.8) {
             //尝试判断域名，取同域名最多的链接，其它域名当作广告去除
-            preUrlMap.clear();
-            for (String line : lines) {
-                if (line.length() == 0 || line.charAt(0) == '#') {
-                    continue;
-                }
-                if (!line.startsWith("http://") && !line.startsWith("https://")) {
-                    return null;
-                }
-                int ifirst = line.indexOf('/', 9);//skip http:// or https://
-                if (ifirst <= 0) {
-                    continue;
-                }
-                String preUrl = line.substring(0, ifirst);
-                Integer cnt = preUrlMap.get(preUrl);
-                if (cnt != null) {
-                    preUrlMap.put(preUrl, cnt + 1);
-                } else {
-                    preUrlMap.put(preUrl, 1);
-                }
-            }
-            if (preUrlMap.size() <= 1) return null;
-            if (maxPercent(preUrlMap) < 0.8) {
+            if (!playlist.allHttp) return null;
+            if (playlist.hostCounts.size() <= 1) return null;
+            if (maxPercent(playlist.hostCounts) < 0.8) {
                 return null; //视频非广告片断占比不够大
             }
+            keep = maxTimesKey(playlist.hostCounts);
+        } else {
+            keep = maxTimesKey(playlist.prefixCounts);
         }
-        int maxTimes = 0;
-        String maxTimesPreUrl = "";
-        for (Map.Entry<String, Integer> entry : preUrlMap.entrySet()) {
-            if (entry.getValue() > maxTimes) {
-                maxTimesPreUrl = entry.getKey();
-                maxTimes = entry.getValue();
-            }
-        }
-        if (maxTimes == 0) return null;
+        if (keep == null) return null;
 
-        boolean dealedExtXKey = false;
-        for (int i = 0; i < lines.length; ++i) {
-            if (!dealedExtXKey && lines[i].startsWith("#EXT-X-KEY")) {
-                String keyUrl = "";
-                int start = lines[i].indexOf("URI=\"");
-                if (start != -1) {
-                    start += "URI=\"".length();
-                    int end = lines[i].indexOf("\"", start);
-                    if (end != -1) {
-                        keyUrl = lines[i].substring(start, end);
-                    }
-                    if (!keyUrl.startsWith("http://") && !keyUrl.startsWith("https://")) {
-                        String newKeyUrl;
-                        if (keyUrl.charAt(0) == '/') {
-                            int ifirst = tsUrlPre.indexOf('/', 9);//skip https://, http://
-                            newKeyUrl = tsUrlPre.substring(0, ifirst) + keyUrl;
-                        } else
-                            newKeyUrl = tsUrlPre + keyUrl;
-                        lines[i] = lines[i].replace("URI=\"" + keyUrl + "\"", "URI=\"" + newKeyUrl + "\"");
-                    }
-                    dealedExtXKey = true;
-                }
+        String text = playlist.text;
+        int count = playlist.count;
+        boolean[] drop = new boolean[count];
+        int keyLine = -1;
+        for (int i = 0; i < count; ++i) {
+            int s = playlist.start[i], e = playlist.end[i];
+            if (keyLine < 0 && text.startsWith(TAG_KEY, s) && indexOf(text, ATTR_URI, s, e) >= 0) {
+                keyLine = i;
             }
-            if (lines[i].length() == 0 || lines[i].charAt(0) == '#') {
-                continue;
-            }
-            if (lines[i].startsWith(maxTimesPreUrl)) {
-                if (!lines[i].startsWith("http://") && !lines[i].startsWith("https://")) {
-                    if (lines[i].charAt(0) == '/') {
-                        int ifirst = tsUrlPre.indexOf('/', 9);//skip https://, http://
-                        lines[i] = tsUrlPre.substring(0, ifirst) + lines[i];
-                    } else
-                        lines[i] = tsUrlPre + lines[i];
+            if (playlist.kind[i] != Playlist.URI) continue;
+            if (!keep.isPrefixOf(text, s, e)) {
+                if (i > 0 && playlist.kind[i - 1] == Playlist.TAG) {
+                    drop[i - 1] = true;
                 }
+                drop[i] = true;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(text.length() + 256);
+        String linesplit = playlist.crlf ? "\r\n" : "\n";
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) sb.append(linesplit);
+            if (drop[i]) continue;
+            int s = playlist.start[i], e = playlist.end[i];
+            if (i == keyLine) {
+                int us = indexOf(text, ATTR_URI, s, e) + ATTR_URI.length();
+                int ue = text.indexOf('"', us);
+                if (ue < 0 || ue > e) ue = e;
+                sb.append(text, s, us);
+                appendAbsolute(sb, tsUrlPre, text, us, ue);
+                sb.append(text, ue, e);
+            } else if (playlist.kind[i] == Playlist.URI) {
+                appendAbsolute(sb, tsUrlPre, text, s, e);
             } else {
-                if (i > 0 && lines[i - 1].length() > 0 && lines[i - 1].charAt(0) == '#') {
-                    lines[i - 1] = "";
-                }
-                lines[i] = "";
+                sb.append(text, s, e);
             }
         }
 //        ToastHelper.showToast(App.getInstance(), "已移除视频广告");
-        return String.join(linesplit, lines);
+        return sb.toString();
+    }
+
+    private static void appendAbsolute(StringBuilder sb, String tsUrlPre, String text, int s, int e) {
+        if (s == e || text.startsWith("http://", s) || text.startsWith("https://", s)) {
+            sb.append(text, s, e);
+        } else if (text.charAt(s) == '/') {
+            int ifirst = tsUrlPre.indexOf('/', 9);//skip https://, http://
+            sb.append(tsUrlPre, 0, ifirst < 0 ? tsUrlPre.length() : ifirst).append(text, s, e);
+        } else {
+            sb.append(tsUrlPre).append(text, s, e);
+        }
     }
 
-    private static String get(String tsUrlPre, String m3u8Content) {
-        m3u8Content = m3u8Content.replaceAll("\r\n", "\n");
-        StringBuilder sb = new StringBuilder();
-        for (String line : m3u8Content.split("\n")) sb.append(shouldResolve(line) ? resolve(tsUrlPre, line) : line).append("\n");
+    private static String get(String tsUrlPre, Playlist playlist) {
         List<String> ads = getRegex(tsUrlPre);
         if (ads == null || ads.isEmpty()) return null;
-        return clean(sb.toString(), ads);
+        List<String> regexAds = new ArrayList<>();
+        List<String> durationAds = new ArrayList<>();
+        for (String ad : ads) {
+            if (ad.contains(TAG_DISCONTINUITY) || ad.contains(TAG_MEDIA_DURATION)) regexAds.add(ad);
+            else if (isDouble(ad)) durationAds.add(ad);
+        }
+        if (regexAds.isEmpty()) {
+            return write(tsUrlPre, playlist, true, scan(playlist, durationAds));
+        }
+        //规则是任意正则, 可能跨行, 只能在完整文本上替换, 替换后再按时长扫描一次
+        String content = write(tsUrlPre, playlist, true, null);
+        for (String ad : regexAds) content = content.replaceAll(ad, "");
+        if (durationAds.isEmpty()) return content;
+        Playlist cleaned = new Playlist(content);
+        return write(tsUrlPre, cleaned, false, scan(cleaned, durationAds));
     }
 
     private static List<String> getRegex(String tsUrlPre) {
@@ -181,25 +163,82 @@ public class M3U8 {
         return list;
     }
 
-    private static String clean(String line, List<String> ads) {
-        boolean scan = false;
-        for (String ad : ads) {
-            if (ad.contains(TAG_DISCONTINUITY) || ad.contains(TAG_MEDIA_DURATION)) line = line.replaceAll(ad, "");
-            else if (isDouble(ad)) scan = true;
+    /**
+     * 按 #EXT-X-DISCONTINUITY 分组, 组内总时长以规则开头的整组去掉(保留 #EXT-X-ENDLIST)
+     */
+    private static boolean[] scan(Playlist playlist, List<String> ads) {
+        if (ads.isEmpty()) return null;
+        String text = playlist.text;
+        int count = playlist.count;
+        boolean[] drop = null;
+        int groupStart = -1;
+        long micros = 0;
+        int scale = 0;
+        for (int i = 0; i <= count; ++i) {
+            boolean boundary = i == count || text.startsWith(TAG_DISCONTINUITY, playlist.start[i]);
+            if (boundary && groupStart >= 0) {
+                String total = formatDuration(micros, scale);
+                for (String ad : ads) {
+                    if (!total.startsWith(ad)) continue;
+                    if (drop == null) drop = new boolean[count];
+                    for (int j = groupStart; j < i; ++j) {
+                        if (!text.startsWith(TAG_ENDLIST, playlist.start[j])) drop[j] = true;
+                    }
+                    break;
+                }
+            }
+            if (i == count) break;
+            if (boundary) {
+                groupStart = i;
+                micros = 0;
+                scale = 0;
+            }
+            if (playlist.scale[i] >= 0) {
+                micros += playlist.duration[i];
+                scale = Math.max(scale, playlist.scale[i]);
+            }
+        }
+        return drop;
+    }
+
+    //与 BigDecimal 累加后的 toString 保持一致, 小数位数取各分片的最大值
+    private static String formatDuration(long micros, int scale) {
+        StringBuilder sb = new StringBuilder(16).append(micros / 1000000);
+        if (scale > 0) {
+            String fraction = String.valueOf(1000000 + micros % 1000000);
+            sb.append('.').append(fraction, 1, 1 + scale);
         }
-        return scan ? scan(line, ads) : line;
+        return sb.toString();
     }
 
-    private static String scan(String line, List<String> ads) {
-        Matcher m1 = REGEX_X_DISCONTINUITY.matcher(line);
-        while (m1.find()) {
-            String group = m1.group();
-            BigDecimal t = BigDecimal.ZERO;
-            Matcher m2 = REGEX_MEDIA_DURATION.matcher(group);
-            while (m2.find()) t = t.add(new BigDecimal(m2.group(1)));
-            for (String ad : ads) if (t.toString().startsWith(ad)) line = line.replace(group.replace(TAG_ENDLIST, ""), "");
+    private static String write(String tsUrlPre, Playlist playlist, boolean resolve, boolean[] drop) {
+        String text = playlist.text;
+        StringBuilder sb = new StringBuilder(text.length() + 256);
+        for (int i = 0; i < playlist.count; ++i) {
+            if (drop != null && drop[i]) continue;
+            int s = playlist.start[i], e = playlist.end[i];
+            if (resolve && playlist.kind[i] == Playlist.URI && !text.startsWith("http", s)) {
+                sb.append(UriUtil.resolve(tsUrlPre, text.substring(s, e)));
+            } else if (resolve && text.startsWith(TAG_KEY, s)) {
+                int us = indexOf(text, ATTR_URI, s, e);
+                int ue = us < 0 ? -1 : text.indexOf('"', us + ATTR_URI.length());
+                if (ue < 0 || ue > e) {
+                    sb.append(text, s, e);
+                } else {
+                    us += ATTR_URI.length();
+                    sb.append(text, s, us).append(UriUtil.resolve(tsUrlPre, text.substring(us, ue))).append(text, ue, e);
+                }
+            } else {
+                sb.append(text, s, e);
+            }
+            sb.append('\n');
         }
-        return line;
+        return sb.toString();
+    }
+
+    private static int indexOf(String text, String str, int s, int e) {
+        int index = text.indexOf(str, s);
+        return index < 0 || index + str.length() > e ? -1 : index;
     }
 
     private static boolean isDouble(String ad) {
@@ -210,17 +249,156 @@ public class M3U8 {
         }
     }
 
-    private static boolean shouldResolve(String line) {
-        return (!line.startsWith("#") && !line.startsWith("http")) || line.startsWith(TAG_KEY);
+    /**
+     * 一次扫描建立的播放列表模型, 只记录每行在原文中的位置,
+     * 同时统计分片前缀与域名, 以及 #EXTINF 时长(微秒)
+     */
+    private static final class Playlist {
+        static final byte BLANK = 0;
+        static final byte TAG = 1;
+        static final byte URI = 2;
+
+        final String text;
+        final boolean crlf;
+        final HashMap<Region, int[]> prefixCounts = new HashMap<>();
+        final HashMap<Region, int[]> hostCounts = new HashMap<>();
+        boolean allHttp = true;
+        int count;
+        int[] start;
+        int[] end;
+        byte[] kind;
+        long[] duration;
+        //#EXTINF 时长的小数位数, -1 表示不是 #EXTINF
+        byte[] scale;
+
+        private final Region probe = new Region();
+
+        Playlist(String text) {
+            this.text = text;
+            this.crlf = text.contains("\r\n");
+            int capacity = text.length() / 48 + 16;
+            start = new int[capacity];
+            end = new int[capacity];
+            kind = new byte[capacity];
+            duration = new long[capacity];
+            scale = new byte[capacity];
+            int pos = 0, length = text.length();
+            while (pos < length) {
+                int nl = text.indexOf('\n', pos);
+                int e = nl < 0 ? length : nl;
+                if (crlf && e > pos && text.charAt(e - 1) == '\r') e--;
+                add(pos, e);
+                pos = nl < 0 ? length : nl + 1;
+            }
+            //同 String.split, 去掉末尾的空行
+            while (count > 0 && kind[count - 1] == BLANK) count--;
+        }
+
+        private void add(int s, int e) {
+            if (count == start.length) {
+                int capacity = count * 2;
+                start = Arrays.copyOf(start, capacity);
+                end = Arrays.copyOf(end, capacity);
+                kind = Arrays.copyOf(kind, capacity);
+                duration = Arrays.copyOf(duration, capacity);
+                scale = Arrays.copyOf(scale, capacity);
+            }
+            int i = count++;
+            start[i] = s;
+            end[i] = e;
+            scale[i] = -1;
+            if (s == e) {
+                kind[i] = BLANK;
+            } else if (text.charAt(s) == '#') {
+                kind[i] = TAG;
+                if (text.startsWith(TAG_MEDIA_DURATION, s)) parseDuration(i, s + TAG_MEDIA_DURATION.length(), e);
+            } else {
+                kind[i] = URI;
+                countUri(s, e);
+            }
+        }
+
+        private void parseDuration(int i, int p, int e) {
+            if (p >= e || text.charAt(p) != ':') return;
+            p++;
+            long seconds = 0, fraction = 0;
+            int digits = 0, fractionDigits = 0;
+            while (p < e && Character.isDigit(text.charAt(p))) {
+                seconds = seconds * 10 + (text.charAt(p++) - '0');
+                digits++;
+            }
+            if (p < e && text.charAt(p) == '.') {
+                p++;
+                while (p < e && Character.isDigit(text.charAt(p))) {
+                    if (fractionDigits < 6) {
+                        fraction = fraction * 10 + (text.charAt(p) - '0');
+                        fractionDigits++;
+                    }
+                    p++;
+                }
+            }
+            if (digits == 0 && fractionDigits == 0) return;
+            for (int d = fractionDigits; d < 6; d++) fraction *= 10;
+            duration[i] = seconds * 1000000 + fraction;
+            scale[i] = (byte) fractionDigits;
+        }
+
+        private void countUri(int s, int e) {
+            int ilast = e - 1;
+            while (ilast >= s && text.charAt(ilast) != '.') ilast--;
+            if (ilast - s > 4) count(prefixCounts, s, ilast - 4);
+            if (!text.startsWith("http://", s) && !text.startsWith("https://", s)) {
+                allHttp = false;
+                return;
+            }
+            int ifirst = text.indexOf('/', s + 9);//skip http:// or https://
+            if (ifirst > 0 && ifirst < e) count(hostCounts, s, ifirst);
+        }
+
+        private void count(HashMap<Region, int[]> counts, int s, int e) {
+            int[] times = counts.get(probe.set(text, s, e));
+            if (times != null) {
+                times[0]++;
+            } else {
+                counts.put(new Region().set(text, s, e), new int[]{1});
+            }
+        }
     }
 
-    private static String resolve(String base, String line) {
-        if (line.startsWith(TAG_KEY)) {
-            Matcher matcher = REGEX_URI.matcher(line);
-            String value = matcher.find() ? matcher.group(1) : null;
-            return value == null ? line : line.replace(value, UriUtil.resolve(base, value));
-        } else {
-            return UriUtil.resolve(base, line);
+    /**
+     * 原文中的一段字符, 用作 HashMap 的 key 时不必 substring
+     */
+    private static final class Region {
+        String text;
+        int start;
+        int end;
+        int hash;
+
+        Region set(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = start; i < end; i++) h = 31 * h + text.charAt(i);
+            this.hash = h;
+            return this;
+        }
+
+        boolean isPrefixOf(String other, int s, int e) {
+            int length = end - start;
+            return e - s >= length && other.regionMatches(s, text, start, length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Region)) return false;
+            Region r = (Region) o;
+            return r.hash == hash && r.end - r.start == end - start && text.regionMatches(start, r.text, r.start, end - start);
         }
     }
 }
@@ -56,7 +56,7 @@ public class MD5 {
         return encode(strTemp);
     }
 
-    private static String encode(byte[] bytes) {
+    private static synchronized String encode(byte[] bytes) {
         try {
             sDigest.update(bytes);
             byte[] md = sDigest.digest();
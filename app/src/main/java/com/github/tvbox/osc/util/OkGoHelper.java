@@ -7,11 +7,12 @@ import static okhttp3.ConnectionSpec.RESTRICTED_TLS;
 
 import android.app.Application;
 
+import com.github.catvod.net.AddressRanker;
+import com.github.catvod.net.ClientRegistry;
 import com.github.catvod.net.SSLCompat;
 import com.github.tvbox.osc.base.App;
 
 import com.lzy.okgo.OkGo;
-import com.lzy.okgo.https.HttpsUtils;
 import com.lzy.okgo.interceptor.HttpLoggingInterceptor;
 import com.lzy.okgo.model.HttpHeaders;
 import com.orhanobut.hawk.Hawk;
@@ -58,7 +59,7 @@ public class OkGoHelper {
     }};
 
     static void initExoOkHttpClient() {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        OkHttpClient.Builder builder = ClientRegistry.newBuilder();
         HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor("OkExoPlayer");
 
         if (Hawk.get(HawkConfig.DEBUG_OPEN, false)) {
@@ -80,7 +81,8 @@ public class OkGoHelper {
         } catch (Throwable th) {
             th.printStackTrace();
         }
-        builder.dns(dnsOverHttps);
+        builder.dns(ClientRegistry.DNS);
+        builder.eventListenerFactory(AddressRanker.LISTENER);
 
         ExoMediaSourceHelper.getInstance(App.getInstance()).setOkClient(builder.build());
     }
@@ -127,7 +129,7 @@ public class OkGoHelper {
         dnsHttpsList.add("Google");
         dnsHttpsList.add("AdGuard");
         dnsHttpsList.add("Quad9");
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        OkHttpClient.Builder builder = ClientRegistry.newDohBuilder();
         HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor("OkExoPlayer");
         if (Hawk.get(HawkConfig.DEBUG_OPEN, false)) {
             loggingInterceptor.setPrintLevel(HttpLoggingInterceptor.Level.BODY);
@@ -166,7 +168,7 @@ public class OkGoHelper {
 
         initDnsOverHttps();
 
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        OkHttpClient.Builder builder = ClientRegistry.newBuilder();
         HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor("OkGo");
 
         if (Hawk.get(HawkConfig.DEBUG_OPEN, false)) {
@@ -183,7 +185,8 @@ public class OkGoHelper {
                 .readTimeout(DEFAULT_MILLISECONDS, TimeUnit.MILLISECONDS)
                 .writeTimeout(DEFAULT_MILLISECONDS, TimeUnit.MILLISECONDS)
                 .connectTimeout(DEFAULT_MILLISECONDS, TimeUnit.MILLISECONDS)
-                .dns(dnsOverHttps);
+                .dns(ClientRegistry.DNS)
+                .eventListenerFactory(AddressRanker.LISTENER);
         try {
             setOkHttpSsl(builder);
         } catch (Throwable th) {
@@ -204,9 +207,9 @@ public class OkGoHelper {
 
     private static synchronized void setOkHttpSsl(OkHttpClient.Builder builder) {
         try {
-            final SSLSocketFactory sslSocketFactory = new SSLCompat();
-            builder.sslSocketFactory(sslSocketFactory, SSLCompat.TM);
-            builder.hostnameVerifier(HttpsUtils.UnSafeHostnameVerifier);
+            // 与其他客户端用同一个实例, 连接池才能复用连接
+            builder.sslSocketFactory(ClientRegistry.SSL, SSLCompat.TM);
+            builder.hostnameVerifier(SSLCompat.VERIFIER);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,570 @@
+package com.github.tvbox.osc.util;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.github.catvod.crawler.Spider;
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.cache.SearchCache;
+import com.github.tvbox.osc.event.RefreshEvent;
+import com.github.tvbox.osc.util.js.JsSpider;
+import com.lzy.okgo.OkGo;
+import com.orhanobut.hawk.Hawk;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 聚合搜索调度器, 所有搜索页共用。
+ * 按来源的历史命中率和耗时排优先级, 每个来源有独立的截止时间,
+ * 并发数随超时情况自适应, 慢来源只能占用少量名额; 结果按到达顺序通过 EventBus 投递。
+ * 命中 SearchCache 的来源直接投递缓存结果, 缓存已过有效期的在后台重新搜索刷新。
+ */
+public class SearchScheduler {
+    private static final int MIN_LIMIT = 3;
+    private static final int MAX_LIMIT = 8;
+    private static final int INIT_LIMIT = 5;
+    // 线程数上限, 比 MAX_LIMIT 多留几个给不响应中断、超时后还占着线程的来源
+    private static final int MAX_THREADS = MAX_LIMIT + 4;
+    private static final int QUEUE_SIZE = 64;
+    // 低于该耗时视为快速返回, 并发 +1
+    private static final long FAST_MS = 1500;
+    // 平均耗时高于该值的来源走慢通道
+    private static final long SLOW_MS = 4000;
+    private static final long DEFAULT_DEADLINE = 10000;
+    private static final long MIN_DEADLINE = 4000;
+    private static final long MAX_DEADLINE = 15000;
+    // 未知来源的假定耗时
+    private static final long UNKNOWN_LATENCY = 2000;
+    private static final float ALPHA = 0.3f;
+    // 次数超过该值时减半, 让统计偏向最近的表现
+    private static final int DECAY_RUNS = 64;
+
+    public interface Searcher {
+        AbsXml search(String sourceKey, String wd, boolean quick, Task task) throws Throwable;
+    }
+
+    private static volatile SearchScheduler instance;
+
+    public static SearchScheduler get() {
+        if (instance == null) {
+            synchronized (SearchScheduler.class) {
+                if (instance == null) instance = new SearchScheduler();
+            }
+        }
+        return instance;
+    }
+
+    private final ExecutorService workers;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private final PriorityQueue<Task> pending = new PriorityQueue<>();
+    private final HashSet<Task> running = new HashSet<>();
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+    private int limit = INIT_LIMIT;
+    private int slowRunning = 0;
+    private int sessionSeq = 0;
+    private int taskSeq = 0;
+
+    private SearchScheduler() {
+        AtomicInteger count = new AtomicInteger();
+        // 实际并发由 limit 控制; 线程池有上限, 卡死的来源占满线程时后面的任务排队, 队列也满时按无结果结束
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, "search-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        workers = executor;
+        watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "search-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+        loadStats();
+    }
+
+    public Session submit(List<String> sourceKeys, String wd, boolean quick, Searcher searcher) {
+        Session session;
+        synchronized (this) {
+            session = new Session(++sessionSeq, wd, quick, searcher);
+            session.remaining = sourceKeys.size();
+        }
+        // 查缓存可能读数据库, 放到工作线程
+        List<String> keys = new ArrayList<>(sourceKeys);
+        try {
+            workers.execute(() -> prepare(session, keys));
+        } catch (RejectedExecutionException e) {
+            watchdog.execute(() -> prepare(session, keys));
+        }
+        return session;
+    }
+
+    private void prepare(Session session, List<String> keys) {
+        List<AbsXml> cached = new ArrayList<>();
+        List<String> missed = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        for (String key : keys) {
+            SearchCache.Entry entry = null;
+            try {
+                entry = SearchCache.get(key, session.wd, session.quick);
+            } catch (Throwable th) {
+                th.printStackTrace();
+            }
+            if (entry == null) {
+                missed.add(key);
+            } else {
+                cached.add(entry.data);
+                if (SearchCache.isStale(key, entry)) stale.add(key);
+            }
+        }
+        boolean last;
+        synchronized (this) {
+            if (session.cancelled) return;
+            for (String key : missed) enqueue(session, newTask(session, key, false));
+            for (String key : stale) enqueue(session, newTask(session, key, true));
+            session.remaining -= cached.size();
+            last = session.remaining == 0 && !cached.isEmpty();
+        }
+        for (AbsXml data : cached) post(session, data);
+        if (last) onFinished(session);
+        dispatch();
+    }
+
+    private void enqueue(Session session, Task task) {
+        session.tasks.add(task);
+        if (session.paused) {
+            session.parked.add(task);
+        } else {
+            pending.add(task);
+        }
+    }
+
+    private void post(Session session, AbsXml data) {
+        if (session.cancelled) return;
+        EventBus.getDefault().post(new RefreshEvent(session.quick ? RefreshEvent.TYPE_QUICK_SEARCH_RESULT : RefreshEvent.TYPE_SEARCH_RESULT, data));
+    }
+
+    private void onFinished(Session session) {
+        LOG.i("search " + session.wd + " 完成, 耗时 " + (SystemClock.elapsedRealtime() - session.startAt) + "ms, 并发 " + getConcurrency());
+        saveStats();
+    }
+
+    /**
+     * 各来源的耗时和命中率快照
+     */
+    public Map<String, Stats> getMetrics() {
+        HashMap<String, Stats> metrics = new HashMap<>();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().copy());
+        }
+        return metrics;
+    }
+
+    public synchronized int getConcurrency() {
+        return limit;
+    }
+
+    private Task newTask(Session session, String key, boolean revalidate) {
+        Stats s = stats.get(key);
+        return new Task(session, key, ++taskSeq, score(s), deadline(s), s != null && s.latency > SLOW_MS, revalidate);
+    }
+
+    private static float score(Stats s) {
+        if (s == null) return 0.5f * 1000 / (1000 + UNKNOWN_LATENCY);
+        return s.getHitRate() * 1000 / (1000 + s.latency);
+    }
+
+    private static long deadline(Stats s) {
+        if (s == null || s.runs == 0) return DEFAULT_DEADLINE;
+        return Math.max(MIN_DEADLINE, Math.min(MAX_DEADLINE, s.latency * 3 + 1000));
+    }
+
+    private void dispatch() {
+        List<Task> launch = new ArrayList<>();
+        synchronized (this) {
+            List<Task> deferred = null;
+            int slowLimit = Math.max(1, limit / 3);
+            while (running.size() < limit && !pending.isEmpty()) {
+                Task task = pending.poll();
+                if (task.slow && slowRunning >= slowLimit) {
+                    if (deferred == null) deferred = new ArrayList<>();
+                    deferred.add(task);
+                    continue;
+                }
+                running.add(task);
+                if (task.slow) slowRunning++;
+                launch.add(task);
+            }
+            if (deferred != null) pending.addAll(deferred);
+        }
+        for (Task task : launch) {
+            if (!task.start()) reject(task);
+        }
+    }
+
+    /**
+     * 线程池队列已满, 来源没有执行: 按无结果结束, 不计入来源统计, 也不调整并发数
+     */
+    private void reject(Task task) {
+        if (!task.complete()) return;
+        LOG.e("search " + task.key + " rejected");
+        Session session = task.session;
+        boolean last = false;
+        synchronized (this) {
+            release(task);
+            if (!task.revalidate) last = --session.remaining == 0;
+        }
+        if (!task.revalidate) post(session, null);
+        if (last) onFinished(session);
+    }
+
+    private synchronized boolean release(Task task) {
+        if (!running.remove(task)) return false;
+        if (task.slow) slowRunning--;
+        return true;
+    }
+
+    private void run(Task task) {
+        AbsXml data = null;
+        try {
+            data = task.session.searcher.search(task.key, task.session.wd, task.session.quick, task);
+        } catch (Throwable th) {
+            if (!task.done.get()) th.printStackTrace();
+        }
+        if (task.complete()) finish(task, data, false);
+    }
+
+    private void expire(Task task) {
+        if (!task.complete()) return;
+        finish(task, null, true);
+        abort(task);
+    }
+
+    private void finish(Task task, AbsXml data, boolean timeout) {
+        long cost = SystemClock.elapsedRealtime() - task.startAt;
+        task.cancelDeadline();
+        boolean hit = data != null && data.movie != null && data.movie.videoList != null && data.movie.videoList.size() > 0;
+        record(task.key, cost, hit, timeout);
+        Session session = task.session;
+        if (data != null) {
+            try {
+                SearchCache.put(task.key, session.wd, session.quick, data);
+            } catch (Throwable th) {
+                th.printStackTrace();
+            }
+        }
+        boolean last = false;
+        synchronized (this) {
+            release(task);
+            if (timeout) {
+                limit = Math.max(MIN_LIMIT, limit * 2 / 3);
+            } else if (cost < FAST_MS) {
+                limit = Math.min(MAX_LIMIT, limit + 1);
+            }
+            if (!task.revalidate) last = --session.remaining == 0;
+        }
+        // 后台刷新缓存的结果不再投递, 界面已展示过缓存
+        if (!task.revalidate) post(session, data);
+        if (last) onFinished(session);
+        dispatch();
+    }
+
+    /**
+     * 中断正在执行的来源: 取消该任务的网络请求, 调用 Spider.cancelByTag 并中断线程
+     */
+    private void abort(Task task) {
+        OkGo.getInstance().cancelTag(task);
+        Spider spider = task.spider;
+        // js 来源共用同一个请求 tag, 还有其他 js 来源在跑时不取消
+        if (spider != null && !(spider instanceof JsSpider && isJsRunning())) {
+            try {
+                spider.cancelByTag();
+            } catch (Throwable th) {
+                th.printStackTrace();
+            }
+        }
+        task.interrupt();
+    }
+
+    private synchronized boolean isJsRunning() {
+        for (Task task : running) {
+            if (task.spider instanceof JsSpider) return true;
+        }
+        return false;
+    }
+
+    private void pause(Session session) {
+        List<Task> aborted = new ArrayList<>();
+        synchronized (this) {
+            if (session.paused || session.cancelled) return;
+            session.paused = true;
+            for (int i = 0; i < session.tasks.size(); i++) {
+                Task task = session.tasks.get(i);
+                if (pending.remove(task)) {
+                    session.parked.add(task);
+                } else if (running.contains(task) && task.complete()) {
+                    // 正在执行的来源中断后重新排队, 恢复时再跑
+                    release(task);
+                    aborted.add(task);
+                    Task retry = newTask(session, task.key, task.revalidate);
+                    session.tasks.set(i, retry);
+                    session.parked.add(retry);
+                }
+            }
+        }
+        for (Task task : aborted) abort(task);
+        dispatch();
+    }
+
+    private void resume(Session session) {
+        synchronized (this) {
+            if (!session.paused || session.cancelled) return;
+            session.paused = false;
+            pending.addAll(session.parked);
+            session.parked.clear();
+        }
+        dispatch();
+    }
+
+    private void cancel(Session session) {
+        List<Task> aborted = new ArrayList<>();
+        synchronized (this) {
+            if (session.cancelled) return;
+            session.cancelled = true;
+            for (Task task : session.tasks) {
+                if (!task.complete()) continue;
+                pending.remove(task);
+                if (release(task)) aborted.add(task);
+            }
+            session.parked.clear();
+        }
+        for (Task task : aborted) abort(task);
+        dispatch();
+    }
+
+    private void record(String key, long cost, boolean hit, boolean timeout) {
+        Stats s = stats.get(key);
+        if (s == null) {
+            s = new Stats();
+            Stats prev = stats.putIfAbsent(key, s);
+            if (prev != null) s = prev;
+        }
+        s.record(cost, hit, timeout);
+    }
+
+    private void loadStats() {
+        try {
+            String saved = Hawk.get(HawkConfig.SEARCH_STATS, "");
+            if (TextUtils.isEmpty(saved)) return;
+            for (String line : saved.split("\n")) {
+                String[] parts = line.split("\t");
+                if (parts.length != 5) continue;
+                Stats s = new Stats();
+                s.runs = Integer.parseInt(parts[1]);
+                s.hits = Integer.parseInt(parts[2]);
+                s.timeouts = Integer.parseInt(parts[3]);
+                s.latency = Long.parseLong(parts[4]);
+                stats.put(parts[0], s);
+            }
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+    }
+
+    private void saveStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue().copy();
+            sb.append(entry.getKey()).append('\t').append(s.runs).append('\t').append(s.hits).append('\t').append(s.timeouts).append('\t').append(s.latency).append('\n');
+        }
+        Hawk.put(HawkConfig.SEARCH_STATS, sb.toString());
+    }
+
+    /**
+     * 单个来源的统计: 搜索次数、有结果次数、超时次数、平均耗时(指数加权)
+     */
+    public static final class Stats {
+        private int runs;
+        private int hits;
+        private int timeouts;
+        private long latency;
+
+        synchronized void record(long cost, boolean hit, boolean timeout) {
+            latency = runs == 0 ? cost : (long) (latency + ALPHA * (cost - latency));
+            runs++;
+            if (hit) hits++;
+            if (timeout) timeouts++;
+            if (runs > DECAY_RUNS) {
+                runs /= 2;
+                hits /= 2;
+                timeouts /= 2;
+            }
+        }
+
+        synchronized Stats copy() {
+            Stats s = new Stats();
+            s.runs = runs;
+            s.hits = hits;
+            s.timeouts = timeouts;
+            s.latency = latency;
+            return s;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getHits() {
+            return hits;
+        }
+
+        public int getTimeouts() {
+            return timeouts;
+        }
+
+        public long getLatency() {
+            return latency;
+        }
+
+        public float getHitRate() {
+            return (hits + 1f) / (runs + 2f);
+        }
+    }
+
+    /**
+     * 一次搜索, 包含多个来源
+     */
+    public final class Session {
+        final int id;
+        final String wd;
+        final boolean quick;
+        final Searcher searcher;
+        final long startAt = SystemClock.elapsedRealtime();
+        final List<Task> tasks = new ArrayList<>();
+        final List<Task> parked = new ArrayList<>();
+        volatile boolean cancelled;
+        boolean paused;
+        int remaining;
+
+        Session(int id, String wd, boolean quick, Searcher searcher) {
+            this.id = id;
+            this.wd = wd;
+            this.quick = quick;
+            this.searcher = searcher;
+        }
+
+        /**
+         * 暂停, 未开始的来源保留, 正在执行的来源中断后重新排队
+         */
+        public void pause() {
+            SearchScheduler.this.pause(this);
+        }
+
+        public void resume() {
+            SearchScheduler.this.resume(this);
+        }
+
+        /**
+         * 取消, 之后不会再投递任何结果
+         */
+        public void cancel() {
+            SearchScheduler.this.cancel(this);
+        }
+    }
+
+    /**
+     * 单个来源的搜索任务, 同时作为 OkGo 请求的 tag
+     */
+    public final class Task implements Comparable<Task> {
+        final Session session;
+        final String key;
+        final int seq;
+        final float score;
+        final long timeout;
+        final boolean slow;
+        // 缓存已展示, 只刷新缓存
+        final boolean revalidate;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        volatile Spider spider;
+        private Future<?> future;
+        private ScheduledFuture<?> deadline;
+        long startAt;
+
+        Task(Session session, String key, int seq, float score, long timeout, boolean slow, boolean revalidate) {
+            this.session = session;
+            this.key = key;
+            this.seq = seq;
+            this.score = score;
+            this.timeout = timeout;
+            this.slow = slow;
+            this.revalidate = revalidate;
+        }
+
+        /**
+         * 记录当前使用的 spider, 取消时调用其 cancelByTag
+         */
+        public void bind(Spider spider) {
+            this.spider = spider;
+        }
+
+        public boolean isCancelled() {
+            return done.get();
+        }
+
+        boolean complete() {
+            return done.compareAndSet(false, true);
+        }
+
+        /**
+         * @return 线程池拒绝时为 false
+         */
+        synchronized boolean start() {
+            if (done.get()) return true;
+            startAt = SystemClock.elapsedRealtime();
+            deadline = watchdog.schedule(() -> expire(this), timeout, TimeUnit.MILLISECONDS);
+            try {
+                future = workers.submit(() -> SearchScheduler.this.run(this));
+                return true;
+            } catch (RejectedExecutionException e) {
+                deadline.cancel(false);
+                return false;
+            }
+        }
+
+        synchronized void cancelDeadline() {
+            if (deadline != null) deadline.cancel(false);
+        }
+
+        synchronized void interrupt() {
+            if (deadline != null) deadline.cancel(false);
+            if (future != null) future.cancel(true);
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            // 新的搜索优先, 刷新缓存的排在后面, 其次是得分高的来源, 最后按提交顺序
+            if (session.id != o.session.id) return o.session.id - session.id;
+            if (revalidate != o.revalidate) return revalidate ? 1 : -1;
+            if (score != o.score) return Float.compare(o.score, score);
+            return seq - o.seq;
+        }
+    }
+}
@@ -3,18 +3,25 @@ package com.github.tvbox.osc.util;
 import android.net.Uri;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class VideoParseRuler {
 
     private static final HashMap<String, ArrayList<ArrayList<String>>> HOSTS_RULE = new HashMap<>();
     private static final HashMap<String, ArrayList<ArrayList<String>>> HOSTS_FILTER = new HashMap<>();
     private static final HashMap<String, ArrayList<String>> HOSTS_REGEX = new HashMap<>();
+    // 规则在添加时编译好, 拦截请求时不再每次 Pattern.compile
+    private static final HashMap<String, List<Pattern[]>> HOSTS_RULE_PATTERN = new HashMap<>();
+    private static final HashMap<String, List<Pattern[]>> HOSTS_FILTER_PATTERN = new HashMap<>();
 
     public static void clearRule() {
         HOSTS_RULE.clear();
         HOSTS_FILTER.clear();
         HOSTS_REGEX.clear();
+        HOSTS_RULE_PATTERN.clear();
+        HOSTS_FILTER_PATTERN.clear();
     }
 
     public static void addHostRule(String host, ArrayList<String> rule) {
@@ -25,6 +32,7 @@ public class VideoParseRuler {
         }
         rules.add(rule);
         HOSTS_RULE.put(host, rules);
+        addPatterns(HOSTS_RULE_PATTERN, host, rule);
     }
 
     public static ArrayList<ArrayList<String>> getHostRules(String host) {
@@ -41,6 +49,7 @@ public class VideoParseRuler {
         }
         filters.add(rule);
         HOSTS_FILTER.put(host, filters);
+        addPatterns(HOSTS_FILTER_PATTERN, host, rule);
     }
 
     public static ArrayList<ArrayList<String>> getHostFilters(String host) {
@@ -62,100 +71,74 @@ public class VideoParseRuler {
         return HOSTS_REGEX;
     }
 
-    public static boolean checkIsVideoForParse(String webUrl, String url) {
+    private static void addPatterns(HashMap<String, List<Pattern[]>> map, String host, ArrayList<String> rule) {
+        List<Pattern[]> list = map.get(host);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(host, list);
+        }
+        if (rule == null || rule.isEmpty()) {
+            list.add(new Pattern[0]);
+            return;
+        }
+        Pattern[] patterns = new Pattern[rule.size()];
         try {
-            boolean isVideo = DefaultConfig.isVideoFormat(url);
-            if (!HOSTS_RULE.isEmpty() && !isVideo && webUrl != null) {
-                Uri uri = Uri.parse(webUrl);
-                if(getHostRules(uri.getHost()) != null){
-                    isVideo = checkVideoForOneHostRules(uri.getHost(), url);
-                }else {
-                    isVideo = checkVideoForOneHostRules("*", url);
-                }
+            for (int i = 0; i < rule.size(); i++) {
+                patterns[i] = Pattern.compile("" + rule.get(i));
             }
-            return isVideo;
-        } catch (Exception e) {
+        } catch (PatternSyntaxException e) {
             e.printStackTrace();
+            patterns = new Pattern[0];
         }
-        return false;
+        list.add(patterns);
     }
 
-    private static boolean checkVideoForOneHostRules(String host, String url) {
-        boolean isVideo = false;
-        ArrayList<ArrayList<String>> hostRules = getHostRules(host);
-        if (hostRules != null && hostRules.size() > 0) {
-            boolean isVideoRuleCheck = false;
-            for(int i=0; i<hostRules.size(); i++) {
-                boolean checkIsVideo = true;
-                if (hostRules.get(i) != null && hostRules.get(i).size() > 0) {
-                    for(int j=0; j<hostRules.get(i).size(); j++) {
-                        Pattern onePattern = Pattern.compile("" + hostRules.get(i).get(j));
-                        if (!onePattern.matcher(url).find()) {
-                            checkIsVideo = false;
-                            break;
-                        }
-                        LOG.i("VIDEO RULE:" + hostRules.get(i).get(j));
-                    }
-                } else {
-                    checkIsVideo = false;
-                }
-                if (checkIsVideo) {
-                    isVideoRuleCheck = true;
-                    break;
-                }
-            }
-            if (isVideoRuleCheck) {
-                isVideo = true;
-            }
+    public static boolean checkIsVideoForParse(String webUrl, String url) {
+        return VideoSniffer.isVideo(webUrl, url);
+    }
+
+    /**
+     * 按解析页面的域名匹配配置里的 rules, 没有该域名的规则时使用 "*"
+     */
+    public static boolean matchHostRules(String webUrl, String url) {
+        try {
+            if (HOSTS_RULE_PATTERN.isEmpty() || webUrl == null) return false;
+            String host = Uri.parse(webUrl).getHost();
+            List<Pattern[]> rules = HOSTS_RULE_PATTERN.get(host);
+            if (rules == null) rules = HOSTS_RULE_PATTERN.get("*");
+            return matchAny(rules, url, "VIDEO RULE:");
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        return isVideo;
+        return false;
     }
 
     public static boolean isFilter(String webUrl, String url) {
         try {
-            boolean isFilter = false;
-            if (!HOSTS_FILTER.isEmpty() && webUrl != null) {
-                Uri uri = Uri.parse(webUrl);
-                if(getHostFilters(uri.getHost()) != null){
-                    isFilter = checkIsFilterForOneHostRules(uri.getHost(), url);
-                }
-            }
-            return isFilter;
+            if (HOSTS_FILTER_PATTERN.isEmpty() || webUrl == null) return false;
+            return matchAny(HOSTS_FILTER_PATTERN.get(Uri.parse(webUrl).getHost()), url, "FILTER RULE:");
         } catch (Exception e) {
             e.printStackTrace();
         }
         return false;
     }
 
-    private static boolean checkIsFilterForOneHostRules(String host, String url) {
-        boolean isFilter = false;
-        ArrayList<ArrayList<String>> hostFilters = getHostFilters(host);
-        if (hostFilters != null && hostFilters.size() > 0) {
-            boolean isFilterRuleCheck = false;
-            for(int i=0; i<hostFilters.size(); i++) {
-                boolean checkIsFilter = true;
-                if (hostFilters.get(i) != null && hostFilters.get(i).size() > 0) {
-                    for(int j=0; j<hostFilters.get(i).size(); j++) {
-                        Pattern onePattern = Pattern.compile("" + hostFilters.get(i).get(j));
-                        if (!onePattern.matcher(url).find()) {
-                            checkIsFilter = false;
-                            break;
-                        }
-                        LOG.i("FILTER RULE:" + hostFilters.get(i).get(j));
-                    }
-                } else {
-                    checkIsFilter = false;
-                }
-                if (checkIsFilter) {
-                    isFilterRuleCheck = true;
+    // 任意一组规则全部匹配即可
+    private static boolean matchAny(List<Pattern[]> rules, String url, String tag) {
+        if (rules == null) return false;
+        for (Pattern[] patterns : rules) {
+            if (patterns.length == 0) continue;
+            boolean match = true;
+            for (Pattern pattern : patterns) {
+                if (!pattern.matcher(url).find()) {
+                    match = false;
                     break;
                 }
+                LOG.i(tag + pattern.pattern());
             }
-            if (isFilterRuleCheck) {
-                isFilter = true;
-            }
+            if (match) return true;
         }
-        return isFilter;
+        return false;
     }
 
 }
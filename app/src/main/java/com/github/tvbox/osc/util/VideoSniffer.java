@@ -0,0 +1,134 @@
+package com.github.tvbox.osc.util;
+
+/**
+ * 嗅探视频地址
+ * <p>
+ * 原来的 snifferMatch 正则大量使用 http((?!http).){20,}? 这样的前瞻循环, 遇到长 url 会反复回溯,
+ * 网页加载时每个子资源请求都要过一遍。这里按首字符查表, 一次扫描完成判断, 结果和原正则一致:
+ * <ul>
+ * <li>扩展名/路径规则(.m3u8 等, /m3u8?pt=m3u8): 最近一个 http 之后, 下一个 http 之前, 且前面至少 20 个字符</li>
+ * <li>域名规则(video/to, ixigua, pstatp, netease): 最近一个 http 之后, 下一个 http 之前</li>
+ * <li>其他路径规则(/player/...play.php?url= 等): 本行第一个 http 之后即可</li>
+ * </ul>
+ * 正则的 . 不匹配换行, 所以遇到换行符时重新开始。
+ * 另外把广告域名(AdBlocker)和配置里的域名规则(VideoParseRuler)统一到这里判断。
+ */
+public final class VideoSniffer {
+
+    // 通配一个字符, 对应原正则里没有转义的 .
+    private static final char ANY = '\0';
+    private static final int MIN_PREFIX = 20;
+
+    private static final String[] EXTS = {"m3u8", "mp4", "flv", "avi", "mkv", "rm", "wmv", "mpg"};
+    private static final String[] EXCLUDES = {".js", ".css", ".jpg", ".png", ".gif", ".ico", "rl=", ".html"};
+
+    private VideoSniffer() {
+    }
+
+    public static boolean isAd(String url) {
+        return AdBlocker.isAd(url);
+    }
+
+    /**
+     * 内置规则 + 解析页面所在域名的规则
+     */
+    public static boolean isVideo(String webUrl, String url) {
+        return isVideoFormat(url) || VideoParseRuler.matchHostRules(webUrl, url);
+    }
+
+    public static boolean isVideoFormat(String url) {
+        if (url == null || url.contains("=http")) return false;
+        if (!scan(url)) return false;
+        for (String exclude : EXCLUDES) {
+            if (url.contains(exclude)) return false;
+        }
+        return true;
+    }
+
+    private static boolean scan(String url) {
+        int len = url.length();
+        int first = -1;      // 本行第一个 http 之后的位置
+        int https = -1;      // 本行第一个 https 之后的位置
+        int last = -1;       // 最近一个 http 之后的位置
+        int lastPoint = 0;   // last 处的码点序号, 正则按码点计数
+        int player = -1;     // first 之后第一个 /player/ 之后的位置
+        int point = 0;
+        for (int i = 0; i < len; i++) {
+            char c = url.charAt(i);
+            if (Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(url.charAt(i - 1))) {
+                continue;
+            }
+            point++;
+            switch (c) {
+                case '\n':
+                case '\r':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    first = https = last = player = -1;
+                    break;
+                case 'h':
+                    if (url.startsWith("http", i)) {
+                        last = i + 4;
+                        lastPoint = point + 3;
+                        if (first < 0) first = last;
+                        if (https < 0 && url.startsWith("https", i)) https = i + 5;
+                    }
+                    break;
+                case '.':
+                    if (last >= 0 && point - 1 - lastPoint >= MIN_PREFIX) {
+                        for (String ext : EXTS) {
+                            if (url.startsWith(ext, i + 1)) return true;
+                        }
+                    }
+                    if (first >= 0 && i >= first && at(url, i, ".php?type=m3u8&")) return true;
+                    if (https >= 0 && i >= https && at(url, i, ".66yk.cn")) return true;
+                    break;
+                case '/':
+                    if (last >= 0 && point - 1 - lastPoint >= MIN_PREFIX && at(url, i, "/m3u8?pt=m3u8")) return true;
+                    if (first >= 0 && i >= first) {
+                        if (at(url, i, "/playlist/m3u8/?vid=")
+                                || at(url, i, "/download" + ANY + "aspx?")
+                                || at(url, i, "/api/up_api" + ANY + "php?")) return true;
+                        if (player < 0 && at(url, i, "/player/")) player = i + 8;
+                    }
+                    break;
+                case 'p':
+                case 'P':
+                    if (player >= 0 && i >= player && at(url, i + 1, "lay.php?url=")) return true;
+                    break;
+                case 'v':
+                    if (last >= 0 && i >= last && at(url, i, "video/to")) return true;
+                    break;
+                case 'd':
+                    if (last >= 0 && i >= last && (at(url, i, "default.ixigua.com/") || at(url, i, "dycdn-tos.pstatp"))) return true;
+                    break;
+                case 'n':
+                    if (last >= 0 && i >= last && at(url, i, "netease.com/file/")) return true;
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean at(String url, int offset, String token) {
+        int len = url.length();
+        for (int i = 0; i < token.length(); i++, offset++) {
+            if (offset >= len) return false;
+            char t = token.charAt(i);
+            char c = url.charAt(offset);
+            if (t != ANY) {
+                if (t != c) return false;
+            } else if (isLineTerminator(c)) {
+                return false;
+            } else if (Character.isHighSurrogate(c) && offset + 1 < len && Character.isLowSurrogate(url.charAt(offset + 1))) {
+                offset++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
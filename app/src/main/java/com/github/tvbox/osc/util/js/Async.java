@@ -36,6 +36,7 @@ public class Async {
         JSObject promise = (JSObject) result;
         JSFunction then = promise.getJSFunction("then");
         if (then != null) then.call(callback);
+        else future.complete(result);
     }
 
     private final JSCallFunction callback = new JSCallFunction() {
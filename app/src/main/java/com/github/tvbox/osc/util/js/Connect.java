@@ -6,7 +6,6 @@ import com.github.catvod.net.OkHttp;
 import com.github.tvbox.osc.util.LOG;
 import com.google.common.net.HttpHeaders;
 import com.lzy.okgo.OkGo;
-import com.whl.quickjs.wrapper.JSArray;
 import com.whl.quickjs.wrapper.JSObject;
 import com.whl.quickjs.wrapper.JSUtils;
 import com.whl.quickjs.wrapper.QuickJSContext;
@@ -41,12 +40,10 @@ public class Connect {
             setHeader(ctx, res, jsHeader);
             jsObject.set("headers", jsHeader);
             if (req.getBuffer() == 0) jsObject.set("content", new String(res.body().bytes(), req.getCharset()));
-            if (req.getBuffer() == 1) {
-                JSArray array = ctx.createJSArray();
-                for (byte aByte : res.body().bytes()) array.push((int) aByte);
-                jsObject.set("content", array);
-            }
+            // 整体传入不再逐字节 push; 1 仍是普通数组, 3 为 Int8Array(取值相同, 可用 .buffer)
+            if (req.getBuffer() == 1) jsObject.set("content", ctx.createByteArray(res.body().bytes()));
             if (req.getBuffer() == 2) jsObject.set("content", Base64.encodeToString(res.body().bytes(), Base64.DEFAULT));
+            if (req.getBuffer() == 3) jsObject.set("content", ctx.createInt8Array(res.body().bytes()));
             return jsObject;
         } catch (Exception e) {
             return error(ctx);
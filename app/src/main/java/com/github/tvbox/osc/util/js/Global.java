@@ -19,8 +19,6 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.net.URLEncoder;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ExecutorService;
 
 import okhttp3.Call;
@@ -30,11 +28,9 @@ import okhttp3.Response;
 public class Global {
     private QuickJSContext runtime;
     public ExecutorService executor;
-    private final Timer timer;
 
     public Global(ExecutorService executor) {
         this.executor = executor;
-        this.timer = new Timer();
     }
 
     @Keep
@@ -100,6 +96,31 @@ public class Global {
         }
     }
 
+    /**
+     * 批量转换标题等字符串数组, 原地修改并返回同一个数组
+     */
+    @Keep
+    @Function
+    public JSArray s2tArray(JSArray array) {
+        try {
+            Trans.s2t(false, array);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return array;
+    }
+
+    @Keep
+    @Function
+    public JSArray t2sArray(JSArray array) {
+        try {
+            Trans.t2s(false, array);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return array;
+    }
+
     @Keep
     @Function
     public String aesX(String mode, boolean encrypt, String input, boolean inBase64, String key, String iv, boolean outBase64) {
@@ -296,11 +317,8 @@ public class Global {
     @Function
     public void setTimeout(JSFunction func, Integer delay) {
         func.hold();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                if (!executor.isShutdown()) executor.submit(() -> {func.call();});
-            }
+        JsWorkers.schedule(() -> {
+            if (!executor.isShutdown()) executor.submit(() -> {func.call();});
         }, delay);
     }
 
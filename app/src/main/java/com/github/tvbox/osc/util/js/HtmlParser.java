@@ -6,26 +6,104 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class HtmlParser {
-    private static String pdfh_html = "";
-    private static String pdfa_html = "";
     private static final Pattern p = Pattern.compile("url\\((.*?)\\)", Pattern.MULTILINE | Pattern.DOTALL);
     private static final Pattern NOADD_INDEX = Pattern.compile(":eq|:lt|:gt|:first|:last|^body$|^#"); // 不自动加eq下标索引
     private static final Pattern URLJOIN_ATTR = Pattern.compile("(url|src|href|-original|-src|-play|-url|style)$", Pattern.MULTILINE | Pattern.CASE_INSENSITIVE); // 需要自动urljoin的属性
     private static final Pattern SPECIAL_URL = Pattern.compile("^(ftp|magnet|thunder|ws):", Pattern.MULTILINE | Pattern.CASE_INSENSITIVE); // 过滤特殊链接,不走urlJoin
-    private static Document pdfh_doc = null;
-    private static Document pdfa_doc = null;
+    // 每个线程各自缓存解析过的文档和规则; JS 调用固定在各自的工作线程上执行, 不需要加锁, 也不会互相覆盖。
+    // 文档占内存多, 每个线程只留少量, 工作线程空闲时由 JsWorkers 调用 clearDocs 释放
+    private static final ThreadLocal<Cache> CACHE = new ThreadLocal<Cache>() {
+        @Override
+        protected Cache initialValue() {
+            return new Cache();
+        }
+    };
+
+    private static final class Cache {
+        final Docs pdfh = new Docs();
+        final Docs pdfa = new Docs();
+        // 海阔规则 -> 拆分后的 jsoup 规则
+        final Map<String, String[]> rules = lru(256);
+        final Map<String, Painfo> infos = lru(256);
+        final Map<String, Evaluator> evaluators = lru(256);
+    }
+
+    private static <V> Map<String, V> lru(final int max) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    /**
+     * 最近解析过的几个文档。JS 传来的字符串每次都是新对象, 先比较引用, 再比较长度和 hash, 都相同才逐字比较
+     */
+    private static final class Docs {
+        private static final int MAX_COUNT = 2;
+        private static final int MAX_CHARS = 2 * 1024 * 1024;
+        private final ArrayList<Doc> docs = new ArrayList<>(MAX_COUNT + 1);
+        private int chars;
+
+        Document get(String html) {
+            for (int i = 0; i < docs.size(); i++) {
+                Doc doc = docs.get(i);
+                if (doc.html == html || (doc.html.length() == html.length() && doc.hash == html.hashCode() && doc.html.equals(html))) {
+                    if (i > 0) docs.add(0, docs.remove(i));
+                    return doc.document;
+                }
+            }
+            Doc doc = new Doc(html, Jsoup.parse(html));
+            docs.add(0, doc);
+            chars += html.length();
+            while (docs.size() > MAX_COUNT || (chars > MAX_CHARS && docs.size() > 1)) {
+                chars -= docs.remove(docs.size() - 1).html.length();
+            }
+            return doc.document;
+        }
+
+        void clear() {
+            docs.clear();
+            chars = 0;
+        }
+    }
+
+    /**
+     * 释放当前线程缓存的文档, 规则缓存体积小, 保留
+     */
+    public static void clearDocs() {
+        Cache cache = CACHE.get();
+        cache.pdfh.clear();
+        cache.pdfa.clear();
+    }
+
+    private static final class Doc {
+        final String html;
+        final int hash;
+        final Document document;
+
+        Doc(String html, Document document) {
+            this.html = html;
+            this.hash = html.hashCode();
+            this.document = document;
+        }
+    }
 
     public static String joinUrl(String parent, String child) {
         if (StringUtils.isEmpty(parent)) {
@@ -52,6 +130,15 @@ public class HtmlParser {
         public List < String > excludes;
     }
 
+    private static Painfo getParseInfo(Cache cache, String nparse) {
+        Painfo painfo = cache.infos.get(nparse);
+        if (painfo == null) {
+            painfo = getParseInfo(nparse);
+            cache.infos.put(nparse, painfo);
+        }
+        return painfo;
+    }
+
     private static Painfo getParseInfo(String nparse) {
         /*
          根据传入的单规则获取 parse规则，索引位置,排除列表  -- 可以用于剔除元素,支持多个，按标签剔除，按id剔除等操作
@@ -164,12 +251,40 @@ public class HtmlParser {
         return parse;
     }
 
-    public static String parseDomForUrl(String html, String rule, String add_url) {
-        if (!pdfh_html.equals(html)) {
-            pdfh_html = html;
-            pdfh_doc = Jsoup.parse(html);
+    private static String[] getRules(Cache cache, String parse, boolean first) {
+        String key = (first ? "1" : "0") + parse;
+        String[] rules = cache.rules.get(key);
+        if (rules == null) {
+            rules = parseHikerToJq(parse, first).split(" ");
+            cache.rules.put(key, rules);
+        }
+        return rules;
+    }
+
+    // 编译过的选择器按规则缓存, 等同于 doc.select(query) / elements.select(query)
+    private static Elements select(Cache cache, Element root, Elements roots, String query) {
+        Evaluator evaluator = cache.evaluators.get(query);
+        if (evaluator == null) {
+            evaluator = QueryParser.parse(query);
+            cache.evaluators.put(query, evaluator);
         }
-        Document doc = pdfh_doc;
+        if (roots == null) return Selector.select(evaluator, root);
+        Elements elements = new Elements();
+        IdentityHashMap<Element, Boolean> seen = new IdentityHashMap<>();
+        for (Element element : roots) {
+            for (Element found : Selector.select(evaluator, element)) {
+                if (seen.put(found, Boolean.TRUE) == null) elements.add(found);
+            }
+        }
+        return elements;
+    }
+
+    public static String parseDomForUrl(String html, String rule, String add_url) {
+        Cache cache = CACHE.get();
+        return parseDomForUrl(cache, cache.pdfh.get(html), rule, add_url);
+    }
+
+    private static String parseDomForUrl(Cache cache, Document doc, String rule, String add_url) {
         if (rule.equals("body&&Text") || rule.equals("Text")) {
             return doc.text();
         } else if (rule.equals("body&&Html") || rule.equals("Html")) {
@@ -183,11 +298,10 @@ public class HtmlParser {
             excludes.remove(rs.length - 1);
             rule = TextUtils.join("&&", excludes);
         }
-        rule = parseHikerToJq(rule, true);
-        String[] parses = rule.split(" ");
+        String[] parses = getRules(cache, rule, true);
         Elements ret = new Elements();
         for (String nparse: parses) {
-            ret = parseOneRule(doc, nparse, ret);
+            ret = parseOneRule(cache, doc, nparse, ret);
             if (ret.isEmpty()) {
                 return "";
             }
@@ -233,16 +347,12 @@ public class HtmlParser {
     }
 
     public static List < String > parseDomForArray(String html, String rule) {
-        if (!pdfa_html.equals(html)) {
-            pdfa_html = html;
-            pdfa_doc = Jsoup.parse(html);
-        }
-        Document doc = pdfa_doc;
-        rule = parseHikerToJq(rule, false);
-        String[] parses = rule.split(" ");
+        Cache cache = CACHE.get();
+        Document doc = cache.pdfa.get(html);
+        String[] parses = getRules(cache, rule, false);
         Elements ret = new Elements();
         for (String pars: parses) {
-            ret = parseOneRule(doc, pars, ret);
+            ret = parseOneRule(cache, doc, pars, ret);
             if (ret.isEmpty()) {
                 return new ArrayList < > ();
             }
@@ -256,12 +366,12 @@ public class HtmlParser {
         return eleHtml;
     }
 
-    private static Elements parseOneRule(Document doc, String nparse, Elements ret) {
-        Painfo painfo = getParseInfo(nparse);
+    private static Elements parseOneRule(Cache cache, Document doc, String nparse, Elements ret) {
+        Painfo painfo = getParseInfo(cache, nparse);
         if (ret.isEmpty()) {
-            ret = doc.select(painfo.nparse_rule);
+            ret = select(cache, doc, null, painfo.nparse_rule);
         } else {
-            ret = ret.select(painfo.nparse_rule);
+            ret = select(cache, null, ret, painfo.nparse_rule);
         }
 
         if (nparse.contains(":eq")) {
@@ -275,7 +385,7 @@ public class HtmlParser {
         if (painfo.excludes != null && !ret.isEmpty()) {
             ret = ret.clone(); //克隆一个, 免得直接remove会影响doc的缓存
             for (int i = 0; i < painfo.excludes.size(); i++) {
-                ret.select(painfo.excludes.get(i))
+                select(cache, null, ret, painfo.excludes.get(i))
                     .remove();
             }
         }
@@ -283,26 +393,23 @@ public class HtmlParser {
     }
 
     public static List < String > parseDomForList(String html, String p1, String list_text, String list_url, String add_url) {
-        if (!pdfa_html.equals(html)) {
-            pdfa_html = html;
-            pdfa_doc = Jsoup.parse(html);
-        }
-        Document doc = pdfa_doc;
-        p1 = parseHikerToJq(p1, false);
-        String[] parses = p1.split(" ");
+        Cache cache = CACHE.get();
+        Document doc = cache.pdfa.get(html);
+        String[] parses = getRules(cache, p1, false);
         Elements ret = new Elements();
         for (String pars: parses) {
-            ret = parseOneRule(doc, pars, ret);
+            ret = parseOneRule(cache, doc, pars, ret);
             if (ret.isEmpty()) {
                 return new ArrayList < > ();
             }
         }
         List < String > new_vod_list = new ArrayList < > ();
         for (int i = 0; i < ret.size(); i++) {
-            String it = ret.get(i)
-                .outerHtml();
-            new_vod_list.add(parseDomForUrl(it, list_text, "")
-                .trim() + '$' + parseDomForUrl(it, list_url, add_url));
+            // 每一项只解析一次, 不放进 pdfh 缓存, 免得把页面文档挤出去
+            Document it = Jsoup.parse(ret.get(i)
+                .outerHtml());
+            new_vod_list.add(parseDomForUrl(cache, it, list_text, "")
+                .trim() + '$' + parseDomForUrl(cache, it, list_url, add_url));
         }
         return new_vod_list;
     }
@@ -0,0 +1,83 @@
+package com.github.tvbox.osc.util.js;
+
+import android.util.LruCache;
+
+import com.github.tvbox.osc.BuildConfig;
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.MD5;
+import com.whl.quickjs.wrapper.QuickJSContext;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * QuickJS 字节码缓存, 内存 LRU + 磁盘两级
+ * <p>
+ * key 为 版本号 + 模块名 + 源码 的 md5: 源码变了自动重新编译, 模块名参与相对路径 import 的解析,
+ * 字节码格式与 QuickJS 版本相关, 升级后旧缓存自然失效。
+ */
+public class JsBytecodeCache {
+    private static final int MEMORY_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_FILES = 256;
+
+    private static final LruCache<String, byte[]> memory = new LruCache<String, byte[]>(MEMORY_SIZE) {
+        @Override
+        protected int sizeOf(String key, byte[] value) {
+            return value.length;
+        }
+    };
+
+    public static byte[] getModule(QuickJSContext ctx, String source, String name) {
+        return get(ctx, source, name, true);
+    }
+
+    public static byte[] getScript(QuickJSContext ctx, String source, String name) {
+        return get(ctx, source, name, false);
+    }
+
+    private static byte[] get(QuickJSContext ctx, String source, String name, boolean module) {
+        String key = MD5.encode(BuildConfig.VERSION_CODE + (module ? ":m:" : ":s:") + name + "\n" + source);
+        byte[] code = memory.get(key);
+        if (code != null) return code;
+        File file = new File(dir(), key);
+        if (file.exists()) {
+            code = FileUtils.readSimple(file);
+            if (code != null && code.length > 0) {
+                file.setLastModified(System.currentTimeMillis());
+                memory.put(key, code);
+                return code;
+            }
+        }
+        code = module ? ctx.compileModule(source, name) : ctx.compile(source, name);
+        if (code != null && code.length > 0) {
+            memory.put(key, code);
+            save(file, code);
+        }
+        return code;
+    }
+
+    private static File dir() {
+        File dir = new File(FileUtils.getCacheDir(), "qjs_bytecode");
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    private static void save(File file, byte[] code) {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        if (FileUtils.writeSimple(code, tmp) && !tmp.renameTo(file)) tmp.delete();
+        trim(file.getParentFile());
+    }
+
+    // 文件数超过上限时删除最久未使用的
+    private static void trim(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_FILES) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - MAX_FILES; i++) files[i].delete();
+    }
+
+    public static void clear() {
+        memory.evictAll();
+        FileUtils.recursiveDelete(dir());
+    }
+}
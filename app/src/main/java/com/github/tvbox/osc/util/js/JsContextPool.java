@@ -0,0 +1,215 @@
+package com.github.tvbox.osc.util.js;
+
+import android.text.TextUtils;
+import android.util.Base64;
+
+import androidx.media3.common.util.UriUtil;
+
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.LOG;
+import com.whl.quickjs.wrapper.JSObject;
+import com.whl.quickjs.wrapper.QuickJSContext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * QuickJS 上下文池
+ * <p>
+ * 预先准备少量上下文(绑定到 JsWorkers 的工作线程, 已注入 Global/local 并执行过 net.js), JsSpider 创建时直接取用;
+ * 模块统一经 {@link JsBytecodeCache} 编译。活跃上下文超过上限时按最近使用时间回收空闲的,
+ * 对应的 JsSpider 下次调用时重新取一个并初始化。
+ */
+public class JsContextPool {
+    private static final int WARM_SIZE = 2;
+    private static final int MAX_ACTIVE = 12;
+
+    public interface Owner {
+        /**
+         * 空闲时释放上下文并返回 true, 正在执行时返回 false
+         */
+        boolean reclaim();
+    }
+
+    public static final class Slot {
+        public final ExecutorService executor;
+        public QuickJSContext ctx;
+        // 由调用方提供源码的模块(例如改写过的 spider), 加载时优先使用
+        private final HashMap<String, String> sources = new HashMap<>();
+
+        private Slot(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        public void putSource(String moduleName, String source) {
+            synchronized (sources) {
+                sources.put(moduleName, source);
+                sources.put(normalize("tv_box_root.js", moduleName), source);
+            }
+        }
+
+        private String takeSource(String moduleName) {
+            synchronized (sources) {
+                String source = sources.remove(moduleName);
+                if (source != null) sources.values().remove(source);
+                return source;
+            }
+        }
+    }
+
+    private static final ArrayDeque<Slot> warm = new ArrayDeque<>();
+    private static final LinkedHashMap<Slot, Owner> active = new LinkedHashMap<>(16, 0.75f, true);
+    private static final ExecutorService warmer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "qjs-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static int warming = 0;
+
+    /**
+     * 提前准备上下文, 配置里有 js 源时调用
+     */
+    public static void prewarm() {
+        refill();
+    }
+
+    public static Slot acquire(Owner owner) throws Exception {
+        Slot slot;
+        synchronized (JsContextPool.class) {
+            slot = warm.poll();
+        }
+        if (slot == null) slot = create();
+        synchronized (JsContextPool.class) {
+            active.put(slot, owner);
+        }
+        refill();
+        return slot;
+    }
+
+    public static void touch(Slot slot) {
+        synchronized (JsContextPool.class) {
+            active.get(slot);
+        }
+    }
+
+    public static void release(Slot slot) {
+        synchronized (JsContextPool.class) {
+            active.remove(slot);
+        }
+        slot.executor.submit(() -> {
+            try {
+                if (slot.ctx != null) slot.ctx.destroy();
+            } catch (Throwable th) {
+                th.printStackTrace();
+            }
+            slot.ctx = null;
+            slot.executor.shutdownNow();
+        });
+    }
+
+    private static void refill() {
+        synchronized (JsContextPool.class) {
+            int need = WARM_SIZE - warm.size() - warming;
+            if (need <= 0) return;
+            warming += need;
+            for (int i = 0; i < need; i++) {
+                warmer.execute(() -> {
+                    Slot slot = null;
+                    try {
+                        slot = create();
+                    } catch (Throwable th) {
+                        th.printStackTrace();
+                    }
+                    synchronized (JsContextPool.class) {
+                        warming--;
+                        if (slot != null) warm.add(slot);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 回收最久未使用且空闲的上下文; 调用方不能持有任何 Owner 的锁, 避免互相等待
+     */
+    public static void trim() {
+        List<Owner> candidates;
+        synchronized (JsContextPool.class) {
+            int over = active.size() - MAX_ACTIVE;
+            if (over <= 0) return;
+            candidates = new ArrayList<>(active.values());
+        }
+        for (Owner owner : candidates) {
+            if (owner.reclaim()) {
+                LOG.i("QuJs", "reclaim idle context");
+                synchronized (JsContextPool.class) {
+                    if (active.size() <= MAX_ACTIVE) return;
+                }
+            }
+        }
+    }
+
+    private static Slot create() throws Exception {
+        ExecutorService executor = JsWorkers.bind();
+        Slot slot = new Slot(executor);
+        try {
+            executor.submit(() -> {
+                slot.ctx = createCtx(slot);
+                return null;
+            }).get();
+        } catch (Exception e) {
+            executor.shutdownNow();
+            throw e;
+        }
+        return slot;
+    }
+
+    private static QuickJSContext createCtx(Slot slot) {
+        QuickJSContext ctx = QuickJSContext.create();
+        ctx.setModuleLoader(new QuickJSContext.BytecodeModuleLoader() {
+            @Override
+            public byte[] getModuleBytecode(String moduleName) {
+                String ss = slot.takeSource(moduleName);
+                if (ss == null) ss = FileUtils.loadModule(moduleName);
+                if (TextUtils.isEmpty(ss)) {return null;}
+                if(ss.startsWith("//DRPY")){
+                    return Base64.decode(ss.replace("//DRPY",""), Base64.URL_SAFE);
+                } else if(ss.startsWith("//bb")){
+                    byte[] b = Base64.decode(ss.replace("//bb",""), 0);
+                    return JsSpider.byteFF(b);
+                } else {
+                    return JsBytecodeCache.getModule(ctx, ss, moduleName);
+                }
+            }
+
+            @Override
+            public String moduleNormalizeName(String moduleBaseName, String moduleName) {
+                return normalize(moduleBaseName, moduleName);
+            }
+        });
+        ctx.setConsole(new QuickJSContext.Console() {
+            @Override
+            public void log(String s) {
+                LOG.i("QuJs", s);
+            }
+        });
+
+        ctx.getGlobalObject().bind(new Global(slot.executor));
+
+        JSObject local = ctx.createJSObject();
+        ctx.getGlobalObject().set("local", local);
+        local.bind(new local());
+
+        ctx.execute(JsBytecodeCache.getScript(ctx, FileUtils.loadModule("net.js"), "net.js"));
+        return ctx;
+    }
+
+    private static String normalize(String moduleBaseName, String moduleName) {
+        return UriUtil.resolve(moduleBaseName, moduleName);
+    }
+}
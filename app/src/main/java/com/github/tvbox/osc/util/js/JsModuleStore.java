@@ -0,0 +1,250 @@
+package com.github.tvbox.osc.util.js;
+
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.util.MD5;
+import com.github.tvbox.osc.util.UA;
+import com.lzy.okgo.OkGo;
+import com.lzy.okgo.model.HttpHeaders;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import okhttp3.Response;
+
+/**
+ * 远程 js 模块的本地存储
+ * <p>
+ * 源码按内容的 sha1 存放原始字节(blobs), 每个 url 一个小的元数据文件(meta)记录内容 hash、ETag、Last-Modified 和获取时间。
+ * 有效期内直接读本地(mmap); 过期后带 If-None-Match / If-Modified-Since 重新验证, 304 只刷新时间,
+ * 网络失败或返回空时继续使用旧内容。代替原来把整个源码包在 JSON 里、每次加载都要重新解析的 qjscache 文件。
+ */
+public class JsModuleStore {
+    private static final long TTL = 7 * 24 * 3600 * 1000L;
+    private static final int MEMORY_CHARS = 4 * 1024 * 1024;
+    private static final int MAX_FILES = 256;
+
+    private static final LruCache<String, String> memory = new LruCache<String, String>(MEMORY_CHARS) {
+        @Override
+        protected int sizeOf(String key, String value) {
+            return value.length();
+        }
+    };
+    // 读写同一个 url 的本地文件时加锁, 只覆盖本地读写, 不包括网络请求
+    private static final Object[] locks = new Object[16];
+    // 同一个 url 同时只有一个线程下载, 其他线程等它的结果
+    private static final ConcurrentHashMap<String, FutureTask<String>> fetching = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+    }
+
+    private static final class Meta {
+        String hash;
+        String etag;
+        String lastModified;
+        long fetched;
+    }
+
+    public static String get(String url) {
+        String key = MD5.encode(url);
+        Meta meta;
+        String source;
+        synchronized (locks[(key.hashCode() & 0x7fffffff) % locks.length]) {
+            meta = readMeta(key);
+            source = meta == null ? null : readBlob(meta.hash);
+            if (source == null) meta = importLegacy(key);
+            if (meta != null && source == null) source = readBlob(meta.hash);
+            if (source == null) meta = null;
+            if (meta != null && System.currentTimeMillis() - meta.fetched < TTL) return source;
+        }
+        String fresh = fetchOnce(url, key, meta);
+        if (fresh != null) return fresh;
+        if (source != null) LOG.i("QuJs", "module revalidate failed, use stale " + url);
+        return source == null ? "" : source;
+    }
+
+    private static String fetchOnce(String url, String key, Meta meta) {
+        FutureTask<String> task = new FutureTask<>(() -> fetch(url, key, meta));
+        FutureTask<String> running = fetching.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                fetching.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 新的源码; 304 时为本地内容; 失败返回 null
+     */
+    private static String fetch(String url, String key, Meta meta) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.put("User-Agent", url.startsWith("https://gitcode.net/") ? UA.random() : "okhttp/3.15");
+            if (meta != null && !TextUtils.isEmpty(meta.etag)) headers.put("If-None-Match", meta.etag);
+            if (meta != null && !TextUtils.isEmpty(meta.lastModified)) headers.put("If-Modified-Since", meta.lastModified);
+            try (Response response = OkGo.<String>get(url).headers(headers).execute()) {
+                if (response.code() == 304 && meta != null) {
+                    meta.fetched = System.currentTimeMillis();
+                    writeMeta(key, meta);
+                    return readBlob(meta.hash);
+                }
+                if (!response.isSuccessful() || response.body() == null) return null;
+                byte[] data = response.body().bytes();
+                if (data.length == 0) return null;
+                Meta fresh = new Meta();
+                fresh.hash = sha1(data);
+                fresh.etag = response.header("ETag");
+                fresh.lastModified = response.header("Last-Modified");
+                fresh.fetched = System.currentTimeMillis();
+                File blob = blob(fresh.hash);
+                if (!blob.exists()) write(blob, data);
+                writeMeta(key, fresh);
+                // 旧版本的缓存文件
+                FileUtils.open(key).delete();
+                String source = new String(data, StandardCharsets.UTF_8);
+                memory.put(fresh.hash, source);
+                return source;
+            }
+        } catch (Exception e) {
+            LOG.e("QuJs", "module fetch " + url + " " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 升级前的 qjscache 文件(JSON 包装, 未过期)转存进来, 避免升级后全部重新下载; 获取时间用原文件的修改时间
+     */
+    private static Meta importLegacy(String key) {
+        long modified = FileUtils.open(key).lastModified();
+        String legacy = FileUtils.getCache(key);
+        if (TextUtils.isEmpty(legacy)) return null;
+        try {
+            byte[] data = legacy.getBytes(StandardCharsets.UTF_8);
+            Meta meta = new Meta();
+            meta.hash = sha1(data);
+            meta.fetched = modified;
+            File blob = blob(meta.hash);
+            if (!blob.exists()) write(blob, data);
+            writeMeta(key, meta);
+            FileUtils.open(key).delete();
+            memory.put(meta.hash, legacy);
+            return meta;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String readBlob(String hash) {
+        if (TextUtils.isEmpty(hash)) return null;
+        String source = memory.get(hash);
+        if (source != null) return source;
+        File file = blob(hash);
+        if (!file.exists() || file.length() == 0) return null;
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            source = StandardCharsets.UTF_8.decode(buffer).toString();
+        } catch (IOException e) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        memory.put(hash, source);
+        return source;
+    }
+
+    private static Meta readMeta(String key) {
+        File file = new File(dir("meta"), key);
+        if (!file.exists()) return null;
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+        Meta meta = new Meta();
+        meta.hash = props.getProperty("hash");
+        meta.etag = props.getProperty("etag");
+        meta.lastModified = props.getProperty("lastModified");
+        try {
+            meta.fetched = Long.parseLong(props.getProperty("fetched", "0"));
+        } catch (NumberFormatException e) {
+            meta.fetched = 0;
+        }
+        return meta;
+    }
+
+    private static void writeMeta(String key, Meta meta) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("hash", meta.hash);
+        if (meta.etag != null) props.setProperty("etag", meta.etag);
+        if (meta.lastModified != null) props.setProperty("lastModified", meta.lastModified);
+        props.setProperty("fetched", String.valueOf(meta.fetched));
+        File file = new File(dir("meta"), key);
+        File tmp = new File(file.getParentFile(), key + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, null);
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+        trim(file.getParentFile());
+    }
+
+    private static void write(File file, byte[] data) {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        if (FileUtils.writeSimple(data, tmp) && !tmp.renameTo(file)) tmp.delete();
+        trim(file.getParentFile());
+    }
+
+    private static File blob(String hash) {
+        return new File(dir("blobs"), hash);
+    }
+
+    private static File dir(String name) {
+        File dir = new File(new File(FileUtils.getCacheDir(), "qjs_module"), name);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    // 文件数超过上限时删除最久未使用的, 被删掉的 blob 下次按未缓存处理
+    private static void trim(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_FILES) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - MAX_FILES; i++) files[i].delete();
+    }
+
+    private static String sha1(byte[] data) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -3,7 +3,6 @@ package com.github.tvbox.osc.util.js;
 import android.content.Context;
 import android.text.TextUtils;
 import android.util.Base64;
-import androidx.media3.common.util.UriUtil;
 import com.github.catvod.crawler.Spider;
 import com.github.tvbox.osc.util.FileUtils;
 import com.github.tvbox.osc.util.LOG;
@@ -18,8 +17,6 @@ import com.whl.quickjs.wrapper.JSObject;
 import com.whl.quickjs.wrapper.JSUtils;
 import com.whl.quickjs.wrapper.QuickJSContext;
 
-import org.json.JSONArray;
-
 import java.io.ByteArrayInputStream;
 import java.lang.reflect.Method;
 import java.util.Arrays;
@@ -27,44 +24,97 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import java9.util.concurrent.CompletableFuture;
 
-public class JsSpider extends Spider {
+public class JsSpider extends Spider implements JsContextPool.Owner {
 
-    private final ExecutorService executor;
     private final Class<?> dex;
+    // 上下文从 JsContextPool 获取, 空闲时可能被回收, 下次调用时重新获取并初始化
+    private JsContextPool.Slot slot;
     private QuickJSContext ctx;
     private JSObject jsObject;
     private final String key;
     private final String api;
     private boolean cat;
+    private String extend;
+    private boolean inited;
+    private int calls;
 
     public JsSpider(String key, String api, Class<?> cls) throws Exception {
         this.key = "J" + MD5.encode(key);
-        this.executor = Executors.newSingleThreadExecutor();
         this.api = api;
         this.dex = cls;
-        initializeJS();
+        enter();
+        exit();
     }
     public void cancelByTag() {
         Connect.cancelByTag("js_okhttp_tag");
     }
 
-    private void submit(Runnable runnable) {
-        executor.submit(runnable);
+    private void enter() throws Exception {
+        // 取到新上下文后再检查回收, 不能在持有本对象锁时进行
+        if (attach()) JsContextPool.trim();
+    }
+
+    private synchronized boolean attach() throws Exception {
+        boolean attached = false;
+        if (slot == null) {
+            slot = JsContextPool.acquire(this);
+            ctx = slot.ctx;
+            try {
+                initializeJS();
+                if (inited) callInit();
+            } catch (Exception e) {
+                JsContextPool.release(slot);
+                slot = null;
+                ctx = null;
+                throw e;
+            }
+            attached = true;
+        }
+        calls++;
+        JsContextPool.touch(slot);
+        return attached;
+    }
+
+    private synchronized void exit() {
+        calls--;
+    }
+
+    @Override
+    public synchronized boolean reclaim() {
+        if (calls > 0 || slot == null) return false;
+        JsContextPool.release(slot);
+        slot = null;
+        ctx = null;
+        jsObject = null;
+        return true;
     }
 
     private <T> Future<T> submit(Callable<T> callable) {
-        return executor.submit(callable);
+        return slot.executor.submit(callable);
     }
 
     private Object call(String func, Object... args) throws Exception {
         //return executor.submit((FunCall.call(jsObject, func, args))).get();
-        return CompletableFuture.supplyAsync(() -> Async.run(jsObject, func, args), executor).join().get();
+        enter();
+        long queued = System.nanoTime();
+        long[] time = new long[2];
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                time[0] = System.nanoTime();
+                try {
+                    return Async.run(jsObject, func, args);
+                } finally {
+                    time[1] = System.nanoTime();
+                }
+            }, slot.executor).join().get();
+        } finally {
+            exit();
+            if (time[1] > 0) JsWorkers.record(api, func, time[0] - queued, time[1] - time[0], System.nanoTime() - queued);
+        }
     }
 
     private JSObject cfg(String ext) {
@@ -78,6 +128,17 @@ public class JsSpider extends Spider {
 
     @Override
     public void init(Context context, String extend) throws Exception {
+        enter();
+        try {
+            this.extend = extend;
+            this.inited = true;
+            callInit();
+        } finally {
+            exit();
+        }
+    }
+
+    private void callInit() throws Exception {
         if (cat) call("init", submit(() -> cfg(extend)).get());
         else call("init", Json.valid(extend) ? ctx.parse(extend) : extend);
     }
@@ -94,8 +155,13 @@ public class JsSpider extends Spider {
 
     @Override
     public String categoryContent(String tid, String pg, boolean filter, HashMap<String, String> extend) throws Exception {
-        JSObject obj = submit(() -> new JSUtils<String>().toObj(ctx, extend)).get();
-        return (String) call("category", tid, pg, filter, obj);
+        enter();
+        try {
+            JSObject obj = submit(() -> new JSUtils<String>().toObj(ctx, extend)).get();
+            return (String) call("category", tid, pg, filter, obj);
+        } finally {
+            exit();
+        }
     }
 
     @Override
@@ -115,8 +181,13 @@ public class JsSpider extends Spider {
 
     @Override
     public String playerContent(String flag, String id, List<String> vipFlags) throws Exception {
-        JSArray array = submit(() -> new JSUtils<String>().toArray(ctx, vipFlags)).get();
-        return (String) call("play", flag, id, array);
+        enter();
+        try {
+            JSArray array = submit(() -> new JSUtils<String>().toArray(ctx, vipFlags)).get();
+            return (String) call("play", flag, id, array);
+        } finally {
+            exit();
+        }
     }
 
     @Override
@@ -131,16 +202,22 @@ public class JsSpider extends Spider {
 
     @Override
     public Object[] proxyLocal(Map<String, String> params) throws Exception {
-        if ("catvod".equals(params.get("from"))) return proxy2(params);
-        else return submit(() -> proxy1(params)).get();
+        enter();
+        try {
+            if ("catvod".equals(params.get("from"))) return proxy2(params);
+            else return submit(() -> proxy1(params)).get();
+        } finally {
+            exit();
+        }
     }
 
     @Override
-    public void destroy() {
-        submit(() -> {
-            executor.shutdownNow();
-            ctx.destroy();
-        });
+    public synchronized void destroy() {
+        if (slot == null) return;
+        JsContextPool.release(slot);
+        slot = null;
+        ctx = null;
+        jsObject = null;
     }
 
     private static final String SPIDER_STRING_CODE = "import * as spider from '%s'\n\n" +
@@ -155,7 +232,6 @@ public class JsSpider extends Spider {
             "}";
     private void initializeJS() throws Exception {
         submit(() -> {
-            if (ctx == null) createCtx();
             if (dex != null) createDex();
 
             String content = FileUtils.loadModule(api);            
@@ -177,7 +253,8 @@ public class JsSpider extends Spider {
                     moduleExtName = "__jsEvalReturn";
                     cat = true;
                 }
-                ctx.evaluateModule(content, api);
+                // 改写后的源码交给模块加载器, import 时编译(走字节码缓存)
+                slot.putSource(api, content);
                 ctx.evaluateModule(String.format(SPIDER_STRING_CODE, api) + "globalThis." + key + " = __JS_SPIDER__;", "tv_box_root.js");
                 //ctx.evaluateModule(content, api, moduleExtName);
                 //ctx.evaluate("globalThis." + key + " = __JS_SPIDER__;");                
@@ -194,49 +271,6 @@ public class JsSpider extends Spider {
         return newBt;
     }
 
-    private void createCtx() {
-        ctx = QuickJSContext.create();
-        ctx.setModuleLoader(new QuickJSContext.BytecodeModuleLoader() {
-            @Override
-            public byte[] getModuleBytecode(String moduleName) {
-                String ss = FileUtils.loadModule(moduleName);
-                if (TextUtils.isEmpty(ss)) {return null;}
-                if(ss.startsWith("//DRPY")){
-                    return Base64.decode(ss.replace("//DRPY",""), Base64.URL_SAFE);
-                } else if(ss.startsWith("//bb")){
-                    byte[] b = Base64.decode(ss.replace("//bb",""), 0);
-                    return byteFF(b);
-                } else {
-                    if (moduleName.contains("cheerio.min.js")) {
-                        FileUtils.setCacheByte("cheerio.min", ctx.compileModule(ss, "cheerio.min.js"));
-                    } else if (moduleName.contains("crypto-js.js")) {
-                        FileUtils.setCacheByte("crypto-js", ctx.compileModule(ss, "crypto-js.js"));
-                    }
-                    return ctx.compileModule(ss, moduleName);
-                }
-            }
-
-            @Override
-            public String moduleNormalizeName(String moduleBaseName, String moduleName) {
-                return UriUtil.resolve(moduleBaseName, moduleName);
-            }
-        });
-        ctx.setConsole(new QuickJSContext.Console() {
-            @Override
-            public void log(String s) {
-                LOG.i("QuJs", s);
-            }
-        });
-
-        ctx.getGlobalObject().bind(new Global(executor));
-
-        JSObject local = ctx.createJSObject();
-        ctx.getGlobalObject().set("local", local);
-        local.bind(new local());
-
-        ctx.getGlobalObject().getContext().evaluate(FileUtils.loadModule("net.js"));
-    }
-
     private void createDex() {
         try {
             JSObject obj = ctx.createJSObject();
@@ -300,22 +334,24 @@ public class JsSpider extends Spider {
 
     private Object[] proxy1(Map<String, String> params) {
         JSObject object = new JSUtils<String>().toObj(ctx, params);
-        JSONArray array = ((JSArray) jsObject.getJSFunction("proxy").call(object)).toJsonArray();
+        JSArray array = (JSArray) jsObject.getJSFunction("proxy").call(object);
+        Object code = array.get(0);
         Object[] result = new Object[3];
-        result[0] = array.opt(0);
-        result[1] = array.opt(1);
-        result[2] = getStream(array.opt(2));
+        result[0] = code instanceof Number ? ((Number) code).intValue() : code;
+        result[1] = array.get(1);
+        result[2] = getStream(array.get(2));
         return result;
     }
 
-    
     private Object[] proxy2(Map<String, String> params) throws Exception {
         String url = params.get("url");
         String header = params.get("header");
         JSArray array = submit(() -> new JSUtils<String>().toArray(ctx, Arrays.asList(url.split("/")))).get();
         Object object = submit(() -> ctx.parse(header)).get();
-        String json = (String) call("proxy", array, object);
-        Res res = Res.objectFrom(json);
+        Object ret = call("proxy", array, object);
+        // 直接返回对象时 content 可以是 ArrayBuffer / TypedArray, 不用经过 base64
+        if (ret instanceof JSObject) return submit(() -> proxy2((JSObject) ret)).get();
+        Res res = Res.objectFrom((String) ret);
         String contentType = res.getContentType();
         if (TextUtils.isEmpty(contentType)) contentType = "application/octet-stream";
         Object[] result = new Object[3];
@@ -329,6 +365,28 @@ public class JsSpider extends Spider {
         return result;
     }
 
+    private Object[] proxy2(JSObject ret) {
+        Object content = ret.get("content");
+        Object buffer = ret.get("buffer");
+        Object headers = ret.get("headers");
+        String contentType = null;
+        if (headers instanceof JSObject) {
+            JSObject h = (JSObject) headers;
+            contentType = h.getString("Content-Type");
+            if (TextUtils.isEmpty(contentType)) contentType = h.getString("content-type");
+        }
+        if (TextUtils.isEmpty(contentType)) contentType = "application/octet-stream";
+        Object[] result = new Object[3];
+        result[0] = 200;
+        result[1] = contentType;
+        if (content instanceof String && buffer instanceof Number && ((Number) buffer).intValue() == 2) {
+            result[2] = new ByteArrayInputStream(Base64.decode((String) content, Base64.DEFAULT));
+        } else {
+            result[2] = getStream(content);
+        }
+        return result;
+    }
+
    /* private Object[] proxy2(Map<String, String> params) throws Exception {
         String url = params.get("url");
         String header = params.get("header");
@@ -344,13 +402,11 @@ public class JsSpider extends Spider {
     }*/
 
     private ByteArrayInputStream getStream(Object o) {
-        if (o instanceof JSONArray) {
-            JSONArray a = (JSONArray) o;
-            byte[] bytes = new byte[a.length()];
-            for (int i = 0; i < a.length(); i++) bytes[i] = (byte) a.optInt(i);
-            return new ByteArrayInputStream(bytes);
+        if (o instanceof JSObject) {
+            byte[] bytes = ctx.getBytes((JSObject) o);
+            return new ByteArrayInputStream(bytes != null ? bytes : ((JSObject) o).stringify().getBytes());
         } else {
-            return new ByteArrayInputStream(o.toString().getBytes());
+            return new ByteArrayInputStream(String.valueOf(o).getBytes());
         }
     }
-}
\ No newline at end of file
+}
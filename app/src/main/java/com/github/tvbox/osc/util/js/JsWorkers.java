@@ -0,0 +1,206 @@
+package com.github.tvbox.osc.util.js;
+
+import com.github.tvbox.osc.util.LOG;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JS 共享工作线程
+ * <p>
+ * QuickJS 上下文只能在创建它的线程上使用, 每个上下文创建时绑定到一个工作线程(取绑定数最少的),
+ * 多个上下文共用少量线程, 同一上下文的调用仍然串行。setTimeout 共用一个定时线程。
+ * 记录每次 spider 调用的排队耗时和执行耗时。
+ */
+public class JsWorkers {
+    private static final int SIZE = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    // 总耗时超过该值的调用打印日志
+    private static final long SLOW_MS = 3000;
+
+    private static final ExecutorService[] workers = new ExecutorService[SIZE];
+    private static final int[] bound = new int[SIZE];
+    // 每个工作线程已提交未执行完的任务数, 降到 0 时线程空闲
+    private static final AtomicInteger[] queued = new AtomicInteger[SIZE];
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "qjs-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < SIZE; i++) {
+            queued[i] = new AtomicInteger();
+            String name = "qjs-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * 为新上下文分配一个工作线程
+     */
+    public static ContextExecutor bind() {
+        synchronized (bound) {
+            int index = 0;
+            for (int i = 1; i < SIZE; i++) {
+                if (bound[i] < bound[index]) index = i;
+            }
+            bound[index]++;
+            return new ContextExecutor(index);
+        }
+    }
+
+    public static void schedule(Runnable runnable, long delay) {
+        timer.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param wait  排队耗时(纳秒), 提交到开始执行
+     * @param exec  在工作线程上的执行耗时(纳秒)
+     * @param total 调用方等待的总耗时(纳秒), 包括 Promise 完成的时间
+     */
+    public static void record(String api, String func, long wait, long exec, long total) {
+        Stats s = stats.get(func);
+        if (s == null) {
+            s = new Stats();
+            Stats prev = stats.putIfAbsent(func, s);
+            if (prev != null) s = prev;
+        }
+        s.record(wait, exec, total);
+        if (TimeUnit.NANOSECONDS.toMillis(total) >= SLOW_MS) {
+            LOG.i("QuJs", func + " " + api + " 排队 " + TimeUnit.NANOSECONDS.toMillis(wait) + "ms, 执行 " + TimeUnit.NANOSECONDS.toMillis(exec) + "ms, 总计 " + TimeUnit.NANOSECONDS.toMillis(total) + "ms");
+        }
+    }
+
+    /**
+     * 按调用的函数名(search/detail/play...)汇总的耗时快照
+     */
+    public static Map<String, Stats> getMetrics() {
+        HashMap<String, Stats> metrics = new HashMap<>();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().copy());
+        }
+        return metrics;
+    }
+
+    public static final class Stats {
+        private int count;
+        private long wait;
+        private long exec;
+        private long total;
+        private long maxWait;
+
+        synchronized void record(long wait, long exec, long total) {
+            count++;
+            this.wait += wait;
+            this.exec += exec;
+            this.total += total;
+            if (wait > maxWait) maxWait = wait;
+        }
+
+        synchronized Stats copy() {
+            Stats s = new Stats();
+            s.count = count;
+            s.wait = wait;
+            s.exec = exec;
+            s.total = total;
+            s.maxWait = maxWait;
+            return s;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getAvgWaitMs() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(wait / count);
+        }
+
+        public long getAvgExecMs() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(exec / count);
+        }
+
+        public long getAvgTotalMs() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(total / count);
+        }
+
+        public long getMaxWaitMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWait);
+        }
+    }
+
+    /**
+     * 绑定到某个工作线程的执行器, 关闭后不再执行该上下文的任务, 不影响同线程的其他上下文
+     */
+    public static final class ContextExecutor extends AbstractExecutorService {
+        private final int index;
+        private volatile boolean shutdown;
+
+        private ContextExecutor(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) throw new RejectedExecutionException("context destroyed");
+            queued[index].incrementAndGet();
+            workers[index].execute(() -> {
+                try {
+                    if (!shutdown) {
+                        command.run();
+                    } else if (command instanceof Future) {
+                        ((Future<?>) command).cancel(false);
+                    }
+                } finally {
+                    // 线程空闲后不再持有解析过的 html 文档
+                    if (queued[index].decrementAndGet() == 0) HtmlParser.clearDocs();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (bound) {
+                if (shutdown) return;
+                shutdown = true;
+                bound[index]--;
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+}
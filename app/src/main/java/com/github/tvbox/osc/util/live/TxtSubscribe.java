@@ -1,157 +1,197 @@
 package com.github.tvbox.osc.util.live;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.github.tvbox.osc.bean.LiveChannelGroup;
+import com.github.tvbox.osc.bean.LiveChannelItem;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.StringReader;
-
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
+/**
+ * 直播订阅解析(txt / m3u), 边读边解析, 直接生成 LiveChannelGroup / LiveChannelItem。
+ * 支持 gzip 压缩的订阅内容。
+ */
 public class TxtSubscribe {
 
-    private static final Pattern NAME_PATTERN = Pattern.compile(".*,(.+?)$");
-    private static final Pattern GROUP_PATTERN = Pattern.compile("group-title=\"(.*?)\"");
+    private static final String UNGROUPED = "未分组";
+    private static final String UNNAMED = "未命名";
+    private static final String GROUP_TITLE = "group-title=\"";
 
-    public static void parse(LinkedHashMap<String, LinkedHashMap<String, ArrayList<String>>> linkedHashMap, String str) {
-        if (str.startsWith("#EXTM3U")) {
-            parseM3u(linkedHashMap, str);
-        } else {
-            parseTxt(linkedHashMap, str);
+    public static List<LiveChannelGroup> parse(InputStream inputStream) throws IOException {
+        Groups groups = new Groups();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(unwrap(inputStream), StandardCharsets.UTF_8), 16 * 1024)) {
+            String line = reader.readLine();
+            if (line != null && line.startsWith("\uFEFF")) line = line.substring(1);
+            if (line != null && line.startsWith("#EXTM3U")) {
+                parseM3u(groups, reader);
+            } else {
+                parseTxt(groups, reader, line);
+            }
         }
+        return groups.build();
     }
 
-    private static void parseM3u(LinkedHashMap<String, LinkedHashMap<String, ArrayList<String>>> linkedHashMap, String str) {
-        ArrayList<String> urls;
-        try {
-            BufferedReader bufferedReader = new BufferedReader(new StringReader(str));
-            LinkedHashMap<String, ArrayList<String>> channel = new LinkedHashMap<>();
-            LinkedHashMap<String, ArrayList<String>> channelTemp = channel;
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (line.equals("")) continue;
-                if (line.startsWith("#EXTM3U")) continue;
-                if (line.startsWith("#EXTINF")) {
-                    String name = getStrByRegex(NAME_PATTERN, line);
-                    String group = getStrByRegex(GROUP_PATTERN, line);
-                    // 此时再读取一行，就是对应的 url 链接了
-                    String url = bufferedReader.readLine().trim();
-                    if (linkedHashMap.containsKey(group)) {
-                        channelTemp = linkedHashMap.get(group);
-                    } else {
-                        channelTemp = new LinkedHashMap<>();
-                        linkedHashMap.put(group, channelTemp);
-                    }
-                    if (null != channelTemp && channelTemp.containsKey(name)) {
-                        urls = channelTemp.get(name);
-                    } else {
-                        urls = new ArrayList<>();
-                        channelTemp.put(name, urls);
-                    }
-                    if (null != urls && !urls.contains(url)) urls.add(url);
-                }
-            }
-            bufferedReader.close();
-            if (channel.isEmpty()) return;
-            linkedHashMap.put("未分组", channel);
-        } catch (Exception e) {
-            e.printStackTrace();
+    private static InputStream unwrap(InputStream inputStream) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(inputStream);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b) return new GZIPInputStream(in, 16 * 1024);
+        return in;
+    }
+
+    private static void parseM3u(Groups groups, BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("#EXTINF")) continue;
+            String name = getName(line);
+            String group = getGroup(line);
+            // 此时再读取一行，就是对应的 url 链接了
+            String url = reader.readLine();
+            if (url == null) break;
+            groups.group(group).channel(name).add(url.trim());
         }
     }
 
-    private static String getStrByRegex(Pattern pattern, String line) {
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.find()) return matcher.group(1);
-        return pattern.pattern().equals(GROUP_PATTERN.pattern()) ? "未分组" : "未命名";
+    //等同于 .*,(.+?)$ : 最后一个逗号之后的内容
+    private static String getName(String line) {
+        int comma = line.lastIndexOf(',');
+        if (comma == line.length() - 1) comma = line.lastIndexOf(',', comma - 1);
+        if (comma < 0) return UNNAMED;
+        return line.substring(comma + 1);
     }
 
-    private static void parseTxt(LinkedHashMap<String, LinkedHashMap<String, ArrayList<String>>> linkedHashMap, String str) {
-        ArrayList<String> arrayList;
-        try {
-            BufferedReader bufferedReader = new BufferedReader(new StringReader(str));
-            String readLine = bufferedReader.readLine();
-            LinkedHashMap<String, ArrayList<String>> linkedHashMap2 = new LinkedHashMap<>();
-            LinkedHashMap<String, ArrayList<String>> linkedHashMap3 = linkedHashMap2;
-            while (readLine != null) {
-                if (readLine.trim().isEmpty()) {
-                    readLine = bufferedReader.readLine();
-                } else {
-                    String[] split = readLine.split(",", 2);
-                    if (split.length < 2) {
-                        readLine = bufferedReader.readLine();
-                    } else {
-                        if (readLine.contains("#genre#")) {
-                            String trim = split[0].trim();
-                            if (!linkedHashMap.containsKey(trim)) {
-                                linkedHashMap3 = new LinkedHashMap<>();
-                                linkedHashMap.put(trim, linkedHashMap3);
-                            } else {
-                                linkedHashMap3 = linkedHashMap.get(trim);
-                            }
-                        } else {
-                            String trim2 = split[0].trim();
-                            for (String str2 : split[1].trim().split("#")) {
-                                String trim3 = str2.trim();
-                                if (!trim3.isEmpty() && (trim3.startsWith("http") || trim3.startsWith("rtsp") || trim3.startsWith("rtmp"))) {
-                                    if (!linkedHashMap3.containsKey(trim2)) {
-                                        arrayList = new ArrayList<>();
-                                        linkedHashMap3.put(trim2, arrayList);
-                                    } else {
-                                        arrayList = linkedHashMap3.get(trim2);
-                                    }
-                                    if (!arrayList.contains(trim3)) {
-                                        arrayList.add(trim3);
-                                    }
-                                }
-                            }
-                        }
-                        readLine = bufferedReader.readLine();
-                    }
-                }
+    private static String getGroup(String line) {
+        int start = line.indexOf(GROUP_TITLE);
+        if (start < 0) return UNGROUPED;
+        start += GROUP_TITLE.length();
+        int end = line.indexOf('"', start);
+        if (end < 0) return UNGROUPED;
+        return line.substring(start, end);
+    }
+
+    private static void parseTxt(Groups groups, BufferedReader reader, String line) throws IOException {
+        Group ungrouped = new Group(UNGROUPED);
+        Group current = ungrouped;
+        for (; line != null; line = reader.readLine()) {
+            int comma = line.indexOf(',');
+            if (comma < 0) continue;
+            String name = line.substring(0, comma).trim();
+            if (line.contains("#genre#")) {
+                current = groups.group(name);
+                continue;
             }
-            bufferedReader.close();
-            if (linkedHashMap2.isEmpty()) {
-                return;
+            String urls = line.substring(comma + 1);
+            int start = 0;
+            while (start <= urls.length()) {
+                int end = urls.indexOf('#', start);
+                if (end < 0) end = urls.length();
+                String url = urls.substring(start, end).trim();
+                if (url.startsWith("http") || url.startsWith("rtsp") || url.startsWith("rtmp")) {
+                    current.channel(name).add(url);
+                }
+                start = end + 1;
             }
-            linkedHashMap.put("未分组", linkedHashMap2);
-        } catch (Throwable unused) {
         }
+        groups.merge(ungrouped);
     }
 
-    public static JsonArray live2JsonArray(LinkedHashMap<String, LinkedHashMap<String, ArrayList<String>>> linkedHashMap) {
-        JsonArray jsonarr = new JsonArray();
-        for (String str : linkedHashMap.keySet()) {
-            JsonArray jsonarr2 = new JsonArray();
-            LinkedHashMap<String, ArrayList<String>> linkedHashMap2 = linkedHashMap.get(str);
-            if (!linkedHashMap2.isEmpty()) {
-                for (String str2 : linkedHashMap2.keySet()) {
-                    ArrayList<String> arrayList = linkedHashMap2.get(str2);
-                    if (!arrayList.isEmpty()) {
-                        JsonArray jsonarr3 = new JsonArray();
-                        for (int i = 0; i < arrayList.size(); i++) {
-                            jsonarr3.add(arrayList.get(i));
-                        }
-                        JsonObject jsonobj = new JsonObject();
-                        try {
-                            jsonobj.addProperty("name", str2);
-                            jsonobj.add("urls", jsonarr3);
-                        } catch (Throwable e) {
-                        }
-                        jsonarr2.add(jsonobj);
+    private static final class Groups {
+        private final LinkedHashMap<String, Group> groups = new LinkedHashMap<>();
+
+        Group group(String name) {
+            Group group = groups.get(name);
+            if (group == null) {
+                group = new Group(name);
+                groups.put(name, group);
+            }
+            return group;
+        }
+
+        void merge(Group other) {
+            if (other.channels.isEmpty()) return;
+            Group group = group(other.name);
+            for (Channel channel : other.channels.values()) {
+                Channel target = group.channel(channel.name);
+                for (String url : channel.urls) target.add(url);
+            }
+        }
+
+        List<LiveChannelGroup> build() {
+            List<LiveChannelGroup> list = new ArrayList<>(groups.size());
+            int groupIndex = 0;
+            int channelNum = 0;
+            for (Group group : groups.values()) {
+                if (group.channels.isEmpty()) continue;
+                LiveChannelGroup liveChannelGroup = new LiveChannelGroup();
+                liveChannelGroup.setLiveChannels(new ArrayList<>(group.channels.size()));
+                liveChannelGroup.setGroupIndex(groupIndex++);
+                String[] splitGroupName = group.name.trim().split("_", 2);
+                liveChannelGroup.setGroupName(splitGroupName[0]);
+                liveChannelGroup.setGroupPassword(splitGroupName.length > 1 ? splitGroupName[1] : "");
+                int channelIndex = 0;
+                for (Channel channel : group.channels.values()) {
+                    LiveChannelItem liveChannelItem = new LiveChannelItem();
+                    liveChannelItem.setChannelName(channel.name.trim());
+                    liveChannelItem.setChannelIndex(channelIndex++);
+                    liveChannelItem.setChannelNum(++channelNum);
+                    ArrayList<String> sourceNames = new ArrayList<>(channel.urls.size());
+                    ArrayList<String> sourceUrls = new ArrayList<>(channel.urls.size());
+                    int sourceIndex = 1;
+                    for (String url : channel.urls) {
+                        int split = url.indexOf('$');
+                        sourceUrls.add(split < 0 ? url : url.substring(0, split));
+                        sourceNames.add(split < 0 ? "源" + sourceIndex : url.substring(split + 1));
+                        sourceIndex++;
                     }
+                    liveChannelItem.setChannelSourceNames(sourceNames);
+                    liveChannelItem.setChannelUrls(sourceUrls);
+                    liveChannelGroup.getLiveChannels().add(liveChannelItem);
                 }
-                JsonObject jsonobj2 = new JsonObject();
-                try {
-                    jsonobj2.addProperty("group", str);
-                    jsonobj2.add("channels", jsonarr2);
-                } catch (Throwable e) {
-                }
-                jsonarr.add(jsonobj2);
+                list.add(liveChannelGroup);
             }
+            return list;
+        }
+    }
+
+    private static final class Group {
+        final String name;
+        final LinkedHashMap<String, Channel> channels = new LinkedHashMap<>();
+
+        Group(String name) {
+            this.name = name;
+        }
+
+        Channel channel(String name) {
+            Channel channel = channels.get(name);
+            if (channel == null) {
+                channel = new Channel(name);
+                channels.put(name, channel);
+            }
+            return channel;
+        }
+    }
+
+    private static final class Channel {
+        final String name;
+        final ArrayList<String> urls = new ArrayList<>(2);
+        private final HashSet<String> seen = new HashSet<>(4);
+
+        Channel(String name) {
+            this.name = name;
+        }
+
+        void add(String url) {
+            if (seen.add(url)) urls.add(url);
         }
-        return jsonarr;
     }
 }
@@ -21,6 +21,7 @@ public class QuickJSContext {
     private final HashMap<Integer, JSCallFunction> callFunctionMap = new HashMap<>();
     private boolean destroyed = false;
     private ModuleLoader moduleLoader;
+    private JSObject binary;
 
     private QuickJSContext() {
         try {
@@ -174,6 +175,7 @@ public class QuickJSContext {
 
         nativeCleaner.forceClean();
         callFunctionMap.clear();
+        binary = null;
         destroyContext(context);
         destroyed = true;
     }
@@ -351,6 +353,90 @@ public class QuickJSContext {
         return parseJSON(context, json);
     }
 
+    /*
+     * 二进制数据传递: so 库没有 ArrayBuffer 的 JNI 接口, 逐个元素 push / get 每个字节都要跨一次 JNI。
+     * 这里把整段数据编码成一个字符串(每个字节对应一个字符 0x100 | b, 避开 \0 和 modified UTF-8 的差异),
+     * 一次 JNI 调用传过去, 由 JS 一次性转成 TypedArray; 反方向同理。
+     */
+    private static final String BINARY_SCRIPT = "globalThis.__binary__ = {\n" +
+            "  array: function (s) {\n" +
+            "    var n = s.length, a = new Array(n);\n" +
+            "    for (var i = 0; i < n; i++) a[i] = (s.charCodeAt(i) << 24) >> 24;\n" +
+            "    return a;\n" +
+            "  },\n" +
+            "  decode: function (s, signed) {\n" +
+            "    var n = s.length, a = signed ? new Int8Array(n) : new Uint8Array(n);\n" +
+            "    for (var i = 0; i < n; i++) a[i] = s.charCodeAt(i);\n" +
+            "    return a;\n" +
+            "  },\n" +
+            "  encode: function (v) {\n" +
+            "    if (v instanceof ArrayBuffer) v = new Uint8Array(v);\n" +
+            "    else if (ArrayBuffer.isView(v)) v = new Uint8Array(v.buffer, v.byteOffset, v.byteLength);\n" +
+            "    else if (Array.isArray(v)) v = Uint8Array.from(v);\n" +
+            "    else return null;\n" +
+            "    var out = [], c = new Uint16Array(8192);\n" +
+            "    for (var i = 0; i < v.length; i += 8192) {\n" +
+            "      var n = Math.min(8192, v.length - i);\n" +
+            "      for (var j = 0; j < n; j++) c[j] = v[i + j] | 256;\n" +
+            "      out.push(String.fromCharCode.apply(null, n === 8192 ? c : c.subarray(0, n)));\n" +
+            "    }\n" +
+            "    return out.join('');\n" +
+            "  }\n" +
+            "};";
+
+    private JSObject getBinary() {
+        if (binary == null) {
+            evaluate(BINARY_SCRIPT, "binary.js");
+            binary = (JSObject) get(getGlobalObject(), "__binary__");
+        }
+        return binary;
+    }
+
+    /**
+     * 普通 JS 数组, 元素为有符号字节, 与原来逐个 push 的 (int) byte 数组相同
+     */
+    public JSObject createByteArray(byte[] bytes) {
+        return (JSObject) getBinary().getJSFunction("array").call(encode(bytes));
+    }
+
+    public JSObject createUint8Array(byte[] bytes) {
+        return createTypedArray(bytes, false);
+    }
+
+    /**
+     * 元素为有符号字节, 与原来逐个 push 的 (int) byte 数组取值一致
+     */
+    public JSObject createInt8Array(byte[] bytes) {
+        return createTypedArray(bytes, true);
+    }
+
+    private JSObject createTypedArray(byte[] bytes, boolean signed) {
+        return (JSObject) getBinary().getJSFunction("decode").call(encode(bytes), signed);
+    }
+
+    private String encode(byte[] bytes) {
+        checkSameThread();
+        checkDestroyed();
+        if (bytes == null) bytes = new byte[0];
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) chars[i] = (char) (0x100 | (bytes[i] & 0xFF));
+        return new String(chars);
+    }
+
+    /**
+     * 读取 ArrayBuffer / TypedArray / 数字数组的内容, 其他对象返回 null
+     */
+    public byte[] getBytes(JSObject value) {
+        checkSameThread();
+        checkDestroyed();
+        Object encoded = getBinary().getJSFunction("encode").call(value);
+        if (!(encoded instanceof String)) return null;
+        String s = (String) encoded;
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) s.charAt(i);
+        return bytes;
+    }
+
     public byte[] compile(String source) {
         return compile(source, UNKNOWN_FILE);
     }
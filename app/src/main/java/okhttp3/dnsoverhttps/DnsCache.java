@@ -0,0 +1,163 @@
+package okhttp3.dnsoverhttps;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DnsOverHttps 前面的内存缓存
+ * <p>
+ * 按记录 TTL 缓存解析结果(限制在 MIN_TTL 到 MAX_TTL 之间), 失败结果缓存 NEGATIVE_TTL;
+ * 同一个域名同时只发一次查询, 其他调用等待同一个结果; 命中时如果已过了 TTL 的 3/4, 在后台提前刷新,
+ * 刷新时不用本地的 http 缓存, 直接走网络。
+ */
+final class DnsCache {
+    private static final long MIN_TTL = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final long NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(10);
+    private static final int MAX_SIZE = 512;
+
+    interface Resolver {
+        /**
+         * @param ttl     输出参数, ttl[0] 为记录剩余的最小 TTL(秒), 未知时保持 -1
+         * @param network 为 true 时跳过本地缓存, 直接查询
+         */
+        List<InetAddress> resolve(String hostname, long[] ttl, boolean network) throws UnknownHostException;
+    }
+
+    private static final class Entry {
+        final List<InetAddress> addresses;
+        final UnknownHostException error;
+        final long expiresAt;
+        final long refreshAt;
+        volatile boolean refreshing;
+
+        Entry(List<InetAddress> addresses, UnknownHostException error, long ttl) {
+            long now = System.currentTimeMillis();
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = now + ttl;
+            this.refreshAt = now + ttl * 3 / 4;
+        }
+    }
+
+    private final Resolver resolver;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FutureTask<Entry>> inflight = new ConcurrentHashMap<>();
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "doh-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 统计
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong resolves = new AtomicLong();
+    private final AtomicLong resolveNanos = new AtomicLong();
+
+    DnsCache(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        String key = hostname.toLowerCase(Locale.US);
+        Entry entry = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expiresAt) {
+            if (entry.error != null) {
+                negativeHits.incrementAndGet();
+                throw entry.error;
+            }
+            hits.incrementAndGet();
+            if (now >= entry.refreshAt && !entry.refreshing) {
+                entry.refreshing = true;
+                refreshes.incrementAndGet();
+                refresher.execute(() -> load(key, hostname, true));
+            }
+            return new ArrayList<>(entry.addresses);
+        }
+        misses.incrementAndGet();
+        entry = load(key, hostname, false);
+        if (entry.error != null) throw entry.error;
+        return new ArrayList<>(entry.addresses);
+    }
+
+    private Entry load(String key, String hostname, boolean network) {
+        FutureTask<Entry> task = new FutureTask<>(() -> resolve(key, hostname, network));
+        FutureTask<Entry> running = inflight.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                inflight.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (Exception e) {
+            UnknownHostException error = new UnknownHostException(hostname);
+            error.initCause(e);
+            return new Entry(Collections.<InetAddress>emptyList(), error, 0);
+        }
+    }
+
+    private Entry resolve(String key, String hostname, boolean network) {
+        long start = System.nanoTime();
+        Entry entry;
+        try {
+            long[] ttl = {-1};
+            List<InetAddress> addresses = resolver.resolve(hostname, ttl, network);
+            long millis = ttl[0] < 0 ? MIN_TTL : TimeUnit.SECONDS.toMillis(ttl[0]);
+            entry = new Entry(Collections.unmodifiableList(new ArrayList<>(addresses)), null, Math.max(MIN_TTL, Math.min(MAX_TTL, millis)));
+        } catch (UnknownHostException e) {
+            // 后台刷新失败时继续用旧结果, 直到过期
+            Entry old = entries.get(key);
+            if (old != null && old.error == null && System.currentTimeMillis() < old.expiresAt) return old;
+            entry = new Entry(Collections.<InetAddress>emptyList(), e, NEGATIVE_TTL);
+        }
+        resolves.incrementAndGet();
+        resolveNanos.addAndGet(System.nanoTime() - start);
+        if (entries.size() >= MAX_SIZE) evictExpired();
+        entries.put(key, entry);
+        return entry;
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().expiresAt <= now) entries.remove(e.getKey(), e.getValue());
+        }
+        if (entries.size() >= MAX_SIZE) entries.clear();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 命中率和平均解析耗时
+     */
+    String stats() {
+        long hit = hits.get(), negative = negativeHits.get(), miss = misses.get();
+        long total = hit + negative + miss;
+        long resolved = resolves.get();
+        return String.format(Locale.US, "hit %d, negative %d, miss %d, refresh %d, hit ratio %.1f%%, avg resolve %dms",
+                hit, negative, miss, refreshes.get(),
+                total == 0 ? 0f : (hit + negative) * 100f / total,
+                resolved == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(resolveNanos.get() / resolved));
+    }
+}
@@ -20,11 +20,13 @@ import androidx.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.CacheControl;
 import okhttp3.Call;
@@ -67,6 +69,7 @@ public class DnsOverHttps implements Dns {
     private final boolean post;
     private final boolean resolvePrivateAddresses;
     private final boolean resolvePublicAddresses;
+    private final DnsCache cache = new DnsCache(this::lookupHttps);
 
     DnsOverHttps(Builder builder) {
         if (builder.client == null) {
@@ -85,7 +88,17 @@ public class DnsOverHttps implements Dns {
     }
 
     public void setUrl(HttpUrl newUrl) {
+        // 切换前记下旧服务器的缓存效果
+        Platform.get().log(Platform.INFO, "doh " + url + " " + cache.stats(), null);
         this.url = newUrl;
+        cache.clear();
+    }
+
+    /**
+     * 内存缓存的命中率和解析耗时
+     */
+    public String cacheStats() {
+        return cache.stats();
     }
 
     private static Dns buildBootstrapClient(Builder builder) {
@@ -137,7 +150,7 @@ public class DnsOverHttps implements Dns {
                 throw new UnknownHostException("public hosts not resolved");
             }
         }
-        return lookupHttps(hostname);
+        return cache.lookup(hostname);
     }
 
     public byte[] lookupHttpsForwardSync(String hostname) throws Throwable {
@@ -147,18 +160,18 @@ public class DnsOverHttps implements Dns {
         return byteArrayOutputStream.toByteArray();
     }
 
-    private List<InetAddress> lookupHttps(String hostname) throws UnknownHostException {
+    private List<InetAddress> lookupHttps(String hostname, long[] ttl, boolean network) throws UnknownHostException {
         List<Call> networkRequests = new ArrayList<>(2);
         List<Exception> failures = new ArrayList<>(2);
         List<InetAddress> results = new ArrayList<>(5);
 
-        buildRequest(hostname, networkRequests, results, failures, DnsRecordCodec.TYPE_A);
+        buildRequest(hostname, networkRequests, results, failures, ttl, DnsRecordCodec.TYPE_A, network);
 
         if (includeIPv6) {
-            buildRequest(hostname, networkRequests, results, failures, DnsRecordCodec.TYPE_AAAA);
+            buildRequest(hostname, networkRequests, results, failures, ttl, DnsRecordCodec.TYPE_AAAA, network);
         }
 
-        executeRequests(hostname, networkRequests, results, failures);
+        executeRequests(hostname, networkRequests, results, failures, ttl);
 
         if (!results.isEmpty()) {
             return results;
@@ -168,14 +181,32 @@ public class DnsOverHttps implements Dns {
     }
 
     private void buildRequest(String hostname, List<Call> networkRequests, List<InetAddress> results,
-                              List<Exception> failures, int type) {
+                              List<Exception> failures, long[] ttl, int type, boolean network) {
         Request request = buildRequest(hostname, type);
-        Response response = getCacheOnlyResponse(request);
+        Response response = network ? null : getCacheOnlyResponse(request);
 
         if (response != null) {
-            processResponse(response, hostname, results, failures);
-        } else {
-            networkRequests.add(client.newCall(request));
+            // FORCE_CACHE 不管缓存多旧都会返回, 记录的 TTL 扣掉缓存的时间后已经过期的重新查询
+            try {
+                long[] remaining = {-1};
+                List<InetAddress> addresses = readResponse(hostname, response, remaining);
+                if (remaining[0] > 0) {
+                    results.addAll(addresses);
+                    mergeTtl(ttl, remaining[0]);
+                    return;
+                }
+            } catch (Exception e) {
+                // 缓存的响应不可用, 走网络
+            }
+        }
+        // 刷新或本地缓存已过期时, 不能再让 http 缓存返回旧的响应
+        if (network || response != null) request = request.newBuilder().cacheControl(CacheControl.FORCE_NETWORK).build();
+        networkRequests.add(client.newCall(request));
+    }
+
+    private static void mergeTtl(long[] ttl, long value) {
+        synchronized (ttl) {
+            if (ttl[0] < 0 || value < ttl[0]) ttl[0] = value;
         }
     }
 
@@ -190,7 +221,8 @@ public class DnsOverHttps implements Dns {
     }
 
     private void executeRequests(final String hostname, List<Call> networkRequests,
-                                 final List<InetAddress> responses, final List<Exception> failures) {
+                                 final List<InetAddress> responses, final List<Exception> failures,
+                                 final long[] ttl) {
         final CountDownLatch latch = new CountDownLatch(networkRequests.size());
 
         for (Call call : networkRequests) {
@@ -205,26 +237,37 @@ public class DnsOverHttps implements Dns {
 
                 @Override
                 public void onResponse(Call call, Response response) {
-                    processResponse(response, hostname, responses, failures);
+                    processResponse(response, hostname, responses, failures, ttl);
                     latch.countDown();
                 }
             });
         }
 
         try {
-            latch.await();
+            // 最多等一次连接加读取的超时, 超时后取消, 按失败处理
+            long timeout = client.connectTimeoutMillis() + client.readTimeoutMillis();
+            if (timeout <= 0) {
+                latch.await();
+            } else if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                for (Call call : networkRequests) call.cancel();
+                synchronized (failures) {
+                    failures.add(new SocketTimeoutException("doh timeout"));
+                }
+            }
         } catch (InterruptedException e) {
             failures.add(e);
         }
     }
 
     private void processResponse(Response response, String hostname, List<InetAddress> results,
-                                 List<Exception> failures) {
+                                 List<Exception> failures, long[] ttl) {
         try {
-            List<InetAddress> addresses = readResponse(hostname, response);
+            long[] remaining = {-1};
+            List<InetAddress> addresses = readResponse(hostname, response, remaining);
             synchronized (results) {
                 results.addAll(addresses);
             }
+            if (remaining[0] >= 0) mergeTtl(ttl, remaining[0]);
         } catch (Exception e) {
             synchronized (failures) {
                 failures.add(e);
@@ -252,7 +295,11 @@ public class DnsOverHttps implements Dns {
         return null;
     }
 
-    private List<InetAddress> readResponse(String hostname, Response response) throws Exception {
+    /**
+     * @param ttl 输出参数, 记录的最小 TTL 减去响应已缓存的时间(秒), 可能小于等于 0
+     */
+    private List<InetAddress> readResponse(String hostname, Response response, long[] ttl) throws Exception {
+        long age = Math.max(0, System.currentTimeMillis() - response.receivedResponseAtMillis()) / 1000;
         if (response.cacheResponse() == null && response.protocol() != Protocol.HTTP_2) {
             Platform.get().log(Platform.WARN, "Incorrect protocol: " + response.protocol(), null);
         }
@@ -274,7 +321,9 @@ public class DnsOverHttps implements Dns {
 
             ByteString responseBytes = body.source().readByteString();
 
-            return DnsRecordCodec.decodeAnswers(hostname, responseBytes);
+            List<InetAddress> addresses = DnsRecordCodec.decodeAnswers(hostname, responseBytes, ttl);
+            if (ttl[0] >= 0) ttl[0] -= age;
+            return addresses;
         } finally {
             response.close();
         }
@@ -70,6 +70,14 @@ class DnsRecordCodec {
 
   public static List<InetAddress> decodeAnswers(String hostname, ByteString byteString)
       throws Exception {
+    return decodeAnswers(hostname, byteString, null);
+  }
+
+  /**
+   * @param minTtl 不为空时, minTtl[0] 更新为 A/AAAA 记录中最小的 TTL(秒)
+   */
+  public static List<InetAddress> decodeAnswers(String hostname, ByteString byteString, long[] minTtl)
+      throws Exception {
     List<InetAddress> result = new ArrayList<>();
 
     Buffer buf = new Buffer();
@@ -112,6 +120,11 @@ class DnsRecordCodec {
         byte[] bytes = new byte[length];
         buf.read(bytes);
         result.add(InetAddress.getByAddress(bytes));
+        if (minTtl != null) {
+          synchronized (minTtl) {
+            if (minTtl[0] < 0 || ttl < minTtl[0]) minTtl[0] = ttl;
+          }
+        }
       } else {
         buf.skip(length);
       }
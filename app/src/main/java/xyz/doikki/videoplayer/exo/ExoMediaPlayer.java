@@ -18,6 +18,7 @@ import androidx.media3.exoplayer.DefaultLoadControl;
 import androidx.media3.exoplayer.DefaultRenderersFactory;
 import androidx.media3.exoplayer.ExoPlayer;
 import androidx.media3.exoplayer.LoadControl;
+import androidx.media3.exoplayer.hls.HlsMediaSource;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.trackselection.DefaultTrackSelector;
 import androidx.media3.exoplayer.trackselection.TrackSelectionArray;
@@ -45,6 +46,8 @@ public class ExoMediaPlayer extends AbstractPlayer implements Player.Listener {
     protected TrackSelectionArray mTrackSelections;
     private PlaybackParameters mSpeedPlaybackParameters;
     private boolean mIsPreparing;
+    private boolean mIsSeeking;
+    private HlsPrefetcher mPrefetcher;
 
     private LoadControl mLoadControl;
     private DefaultRenderersFactory mRenderersFactory;
@@ -149,10 +152,22 @@ public class ExoMediaPlayer extends AbstractPlayer implements Player.Listener {
         mIsPreparing = true;
         mMediaPlayer.setMediaSource(mMediaSource);
         mMediaPlayer.prepare();
+        releasePrefetcher();
+        if (mMediaSource instanceof HlsMediaSource && mMediaSourceHelper.getHlsCacheFactory() != null) {
+            mPrefetcher = new HlsPrefetcher(mMediaPlayer, mMediaSourceHelper.getHlsCacheFactory());
+        }
+    }
+
+    private void releasePrefetcher() {
+        if (mPrefetcher != null) {
+            mPrefetcher.release();
+            mPrefetcher = null;
+        }
     }
 
     @Override
     public void reset() {
+        releasePrefetcher();
         if (mMediaPlayer != null) {
             mMediaPlayer.stop();
             mMediaPlayer.clearMediaItems();
@@ -181,12 +196,17 @@ public class ExoMediaPlayer extends AbstractPlayer implements Player.Listener {
     public void seekTo(long time) {
         if (mMediaPlayer == null)
             return;
+        mIsSeeking = true;
         mMediaPlayer.seekTo(time);
+        // 落在已缓冲范围内的跳转不进入缓冲, 也就没有 READY 回调来清掉标记
+        if (mMediaPlayer.getPlaybackState() != Player.STATE_BUFFERING) mIsSeeking = false;
     }
 
     @Override
     public void release() {
+        releasePrefetcher();
         if (mMediaPlayer != null) {
+            Log.i("ExoCache", MediaCacheStats.summary());
             mMediaPlayer.removeListener(this);
             mMediaPlayer.release();
             mMediaPlayer = null;
@@ -298,14 +318,19 @@ public class ExoMediaPlayer extends AbstractPlayer implements Player.Listener {
                 mPlayerEventListener.onPrepared();
                 mPlayerEventListener.onInfo(MEDIA_INFO_RENDERING_START, 0);
                 mIsPreparing = false;
+                mIsSeeking = false;
             }
             return;
         }
         switch (playbackState) {
             case Player.STATE_BUFFERING:
+                //跳转引起的缓冲不算卡顿, 每次跳转只抵消一次
+                if (mIsSeeking) mIsSeeking = false;
+                else MediaCacheStats.rebuffers.incrementAndGet();
                 mPlayerEventListener.onInfo(MEDIA_INFO_BUFFERING_START, getBufferedPercentage());
                 break;
             case Player.STATE_READY:
+                mIsSeeking = false;
                 mPlayerEventListener.onInfo(MEDIA_INFO_BUFFERING_END, getBufferedPercentage());
                 break;
             case Player.STATE_ENDED:
@@ -19,6 +19,8 @@ import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor;
 import androidx.media3.datasource.cache.SimpleCache;
 import androidx.media3.datasource.rtmp.RtmpDataSource;
 import androidx.media3.exoplayer.dash.DashMediaSource;
+import androidx.media3.exoplayer.hls.DefaultHlsDataSourceFactory;
+import androidx.media3.exoplayer.hls.HlsDataSourceFactory;
 import androidx.media3.exoplayer.hls.HlsMediaSource;
 import androidx.media3.exoplayer.rtsp.RtspMediaSource;
 import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
@@ -50,6 +52,11 @@ public final class ExoMediaSourceHelper {
     private OkHttpDataSource.Factory mHttpDataSourceFactoryNoProxy;
     private OkHttpClient mOkClient = null;
     private Cache mCache;
+    private Cache mHlsCache;
+    private StandaloneDatabaseProvider mDatabaseProvider;
+    private CacheDataSource.Factory mHlsCacheFactory;
+
+    private static final long HLS_CACHE_SIZE = 256 * 1024 * 1024;
 
     @SuppressLint("UnsafeOptInUsageError")
     private ExoMediaSourceHelper(Context context) {
@@ -129,7 +136,10 @@ public final class ExoMediaSourceHelper {
             case C.TYPE_DASH:
                 return new DashMediaSource.Factory(factory).createMediaSource(MediaItem.fromUri(contentUri));
             case C.TYPE_HLS:
-                return new HlsMediaSource.Factory(mHttpDataSourceFactory)
+                //本地代理的列表不走分片缓存: 代理自己缓存和预取, 本地地址也不能长期作为缓存 key
+                boolean local = isLoopback(contentUri);
+                if (local) mHlsCacheFactory = null;
+                return new HlsMediaSource.Factory(local ? new DefaultHlsDataSourceFactory(getDataSourceFactory()) : getHlsDataSourceFactory())
                         .setAllowChunklessPreparation(true)
                         .setExtractorFactory(new MyHlsExtractorFactory())
                         .createMediaSource(MediaItem.fromUri(contentUri));
@@ -140,6 +150,11 @@ public final class ExoMediaSourceHelper {
         }
     }
 
+    private static boolean isLoopback(Uri uri) {
+        String host = uri.getHost();
+        return "127.0.0.1".equals(host) || "localhost".equalsIgnoreCase(host);
+    }
+
     @SuppressLint("UnsafeOptInUsageError")
     private int inferContentType(String fileName) {
         fileName = fileName.toLowerCase();
@@ -168,7 +183,48 @@ public final class ExoMediaSourceHelper {
         return new SimpleCache(
                 new File(FileUtils.getExternalCachePath(), "exo-video-cache"),//缓存目录
                 new LeastRecentlyUsedCacheEvictor(512 * 1024 * 1024),//缓存大小，默认512M，使用LRU算法实现
-                new StandaloneDatabaseProvider(mAppContext));
+                getDatabaseProvider());
+    }
+
+    private StandaloneDatabaseProvider getDatabaseProvider() {
+        if (mDatabaseProvider == null) {
+            mDatabaseProvider = new StandaloneDatabaseProvider(mAppContext);
+        }
+        return mDatabaseProvider;
+    }
+
+    /**
+     * HLS 的数据源: 分片(含初始化分片)走单独的分片缓存, 播放列表和密钥每次都从网络取, 直播列表不会读到旧的
+     */
+    @SuppressLint("UnsafeOptInUsageError")
+    private HlsDataSourceFactory getHlsDataSourceFactory() {
+        if (mHlsCache == null) {
+            //与视频缓存分开计算大小, 分片缓存满了不会挤掉其他缓存
+            mHlsCache = new SimpleCache(
+                    new File(FileUtils.getExternalCachePath(), "exo-hls-cache"),
+                    new LeastRecentlyUsedCacheEvictor(HLS_CACHE_SIZE),
+                    getDatabaseProvider());
+        }
+        DataSource.Factory upstream = getDataSourceFactory();
+        CacheDataSource.Factory cacheFactory = new CacheDataSource.Factory()
+                .setCache(mHlsCache)
+                .setUpstreamDataSourceFactory(upstream)
+                .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+                .setEventListener(MediaCacheStats.LISTENER);
+        mHlsCacheFactory = cacheFactory;
+        return dataType -> {
+            if (dataType == C.DATA_TYPE_MEDIA || dataType == C.DATA_TYPE_MEDIA_INITIALIZATION) {
+                return cacheFactory.createDataSource();
+            }
+            return upstream.createDataSource();
+        };
+    }
+
+    /**
+     * 最近一次创建的 HLS 分片缓存, 供预取写入; 请求头与播放器一致
+     */
+    CacheDataSource.Factory getHlsCacheFactory() {
+        return mHlsCacheFactory;
     }
 
     /**
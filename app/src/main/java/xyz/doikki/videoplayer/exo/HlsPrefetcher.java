@@ -0,0 +1,149 @@
+package xyz.doikki.videoplayer.exo;
+
+import android.annotation.SuppressLint;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.media3.common.C;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UriUtil;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheWriter;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.hls.HlsManifest;
+import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HLS 点播的分片预取
+ * <p>
+ * 播放时每秒检查一次, 跳过播放器已缓冲到的位置之后的第一个分片(播放器马上会自己加载),
+ * 把再往后 window 个分片并行写进分片缓存, 播放器读到时直接命中。
+ * window 按下载速度与码率之比调整: 下载一个分片比播放它快得越多, 往前取得越多。直播不预取。
+ */
+@SuppressLint("UnsafeOptInUsageError")
+final class HlsPrefetcher implements Player.Listener {
+    private static final long INTERVAL = 1000;
+    private static final int MIN_WINDOW = 1;
+    private static final int MAX_WINDOW = 6;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(MAX_WINDOW, r -> {
+        Thread thread = new Thread(r, "hls-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExoPlayer player;
+    private final CacheDataSource.Factory factory;
+    private final Handler handler;
+    private final Runnable tick = this::tick;
+    private final Map<String, CacheWriter> running = new ConcurrentHashMap<>();
+    private final Set<String> done = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // 下载速度 / 码率, 平滑后的值
+    private double ratio = 2;
+    private volatile int window = 2;
+    private volatile boolean released;
+
+    HlsPrefetcher(ExoPlayer player, CacheDataSource.Factory factory) {
+        this.player = player;
+        this.factory = factory;
+        this.handler = new Handler(player.getApplicationLooper());
+        player.addListener(this);
+        handler.postDelayed(tick, INTERVAL);
+    }
+
+    void release() {
+        released = true;
+        handler.removeCallbacks(tick);
+        player.removeListener(this);
+        cancel();
+    }
+
+    @Override
+    public void onPositionDiscontinuity(@NonNull Player.PositionInfo oldPosition, @NonNull Player.PositionInfo newPosition, int reason) {
+        // 跳转后原来在取的分片可能已经用不上
+        if (reason == Player.DISCONTINUITY_REASON_SEEK) cancel();
+    }
+
+    private void cancel() {
+        for (CacheWriter writer : running.values()) writer.cancel();
+        running.clear();
+    }
+
+    private void tick() {
+        if (released) return;
+        handler.postDelayed(tick, INTERVAL);
+        if (player.getPlaybackState() != Player.STATE_READY && player.getPlaybackState() != Player.STATE_BUFFERING) return;
+        Object manifest = player.getCurrentManifest();
+        if (!(manifest instanceof HlsManifest)) return;
+        HlsMediaPlaylist playlist = ((HlsManifest) manifest).mediaPlaylist;
+        if (!playlist.hasEndTag || playlist.segments.isEmpty()) return;
+        long bufferedUs = Util.msToUs(player.getBufferedPosition());
+        boolean skipped = false;
+        int queued = 0;
+        for (HlsMediaPlaylist.Segment segment : playlist.segments) {
+            if (queued >= window) break;
+            if (segment.relativeStartTimeUs < bufferedUs) continue;
+            if (!skipped) {
+                skipped = true;
+                continue;
+            }
+            queued++;
+            Uri uri = UriUtil.resolveToUri(playlist.baseUri, segment.url);
+            String key = uri + "#" + segment.byteRangeOffset;
+            if (done.contains(key) || running.containsKey(key)) continue;
+            DataSpec spec = new DataSpec.Builder()
+                    .setUri(uri)
+                    .setPosition(segment.byteRangeOffset)
+                    .setLength(segment.byteRangeLength)
+                    .build();
+            submit(key, spec, segment.durationUs);
+        }
+    }
+
+    private void submit(String key, DataSpec spec, long durationUs) {
+        long[] bytes = new long[2];
+        CacheWriter writer = new CacheWriter(factory.createDataSourceForDownloading(), spec, null,
+                (requestLength, bytesCached, newBytesCached) -> {
+                    bytes[0] = bytesCached;
+                    bytes[1] = newBytesCached;
+                });
+        running.put(key, writer);
+        executor.execute(() -> {
+            try {
+                if (released || running.get(key) != writer) return;
+                long start = SystemClock.elapsedRealtime();
+                writer.cache();
+                done.add(key);
+                if (bytes[1] > 0) {
+                    MediaCacheStats.prefetchSegments.incrementAndGet();
+                    MediaCacheStats.prefetchBytes.addAndGet(bytes[1]);
+                    adapt(bytes[1], SystemClock.elapsedRealtime() - start, bytes[0], durationUs);
+                }
+            } catch (IOException | RuntimeException e) {
+                // 取消或者网络错误, 播放器自己会再去取
+            } finally {
+                running.remove(key, writer);
+            }
+        });
+    }
+
+    private synchronized void adapt(long newBytes, long elapsedMs, long segmentBytes, long durationUs) {
+        if (elapsedMs <= 0 || durationUs <= 0 || segmentBytes <= 0) return;
+        double speed = newBytes * 1000.0 / elapsedMs;
+        double bitrate = segmentBytes * (double) C.MICROS_PER_SECOND / durationUs;
+        ratio = ratio * 0.7 + speed / bitrate * 0.3;
+        window = Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, (int) ratio));
+    }
+}
@@ -0,0 +1,39 @@
+package xyz.doikki.videoplayer.exo;
+
+import android.annotation.SuppressLint;
+
+import androidx.media3.datasource.cache.CacheDataSource;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分片缓存和卡顿的计数, 进程内累计
+ */
+public final class MediaCacheStats {
+
+    public static final AtomicLong cacheHitBytes = new AtomicLong();
+    public static final AtomicLong prefetchBytes = new AtomicLong();
+    public static final AtomicLong prefetchSegments = new AtomicLong();
+    public static final AtomicLong rebuffers = new AtomicLong();
+
+    @SuppressLint("UnsafeOptInUsageError")
+    static final CacheDataSource.EventListener LISTENER = new CacheDataSource.EventListener() {
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            cacheHitBytes.addAndGet(cachedBytesRead);
+        }
+
+        @Override
+        public void onCacheIgnored(int reason) {
+        }
+    };
+
+    private MediaCacheStats() {
+    }
+
+    public static String summary() {
+        return String.format(Locale.US, "cache hit %dKB, prefetch %d segments %dKB, rebuffer %d",
+                cacheHitBytes.get() / 1024, prefetchSegments.get(), prefetchBytes.get() / 1024, rebuffers.get());
+    }
+}
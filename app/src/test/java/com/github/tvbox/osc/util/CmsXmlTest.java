@@ -0,0 +1,170 @@
+package com.github.tvbox.osc.util;
+
+import com.github.tvbox.osc.bean.AbsSortXml;
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.bean.Movie;
+import com.github.tvbox.osc.bean.MovieSort;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * CmsXml 与原来 SourceViewModel 里 XStream 解析结果对比, 只比较 bean 上有 XStream 注解映射的字段
+ */
+public class CmsXmlTest {
+
+    private static final String LIST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<rss version=\"5.1\">\n"
+            + "<list page=\"2\" pagecount=\"10\" pagesize=\"20\" recordcount=\"200\">\n"
+            + "<video><last>2024-01-01 12:00:00</last><id>123</id><tid>5</tid><name><![CDATA[老爸当家]]></name>"
+            + "<type>国产剧</type><dt>zuidam3u8</dt><pic>http://a.com/1.jpg</pic><lang>国语</lang><area>大陆</area>"
+            + "<year>2020</year><state></state><note><![CDATA[共40集]]></note><actor><![CDATA[张国立,蒋欣]]></actor>"
+            + "<director><![CDATA[陈国星]]></director>"
+            + "<dl><dd flag=\"zuidam3u8\"><![CDATA[第01集$http://a.com/1.m3u8#第02集$http://a.com/2.m3u8]]></dd>"
+            + "<dd flag=\"zuidall\"><![CDATA[正片$http://a.com/1.mp4]]></dd></dl>"
+            + "<des><![CDATA[<p>简介</p>]]></des><tag>热播</tag></video>\n"
+            + "<video><id>124</id><tid>6</tid><name>第二部</name><year></year><state>更新至10集</state><dl></dl></video>\n"
+            + "<video><id>125</id></video>\n"
+            + "</list>\n"
+            + "<class><ty id=\"1\">电影</ty><ty id=\"2\">电视剧</ty></class>\n"
+            + "</rss>";
+
+    private static final String EMPTY = "<?xml version=\"1.0\" encoding=\"utf-8\"?><rss><list page=\"1\" pagecount=\"0\"></list><msg></msg></rss>";
+
+    private static final String BAD_NUMBER = "<rss><list page=\"x\"><video><id>1</id><tid>abc</tid><year>2020年</year></video></list></rss>";
+
+    // 原来的 SourceViewModel.xml
+    private static AbsXml xstreamAbsXml(String xml) {
+        XStream xstream = new XStream(new DomDriver());
+        xstream.autodetectAnnotations(true);
+        xstream.processAnnotations(AbsXml.class);
+        xstream.ignoreUnknownElements();
+        xstream.allowTypes(new Class[]{AbsXml.class});
+        if (xml.contains("<year></year>")) {
+            xml = xml.replace("<year></year>", "<year>0</year>");
+        }
+        if (xml.contains("<state></state>")) {
+            xml = xml.replace("<state></state>", "<state>0</state>");
+        }
+        return (AbsXml) xstream.fromXML(xml);
+    }
+
+    // 原来的 SourceViewModel.sortXml
+    private static AbsSortXml xstreamSortXml(String xml) {
+        XStream xstream = new XStream(new DomDriver());
+        xstream.autodetectAnnotations(true);
+        xstream.processAnnotations(AbsSortXml.class);
+        xstream.ignoreUnknownElements();
+        xstream.allowTypes(new Class[]{AbsSortXml.class});
+        return (AbsSortXml) xstream.fromXML(xml);
+    }
+
+    private static AbsXml cmsAbsXml(String xml) throws Exception {
+        return CmsXml.parseAbsXml(new KXmlParser(), xml);
+    }
+
+    private static AbsSortXml cmsSortXml(String xml) throws Exception {
+        return CmsXml.parseSortXml(new KXmlParser(), xml);
+    }
+
+    private static String dump(AbsXml data) {
+        return "msg=" + data.msg + "\n" + dump(data.movie);
+    }
+
+    private static String dump(AbsSortXml data) {
+        StringBuilder sb = new StringBuilder();
+        if (data.classes == null) {
+            sb.append("class=null\n");
+        } else if (data.classes.sortList == null) {
+            sb.append("ty=null\n");
+        } else {
+            for (MovieSort.SortData sort : data.classes.sortList) {
+                sb.append("ty id=").append(sort.id).append(" name=").append(sort.name).append('\n');
+            }
+        }
+        return sb.append(dump(data.list)).toString();
+    }
+
+    private static String dump(Movie movie) {
+        if (movie == null) return "list=null\n";
+        StringBuilder sb = new StringBuilder();
+        sb.append("list page=").append(movie.page).append(" pagecount=").append(movie.pagecount)
+                .append(" pagesize=").append(movie.pagesize).append(" recordcount=").append(movie.recordcount).append('\n');
+        if (movie.videoList == null) return sb.append("video=null\n").toString();
+        for (Movie.Video video : movie.videoList) {
+            sb.append("video last=").append(video.last).append(" id=").append(video.id).append(" tid=").append(video.tid)
+                    .append(" name=").append(video.name).append(" type=").append(video.type).append(" pic=").append(video.pic)
+                    .append(" lang=").append(video.lang).append(" area=").append(video.area).append(" year=").append(video.year)
+                    .append(" state=").append(video.state).append(" note=").append(video.note).append(" actor=").append(video.actor)
+                    .append(" director=").append(video.director).append(" des=").append(video.des).append(" tag=").append(video.tag).append('\n');
+            if (video.urlBean == null) {
+                sb.append(" dl=null\n");
+            } else if (video.urlBean.infoList == null) {
+                sb.append(" dd=null\n");
+            } else {
+                for (Movie.Video.UrlBean.UrlInfo info : video.urlBean.infoList) {
+                    sb.append(" dd flag=").append(info.flag).append(" urls=").append(info.urls).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void listMatchesXStream() throws Exception {
+        AbsXml data = cmsAbsXml(LIST);
+        assertEquals(dump(xstreamAbsXml(LIST)), dump(data));
+        assertEquals("0", data.movie.videoList.get(0).state);
+        assertEquals(2, data.movie.videoList.get(0).urlBean.infoList.size());
+        assertNull(data.movie.videoList.get(1).urlBean.infoList);
+    }
+
+    @Test
+    public void sortMatchesXStream() throws Exception {
+        AbsSortXml data = cmsSortXml(LIST);
+        assertEquals(dump(xstreamSortXml(LIST)), dump(data));
+        assertEquals("电视剧", data.classes.sortList.get(1).name);
+    }
+
+    @Test
+    public void emptyMatchesXStream() throws Exception {
+        assertEquals(dump(xstreamAbsXml(EMPTY)), dump(cmsAbsXml(EMPTY)));
+    }
+
+    @Test
+    public void badNumbersAreZero() throws Exception {
+        // XStream 整页解析失败, CmsXml 取 0
+        try {
+            xstreamAbsXml(BAD_NUMBER);
+            fail("xstream accepted bad numbers");
+        } catch (RuntimeException expected) {
+        }
+        AbsXml data = cmsAbsXml(BAD_NUMBER);
+        assertEquals(0, data.movie.page);
+        assertEquals(0, data.movie.videoList.get(0).tid);
+        assertEquals(0, data.movie.videoList.get(0).year);
+        assertEquals("1", data.movie.videoList.get(0).id);
+    }
+
+    @Test
+    public void timing() throws Exception {
+        int rounds = 2000;
+        for (int i = 0; i < 200; i++) {
+            xstreamAbsXml(LIST);
+            cmsAbsXml(LIST);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) xstreamAbsXml(LIST);
+        long xstreamNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) cmsAbsXml(LIST);
+        long cmsNanos = System.nanoTime() - start;
+        System.out.println("XStream " + xstreamNanos / rounds / 1000 + "us, CmsXml " + cmsNanos / rounds / 1000 + "us per page");
+    }
+}
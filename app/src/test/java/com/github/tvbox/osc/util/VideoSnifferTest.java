@@ -0,0 +1,143 @@
+package com.github.tvbox.osc.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * VideoSniffer 与原来 DefaultConfig 里 snifferMatch 正则的判断结果对比
+ */
+public class VideoSnifferTest {
+
+    private static final Pattern SNIFFER_MATCH = Pattern.compile("http((?!http).){20,}?\\.(m3u8|mp4|flv|avi|mkv|rm|wmv|mpg)\\?.*|" + "http((?!http).){20,}\\.(m3u8|mp4|flv|avi|mkv|rm|wmv|mpg)|" + "http((?!http).)*?video/tos*|" + "http((?!http).){20,}?/m3u8\\?pt=m3u8.*|" + "http((?!http).)*?default\\.ixigua\\.com/.*|" + "http((?!http).)*?dycdn-tos\\.pstatp[^\\?]*|" + "http.*?/player/m3u8play\\.php\\?url=.*|" + "http.*?/player/.*?[pP]lay\\.php\\?url=.*|" + "http.*?/playlist/m3u8/\\?vid=.*|" + "http.*?\\.php\\?type=m3u8&.*|" + "http.*?/download.aspx\\?.*|" + "http.*?/api/up_api.php\\?.*|" + "https.*?\\.66yk\\.cn.*|" + "http((?!http).)*?netease\\.com/file/.*");
+
+    private static final String[] FRAGMENTS = {
+            "http://", "https://", "http", "a.com/", "b.cn", "/", "?", "&", "=", "x", "ab", "0123456789",
+            ".m3u8", ".mp4", ".flv", ".mkv", ".rm", ".wmv", ".mpg", ".avi", ".mp4?t=1", ".m3u8?",
+            "video/to", "video/tos", "default.ixigua.com/", "dycdn-tos.pstatp", "netease.com/file/",
+            "/m3u8?pt=m3u8", "/player/", "play.php?url=", "Play.php?url=", "m3u8play.php?url=",
+            "/playlist/m3u8/?vid=", ".php?type=m3u8&", "/download.aspx?", "/download_aspx?",
+            "/api/up_api.php?", "/api/up_apiXphp?", ".66yk.cn",
+            ".js", ".css", ".jpg", ".html", "rl=", "=http",
+            "\n", "\r", "\u0085", "\u2028", "\u2029", "\uD83D\uDE00", "中文"
+    };
+
+    // 原来的 DefaultConfig.isVideoFormat
+    private static boolean regex(String url) {
+        if (url.contains("=http")) {
+            return false;
+        }
+        if (SNIFFER_MATCH.matcher(url).find()) {
+            return !url.contains(".js") && !url.contains(".css") && !url.contains(".jpg") && !url.contains(".png") && !url.contains(".gif") && !url.contains(".ico") && !url.contains("rl=") && !url.contains(".html");
+        }
+        return false;
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append(s);
+        return sb.toString();
+    }
+
+    private static List<String> edgeCases() {
+        List<String> urls = new ArrayList<>();
+        // http 之后至少 20 个字符(按码点)
+        for (int n = 15; n <= 22; n++) {
+            urls.add("http" + repeat("a", n) + ".m3u8");
+            urls.add("http" + repeat("a", n) + ".mp4?t=1");
+            urls.add("http" + repeat("a", n) + "/m3u8?pt=m3u8");
+            urls.add("http" + repeat("\uD83D\uDE00", n) + ".m3u8");
+            urls.add("http" + repeat("a", n) + "http" + repeat("b", 25 - n) + ".flv");
+        }
+        // 换行后重新计数
+        urls.add("http://a.com/\n12345678901234567890.m3u8");
+        urls.add("http://a.com/0123456789\r0123456789012345.m3u8");
+        urls.add("http://a.com/0123456789\u2028http://b.com/0123456789012.m3u8");
+        urls.add("http://a.com/\r\nvideo/to");
+        urls.add("http://a.com/\u0085netease.com/file/1");
+        urls.add("https://a\n.66yk.cn/1");
+        urls.add("http://a.com/download\naspx?");
+        urls.add("http://a.com/download\u2029aspx?");
+        // /player/ 和 play.php?url=
+        urls.add("http://a.com/player/m3u8play.php?url=1");
+        urls.add("http://a.com/player/x/Play.php?url=1");
+        urls.add("http://a.com/playerPlay.php?url=1");
+        urls.add("http://a.com/player/lay.php?url=1");
+        urls.add("http://a.com/play.php?url=/player/");
+        urls.add("http://a.com/player/\nplay.php?url=1");
+        // 其他规则
+        urls.add("http://a.com/video/tos/1");
+        urls.add("http://a.com/playlist/m3u8/?vid=1");
+        urls.add("http://a.com/x.php?type=m3u8&id=1");
+        urls.add("http://a.com/download.aspx?id=1");
+        urls.add("http://a.com/downloadXaspx?id=1");
+        urls.add("http://a.com/api/up_api.php?id=1");
+        urls.add("https://v.66yk.cn/1");
+        urls.add("http://v.66yk.cn/1");
+        urls.add("http://default.ixigua.com/1");
+        urls.add("http://x.dycdn-tos.pstatp.com/1");
+        urls.add("http://nos.netease.com/file/1");
+        urls.add("http://a.com/0123456789012345678.mp4?u=http://b.com/1.m3u8");
+        urls.add("http://a.com/0123456789012345678901.mp4.js");
+        urls.add("");
+        return urls;
+    }
+
+    private static List<String> randomCases(int count) {
+        Random random = new Random(11);
+        List<String> urls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int parts = 1 + random.nextInt(12);
+            for (int j = 0; j < parts; j++) {
+                if (random.nextInt(4) == 0) {
+                    sb.append((char) ('a' + random.nextInt(26)));
+                } else {
+                    sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+            }
+            urls.add(sb.toString());
+        }
+        return urls;
+    }
+
+    private static void check(List<String> urls) {
+        for (String url : urls) {
+            assertEquals(url.replace("\n", "\\n").replace("\r", "\\r"), regex(url), VideoSniffer.isVideoFormat(url));
+        }
+    }
+
+    @Test
+    public void edgeCasesMatchRegex() {
+        check(edgeCases());
+    }
+
+    @Test
+    public void randomUrlsMatchRegex() {
+        check(randomCases(200000));
+    }
+
+    @Test
+    public void timing() {
+        List<String> urls = randomCases(50000);
+        urls.addAll(edgeCases());
+        // 正则回溯最严重的情况: 一个 http 之后很长且没有匹配
+        String adversarial = "http" + repeat("a/b.c?d=", 4000);
+        int hits = 0;
+        long start = System.nanoTime();
+        for (String url : urls) if (regex(url)) hits++;
+        for (int i = 0; i < 10; i++) if (regex(adversarial)) hits++;
+        long regexNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (String url : urls) if (VideoSniffer.isVideoFormat(url)) hits--;
+        for (int i = 0; i < 10; i++) if (VideoSniffer.isVideoFormat(adversarial)) hits--;
+        long snifferNanos = System.nanoTime() - start;
+        assertEquals(0, hits);
+        System.out.println("snifferMatch " + regexNanos / 1000000 + "ms, VideoSniffer " + snifferNanos / 1000000 + "ms, " + urls.size() + " urls + 10 x " + adversarial.length() + " chars");
+    }
+}